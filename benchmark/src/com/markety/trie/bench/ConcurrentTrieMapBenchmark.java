@@ -0,0 +1,94 @@
+package com.markety.trie.bench;
+
+import com.markety.trie.ConcurrentTrieMap;
+import com.markety.trie.TrieFactory;
+import com.markety.trie.TrieMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A 95/5 read/write mix (19 reader threads, 1 writer thread) on ConcurrentTrieMap, compared with a TrieMap guarded by a single lock.
+ * Run with "-tg" to scale the thread groups, ex: "-tg 38,2" on a 40 cores box.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class ConcurrentTrieMapBenchmark {
+
+    @Param({"URLS", "UUIDS"})
+    public KeyCorpus corpus;
+
+    @Param({"1000000"})
+    public int size;
+
+    private String[] keys;
+    private ConcurrentTrieMap<Integer> concurrentTrie;
+    private TrieMap<Integer> lockedTrie;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = corpus.generate(size);
+        concurrentTrie = TrieFactory.createConcurrentTrieMap();
+        lockedTrie = TrieFactory.createTrieMapOptimizedForExecutionTime();
+        for (int i = 0; i < keys.length; i++) {
+            concurrentTrie.put(keys[i], i);
+            lockedTrie.put(keys[i], i);
+        }
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(19)
+    public Integer concurrentGet() {
+        return concurrentTrie.get(randomKey());
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public Integer concurrentPut() {
+        return concurrentTrie.put(randomKey(), ThreadLocalRandom.current().nextInt());
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(19)
+    public Integer lockedGet() {
+        String key = randomKey();
+        synchronized (lockedTrie) {
+            return lockedTrie.get(key);
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public Integer lockedPut() {
+        String key = randomKey();
+        int value = ThreadLocalRandom.current().nextInt();
+        synchronized (lockedTrie) {
+            return lockedTrie.put(key, value);
+        }
+    }
+}
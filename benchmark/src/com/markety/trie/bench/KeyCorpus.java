@@ -0,0 +1,167 @@
+package com.markety.trie.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Generators of realistic key sets used by the benchmarks.
+ * Every corpus is deterministic (seeded), so runs of different storage modes see exactly the same keys.
+ * Keys of a generated corpus are unique.
+ */
+public enum KeyCorpus {
+
+    /**
+     * URL-like keys: a small set of hosts, deep shared paths and unique tails.
+     */
+    URLS {
+        @Override
+        String nextKey(Random random) {
+            StringBuilder sb = new StringBuilder(64);
+            sb.append(random.nextInt(4) == 0 ? "http://" : "https://");
+            sb.append(HOSTS[random.nextInt(HOSTS.length)]);
+            int depth = 1 + random.nextInt(4);
+            for (int i = 0; i < depth; i++) {
+                sb.append('/').append(PATH_SEGMENTS[random.nextInt(PATH_SEGMENTS.length)]);
+            }
+            sb.append('/').append(Integer.toString(random.nextInt(Integer.MAX_VALUE), 36));
+            if (random.nextInt(3) == 0)
+                sb.append("?id=").append(random.nextInt(1000000));
+            return sb.toString();
+        }
+    },
+
+    /**
+     * Product SKUs: fixed-shape codes sharing short vendor/category prefixes (ex: "ACM-TOOL-004213-XL").
+     */
+    SKUS {
+        @Override
+        String nextKey(Random random) {
+            StringBuilder sb = new StringBuilder(24);
+            sb.append(VENDORS[random.nextInt(VENDORS.length)]).append('-');
+            sb.append(CATEGORIES[random.nextInt(CATEGORIES.length)]).append('-');
+            String number = Integer.toString(random.nextInt(1000000));
+            for (int i = number.length(); i < 6; i++)
+                sb.append('0');
+            sb.append(number).append('-');
+            sb.append(SIZES[random.nextInt(SIZES.length)]);
+            return sb.toString();
+        }
+    },
+
+    /**
+     * Dictionary words. If the system property "trie.bench.words" points to a word list (one word per line),
+     * words are taken from it (and inflected to reach the requested size), otherwise pseudo-words are built
+     * from common english syllables, which gives a similar prefix/suffix sharing.
+     */
+    WORDS {
+        @Override
+        String nextKey(Random random) {
+            List<String> dictionary = dictionary();
+            if (!dictionary.isEmpty()) {
+                String word = dictionary.get(random.nextInt(dictionary.size()));
+                return random.nextInt(3) == 0 ? word : word + SUFFIXES[random.nextInt(SUFFIXES.length)];
+            }
+            StringBuilder sb = new StringBuilder(16);
+            int syllables = 1 + random.nextInt(4);
+            for (int i = 0; i < syllables; i++)
+                sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            if (random.nextInt(2) == 0)
+                sb.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+            return sb.toString();
+        }
+    },
+
+    /**
+     * Random UUIDs: high fan-out near the root and no shared structure below it.
+     */
+    UUIDS {
+        @Override
+        String nextKey(Random random) {
+            return new UUID(random.nextLong(), random.nextLong()).toString();
+        }
+    };
+
+    private static final long SEED = 0x5eed7e1eL;
+
+    private static final String[] HOSTS = {
+        "www.markety.com", "shop.markety.com", "api.markety.com", "cdn.markety.net",
+        "en.wikipedia.org", "github.com", "news.example.org", "docs.oracle.com"
+    };
+    private static final String[] PATH_SEGMENTS = {
+        "products", "users", "search", "static", "images", "v1", "v2", "orders", "wiki",
+        "category", "electronics", "books", "home", "en", "ar", "download", "assets", "blog"
+    };
+    private static final String[] VENDORS = {"ACM", "GLX", "MRK", "NOV", "ORB", "PLX", "QTZ", "ZEN"};
+    private static final String[] CATEGORIES = {"TOOL", "BOOK", "ELEC", "HOME", "TOYS", "FOOD", "CLTH", "SPRT"};
+    private static final String[] SIZES = {"XS", "S", "M", "L", "XL", "XXL", "NA"};
+    private static final String[] SYLLABLES = {
+        "an", "ar", "be", "ca", "con", "de", "di", "en", "er", "ex", "for", "ge", "in", "is", "la", "le",
+        "ma", "mi", "no", "or", "pa", "pre", "pro", "ra", "re", "ri", "se", "sta", "ta", "te", "ter", "ti",
+        "to", "tra", "un", "ve", "vi", "wa", "al", "com"
+    };
+    private static final String[] SUFFIXES = {"s", "ed", "ing", "er", "ers", "ly", "ness", "able", "tion", "ment"};
+
+    private static List<String> dictionary;
+
+    abstract String nextKey(Random random);
+
+    /**
+     * Generates the first 'size' unique keys of this corpus.
+     * @param size the number of keys to generate
+     * @return an array of 'size' unique keys
+     */
+    public String[] generate(int size) {
+        Random random = new Random(SEED + ordinal());
+        Set<String> seen = new HashSet<>(size * 2);
+        String[] keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            String key = nextKey(random);
+            // small corpora (ex: a short word list) run out of unique keys, extend the colliding ones with digits
+            int attempts = 0;
+            while (!seen.add(key))
+                key = ++attempts < 16 ? nextKey(random) : key + random.nextInt(10);
+            keys[i] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * Generates keys that (almost surely) do not belong to the corpus returned by generate, but look alike.
+     * @param size the number of keys to generate
+     * @return an array of 'size' keys
+     */
+    public String[] generateMisses(int size) {
+        Random random = new Random(~SEED - ordinal());
+        String[] keys = new String[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = nextKey(random) + '~';
+        return keys;
+    }
+
+    private static synchronized List<String> dictionary() {
+        if (dictionary == null) {
+            dictionary = new ArrayList<>();
+            String path = System.getProperty("trie.bench.words");
+            if (path != null) {
+                try {
+                    for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+                        String word = line.trim();
+                        if (!word.isEmpty())
+                            dictionary.add(word);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Can not read the word list " + path, e);
+                }
+            }
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,112 @@
+package com.markety.trie.bench;
+
+import com.markety.trie.RadixTrieMap;
+import com.markety.trie.TrieFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The operations of TrieMapBenchmark, measured on the path-compressed RadixTrieMap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class RadixTrieMapBenchmark {
+
+    private static final int SAMPLE_SIZE = 1 << 14;
+    private static final int SAMPLE_MASK = SAMPLE_SIZE - 1;
+
+    @Param({"URLS", "SKUS", "WORDS", "UUIDS"})
+    public KeyCorpus corpus;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private String[] keys;
+    private String[] hits;
+    private String[] misses;
+    private String[] prefixes;
+    private RadixTrieMap<Integer> trie;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = corpus.generate(size);
+        trie = TrieFactory.createRadixTrieMap();
+        for (int i = 0; i < keys.length; i++)
+            trie.put(keys[i], i);
+
+        Random random = new Random(42);
+        hits = new String[SAMPLE_SIZE];
+        prefixes = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            String key = keys[random.nextInt(keys.length)];
+            hits[i] = key;
+            prefixes[i] = key.substring(0, Math.max(1, key.length() / 2));
+        }
+        misses = corpus.generateMisses(SAMPLE_SIZE);
+    }
+
+    private int next() {
+        return cursor++ & SAMPLE_MASK;
+    }
+
+    @Benchmark
+    public Integer getHit() {
+        return trie.get(hits[next()]);
+    }
+
+    @Benchmark
+    public Integer getMiss() {
+        return trie.get(misses[next()]);
+    }
+
+    @Benchmark
+    public Integer putExisting() {
+        int i = next();
+        return trie.put(hits[i], i);
+    }
+
+    /**
+     * removes an existing key (pruning and merging nodes) and puts it back (splitting them again)
+     */
+    @Benchmark
+    public Integer removeAndPut() {
+        String key = hits[next()];
+        Integer value = trie.remove(key);
+        trie.put(key, value);
+        return value;
+    }
+
+    @Benchmark
+    public int getKeysStartingWith() {
+        return trie.getKeysStartingWith(prefixes[next()]).size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public RadixTrieMap<Integer> build() {
+        RadixTrieMap<Integer> built = TrieFactory.createRadixTrieMap();
+        for (int i = 0; i < keys.length; i++)
+            built.put(keys[i], i);
+        return built;
+    }
+}
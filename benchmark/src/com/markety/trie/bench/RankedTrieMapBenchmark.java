@@ -0,0 +1,90 @@
+package com.markety.trie.bench;
+
+import com.markety.trie.RankedTrieMap;
+import com.markety.trie.TrieFactory;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ranked autocompletion (RankedTrieMap.topK) against the unranked getKeysStartingWith, on short prefixes
+ * (1 to 3 chars) which have the largest sub-tries. SampleTime gives the latency percentiles (p99).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class RankedTrieMapBenchmark {
+
+    private static final int SAMPLE_SIZE = 1 << 14;
+    private static final int SAMPLE_MASK = SAMPLE_SIZE - 1;
+
+    @Param({"URLS", "SKUS", "WORDS", "UUIDS"})
+    public KeyCorpus corpus;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"10"})
+    public int k;
+
+    private RankedTrieMap<Integer> trie;
+    private String[] prefixes;
+    private String[] keys;
+    private double[] scores;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = corpus.generate(size);
+        Random random = new Random(42);
+        trie = TrieFactory.createRankedTrieMap(k);
+        for (int i = 0; i < keys.length; i++)
+            trie.put(keys[i], i, random.nextDouble());
+
+        prefixes = new String[SAMPLE_SIZE];
+        scores = new double[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            String key = keys[random.nextInt(keys.length)];
+            prefixes[i] = key.substring(0, Math.min(key.length(), 1 + random.nextInt(3)));
+            scores[i] = random.nextDouble();
+        }
+    }
+
+    private int next() {
+        return cursor++ & SAMPLE_MASK;
+    }
+
+    @Benchmark
+    public List<String> topK() {
+        return trie.topK(prefixes[next()], k);
+    }
+
+    @Benchmark
+    public int getKeysStartingWith() {
+        return trie.getKeysStartingWith(prefixes[next()]).size();
+    }
+
+    /**
+     * re-scores an existing entry, updating the cached completions along its path
+     */
+    @Benchmark
+    public Integer rescore() {
+        int i = next();
+        return trie.put(keys[i % keys.length], i, scores[i]);
+    }
+}
@@ -0,0 +1,79 @@
+package com.markety.trie.bench;
+
+import com.markety.trie.TrieFactory;
+import com.markety.trie.TrieMap;
+
+/**
+ * The tries offered by TrieFactory, one constant per factory method, so they can be used as a benchmark parameter.
+ */
+public enum StorageMode {
+
+    /**
+     * TrieFactory.createTrieMapOptimizedForExecutionTime (HashMap children)
+     */
+    EXECUTION_TIME((byte) 0, true) {
+        @Override
+        public TrieMap<Integer> create() {
+            return TrieFactory.createTrieMapOptimizedForExecutionTime();
+        }
+    },
+
+    /**
+     * TrieFactory.createTrieMapOptimizedForMemory (TreeMap children)
+     */
+    MEMORY((byte) 1, true) {
+        @Override
+        public TrieMap<Integer> create() {
+            return TrieFactory.createTrieMapOptimizedForMemory();
+        }
+    },
+
+    /**
+     * TrieFactory.createTrieMapBalancingExecutionTimeAndMemory (HashMap or TreeMap children)
+     */
+    BALANCED((byte) 2, true) {
+        @Override
+        public TrieMap<Integer> create() {
+            return TrieFactory.createTrieMapBalancingExecutionTimeAndMemory();
+        }
+    },
+
+    /**
+     * TrieFactory.createTrieMapUsingCompactArrays (sorted arrays / dense table children)
+     */
+    COMPACT((byte) 3, true) {
+        @Override
+        public TrieMap<Integer> create() {
+            return TrieFactory.createTrieMapUsingCompactArrays();
+        }
+    },
+
+    /**
+     * TrieFactory.createTrieMapUsingCompactArraysWithoutParents (sorted arrays / dense table children, no parent pointers)
+     */
+    COMPACT_NO_PARENTS((byte) 3, false) {
+        @Override
+        public TrieMap<Integer> create() {
+            return TrieFactory.createTrieMapUsingCompactArraysWithoutParents();
+        }
+    };
+
+    /**
+     * the childs storage mode of the tries of the factory method, as passed to the TrieMap and TrieMapBuilder constructors
+     */
+    public final byte childsStorageMode;
+    /**
+     * whether the nodes of the tries of the factory method keep a pointer to their parent, as passed to the TrieMapBuilder constructor
+     */
+    public final boolean parentPointers;
+
+    StorageMode(byte childsStorageMode, boolean parentPointers) {
+        this.childsStorageMode = childsStorageMode;
+        this.parentPointers = parentPointers;
+    }
+
+    /**
+     * @return a new empty trie using this storage mode
+     */
+    public abstract TrieMap<Integer> create();
+}
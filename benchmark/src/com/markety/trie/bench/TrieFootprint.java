@@ -0,0 +1,57 @@
+package com.markety.trie.bench;
+
+import com.markety.trie.DawgMap;
+import com.markety.trie.RadixTrieMap;
+import com.markety.trie.TrieFactory;
+import com.markety.trie.TrieMap;
+import objectexplorer.MemoryMeasurer;
+import objectexplorer.ObjectGraphMeasurer;
+
+/**
+ * Reports the retained heap of a trie per stored key, for every storage mode, corpus and size.
+ * Uses the memory-measurer (ObjectExplorer) library, so it must be run with it as a java agent
+ * (see the "footprint" target of benchmark/build.xml).
+ * All the entries share the same value object, so only the trie structure itself is measured.
+ * Usage: TrieFootprint [comma separated sizes]
+ */
+public class TrieFootprint {
+
+    private static final Integer VALUE = 1;
+
+    public static void main(String[] args) {
+        String sizes = args.length > 0 ? args[0] : "10000,100000,1000000";
+
+        System.out.println("mode\tcorpus\tkeys\tobjects\tbytes\tbytes/key");
+        for (String size : sizes.split(",")) {
+            int keyCount = Integer.parseInt(size.trim());
+            for (KeyCorpus corpus : KeyCorpus.values()) {
+                String[] keys = corpus.generate(keyCount);
+                for (StorageMode mode : StorageMode.values()) {
+                    TrieMap<Integer> trie = mode.create();
+                    for (String key : keys)
+                        trie.put(key, VALUE);
+
+                    long bytes = MemoryMeasurer.measureBytes(trie);
+                    long objects = ObjectGraphMeasurer.measure(trie).getObjects();
+                    print(mode.name(), corpus, keyCount, objects, bytes);
+                }
+
+                RadixTrieMap<Integer> radix = TrieFactory.createRadixTrieMap();
+                for (String key : keys)
+                    radix.put(key, VALUE);
+                print("RADIX", corpus, keyCount, ObjectGraphMeasurer.measure(radix).getObjects(), MemoryMeasurer.measureBytes(radix));
+
+                TrieMap<Integer> trie = StorageMode.COMPACT.create();
+                for (String key : keys)
+                    trie.put(key, VALUE);
+                DawgMap<Integer> dawg = TrieFactory.createDawg(trie);
+                print("DAWG", corpus, keyCount, ObjectGraphMeasurer.measure(dawg).getObjects(), MemoryMeasurer.measureBytes(dawg));
+            }
+        }
+    }
+
+    private static void print(String mode, KeyCorpus corpus, int keyCount, long objects, long bytes) {
+        System.out.printf("%s\t%s\t%d\t%d\t%d\t%.1f%n",
+                mode, corpus, keyCount, objects, bytes, (double) bytes / keyCount);
+    }
+}
@@ -0,0 +1,190 @@
+package com.markety.trie.bench;
+
+import com.markety.trie.TrieMap;
+import com.markety.trie.TrieMapBuilder;
+import com.markety.trie.TrieNode;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the operations of TrieMap for every storage mode offered by TrieFactory, over several key corpora and sizes.
+ * Throughput and latency percentiles (SampleTime) are reported for each operation, run with "-prof gc" to get
+ * the allocation rate. The retained heap per key is measured separately by TrieFootprint.
+ * Single operations are measured against a pre-built trie, cycling through a random sample of its keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class TrieMapBenchmark {
+
+    private static final int SAMPLE_SIZE = 1 << 14;
+    private static final int SAMPLE_MASK = SAMPLE_SIZE - 1;
+
+    @Param({"EXECUTION_TIME", "MEMORY", "BALANCED", "COMPACT", "COMPACT_NO_PARENTS"})
+    public StorageMode mode;
+
+    @Param({"URLS", "SKUS", "WORDS", "UUIDS"})
+    public KeyCorpus corpus;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private String[] keys;
+    private List<AbstractMap.SimpleEntry<String,Integer>> sortedEntries;
+    private String[] hits;
+    private String[] misses;
+    private String[] prefixes;
+    private TrieMap<Integer> trie;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = corpus.generate(size);
+        trie = mode.create();
+        for (int i = 0; i < keys.length; i++)
+            trie.put(keys[i], i);
+
+        Random random = new Random(42);
+        hits = new String[SAMPLE_SIZE];
+        prefixes = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            String key = keys[random.nextInt(keys.length)];
+            hits[i] = key;
+            // an autocompletion-like prefix: the first half of an existing key
+            prefixes[i] = key.substring(0, Math.max(1, key.length() / 2));
+        }
+        misses = corpus.generateMisses(SAMPLE_SIZE);
+
+        String[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        sortedEntries = new ArrayList<>(sorted.length);
+        for (int i = 0; i < sorted.length; i++)
+            if (i == 0 || !sorted[i].equals(sorted[i - 1]))
+                sortedEntries.add(new AbstractMap.SimpleEntry<>(sorted[i], i));
+    }
+
+    private int next() {
+        return cursor++ & SAMPLE_MASK;
+    }
+
+    @Benchmark
+    public Integer getHit() {
+        return trie.get(hits[next()]);
+    }
+
+    @Benchmark
+    public Integer getMiss() {
+        return trie.get(misses[next()]);
+    }
+
+    @Benchmark
+    public boolean containsKey() {
+        return trie.containsKey(hits[next()]);
+    }
+
+    /**
+     * put on an existing key (replaces the value), the size of the trie stays the same.
+     */
+    @Benchmark
+    public Integer putExisting() {
+        int i = next();
+        return trie.put(hits[i], i);
+    }
+
+    /**
+     * removes an existing key (pruning its branch) and puts it back, so the trie stays the same between invocations.
+     */
+    @Benchmark
+    public Integer removeAndPut() {
+        String key = hits[next()];
+        Integer value = trie.remove(key);
+        trie.put(key, value);
+        return value;
+    }
+
+    @Benchmark
+    public int getKeysStartingWith() {
+        return trie.getKeysStartingWith(prefixes[next()]).size();
+    }
+
+    @Benchmark
+    public int getSubTrie() {
+        TrieMap<Integer> subTrie = trie.getSubTrie(prefixes[next()]);
+        return subTrie == null ? 0 : subTrie.size();
+    }
+
+    @Benchmark
+    public void iterateEntries(Blackhole blackhole) {
+        Iterator<TrieNode<Integer>> it = trie.iterator();
+        while (it.hasNext())
+            blackhole.consume(it.next().getValue());
+    }
+
+    @Benchmark
+    public void iterateKeys(Blackhole blackhole) {
+        Iterator<String> it = trie.getKeySetIterator();
+        while (it.hasNext())
+            blackhole.consume(it.next());
+    }
+
+    /**
+     * Builds a whole trie from the corpus, by successive calls to put.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public TrieMap<Integer> build() {
+        TrieMap<Integer> built = mode.create();
+        for (int i = 0; i < keys.length; i++)
+            built.put(keys[i], i);
+        return built;
+    }
+
+    /**
+     * Builds a whole trie from the sorted corpus, in one pass with TrieMapBuilder.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public TrieMap<Integer> buildSorted() {
+        return new TrieMapBuilder<Integer>(mode.childsStorageMode, mode.parentPointers).addAll(sortedEntries.iterator()).build();
+    }
+
+    /**
+     * Builds a whole trie from the sorted corpus with TrieMapBuilder, one sub-trie per first char in the common pool.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public TrieMap<Integer> buildSortedParallel() {
+        return TrieMapBuilder.buildParallel(mode.childsStorageMode, mode.parentPointers, sortedEntries, ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,76 @@
+package com.markety.trie;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The base of the trie maps other than TrieMap (RadixTrieMap, MappedTrieMap..): their prefix queries walk the sub-trie of the
+ * prefix with a TrieWalker, a map only finding the node of a prefix and enumerating the children of its nodes.
+ * @param <T> Class type of the value to be stored in the trie
+ */
+abstract class AbstractTrieMap<T> extends AbstractMap<String,T> {
+
+    /**
+     * @param prefix the prefix
+     * @return a walker through the keys starting with the prefix, in lexicographic order, null if no key starts with it
+     */
+    abstract TrieWalker<String> walkKeys(String prefix);
+
+    /**
+     * @return the characteristics of the streams of keys, which are distinct, non null and sorted
+     */
+    int keysCharacteristics() {
+        return Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.ORDERED | Spliterator.SORTED;
+    }
+
+    /**
+     * Retrieves a set of all keys starting with the specified prefix
+     * @param prefix
+     * @return a list containing all keys starting with the specified prefix, in lexicographic order
+     */
+    public LinkedList<String> getKeysStartingWith(String prefix) {
+        LinkedList<String> list = new LinkedList<>();
+        Iterator<String> it = getKeysStartingWithIterator(prefix);
+        while (it.hasNext())
+            list.add(it.next());
+        return list;
+    }
+
+    /**
+     * Retrieves a lazy iterator through the keys starting with the specified prefix, in lexicographic order.
+     * @param prefix
+     * @return an iterator through the keys starting with the specified prefix (empty if no key starts with it)
+     */
+    public Iterator<String> getKeysStartingWithIterator(String prefix) {
+        TrieWalker<String> walker = walkKeys(prefix);
+        return walker == null ? Collections.<String>emptyIterator() : walker;
+    }
+
+    /**
+     * Retrieves a lazy stream of the keys starting with the specified prefix, in lexicographic order.
+     * @param prefix
+     * @return a sequential stream of the keys starting with the specified prefix
+     */
+    public Stream<String> keysStartingWith(String prefix) {
+        TrieWalker<String> walker = walkKeys(prefix);
+        if (walker == null)
+            return Stream.empty();
+        long size = walker.size();
+        Spliterator<String> spliterator = size < 0 ? Spliterators.spliteratorUnknownSize(walker, keysCharacteristics())
+                : Spliterators.spliterator(walker, size, keysCharacteristics());
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Retrieves an iterator which iterates through all the keys, in lexicographic order
+     */
+    public Iterator<String> getKeySetIterator() {
+        return getKeysStartingWithIterator("");
+    }
+}
@@ -0,0 +1,312 @@
+package com.markety.trie;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Finds all the occurrences of the keys of a trie in a text in one linear pass (Aho-Corasick), built from a TrieMap.
+ * The nodes of the trie become the states of an automaton, and each state gets a failure link: the state of the longest proper suffix
+ * of its path which is also a path of the trie, where the scan goes on when the next char has no transition. Each state also links
+ * to the nearest state holding a value along its failure links, so all the keys ending at a position are reported without walking
+ * the failure links. The scan costs O(length of the text + number of matches), whatever the number of keys.
+ *
+ * The automaton is compiled apart from the trie, rather than adding the links to the trie nodes: the links of all the nodes must be
+ * computed again whenever a key is added, and the nodes of the tries which are not scanned would pay for them.
+ * The states are numbered in BFS order and stored in flat primitive arrays; the transitions of a state are contiguous and sorted by
+ * char. The states with many children (the root and the shallow states, where the scan spends most of its time) also get a table
+ * indexed by char, holding the state reached by any char of its range, the failure links already followed: a step from such a state
+ * is a single array read, with no search and no failure link.
+ * <pre>
+ * AhoCorasick&lt;String&gt; matcher = AhoCorasick.of(terms);
+ * matcher.scan(reader, (start, end, term) -&gt; { System.out.println(term + " at " + start); return true; });
+ * </pre>
+ * An automaton is immutable, and can be used by several threads.
+ * @param <T> Class type of the values
+ */
+public class AhoCorasick<T> {
+
+    private static final int LINEAR_SCAN_LIMIT = 8;
+    /**
+     * the maximum range of chars of a table, in number of children of the state (the root always gets its table up to 4096 chars)
+     */
+    private static final int TABLE_SPREAD = 4;
+    private static final int ROOT_TABLE_LIMIT = 4096;
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * the fields of the states, interleaved so that a step of the scan reads one or two cache lines: for the state s,
+     * states[s * STRIDE + FIRST] is the index of its first transition, the transitions of s being [FIRST of s, FIRST of s + 1) and the
+     * target of the transition i being the state i + 1 (states are numbered in BFS order)
+     */
+    private static final int STRIDE = 8;
+    private static final int FIRST = 0;
+    /**
+     * the failure link
+     */
+    private static final int FAIL = 1;
+    /**
+     * the state itself if it holds a value, else the nearest state holding a value along its failure links, 0 if none
+     */
+    private static final int MATCH = 2;
+    /**
+     * the length of the path of the state
+     */
+    private static final int DEPTH = 3;
+    /**
+     * the offset of the table of the state in tables, -1 if it has none
+     */
+    private static final int TABLE = 4;
+    /**
+     * the first char of the table, and its length
+     */
+    private static final int LOW = 5;
+    private static final int LENGTH = 6;
+
+    private final int[] states;
+    private final char[] labels;
+    /**
+     * for the states holding a value, the next state holding a value along the failure links, 0 if none
+     */
+    private final int[] output;
+    private final Object[] values;
+    /**
+     * the tables of the states having one: the state reached by each char of the range of the table
+     */
+    private final int[] tables;
+
+    private AhoCorasick(int[] firstTransition, char[] labels, int[] depths, Object[] values) {
+        int count = depths.length;
+        this.labels = labels;
+        this.values = values;
+        this.states = new int[(count + 1) * STRIDE];
+        for (int s = 0; s <= count; s++)
+            states[s * STRIDE + FIRST] = firstTransition[s];
+        for (int s = 0; s < count; s++)
+            states[s * STRIDE + DEPTH] = depths[s];
+
+        // the failure link of a state is found from the failure link of its parent, so the states are visited in BFS order
+        this.output = new int[count];
+        for (int s = 0; s < count; s++) {
+            for (int i = firstTransition[s]; i < firstTransition[s + 1]; i++) {
+                int child = i + 1;
+                int link = 0;
+                if (s != 0) {
+                    int f = states[s * STRIDE + FAIL];
+                    int next;
+                    while ((next = transition(f, labels[i])) < 0 && f != 0)
+                        f = states[f * STRIDE + FAIL];
+                    link = next >= 0 ? next : 0;
+                }
+                int linkMatch = states[link * STRIDE + MATCH];
+                states[child * STRIDE + FAIL] = link;
+                states[child * STRIDE + MATCH] = values[child] != null ? child : linkMatch;
+                output[child] = linkMatch;
+            }
+        }
+
+        // the states getting a table, and the offsets of their tables
+        int size = 0;
+        for (int s = 0; s < count; s++) {
+            int record = s * STRIDE;
+            states[record + TABLE] = -1;
+            int first = firstTransition[s];
+            int last = firstTransition[s + 1];
+            int children = last - first;
+            if (children == 0)
+                continue;
+            int length = labels[last - 1] - labels[first] + 1;
+            if (s == 0 ? length > ROOT_TABLE_LIMIT && length > children * TABLE_SPREAD
+                    : children <= LINEAR_SCAN_LIMIT || length > children * TABLE_SPREAD)
+                continue;
+            states[record + TABLE] = size;
+            states[record + LOW] = labels[first];
+            states[record + LENGTH] = length;
+            size += length;
+        }
+        // a table defers to the failure links of its state, which lead to shallower states whose tables are filled before
+        this.tables = new int[size];
+        for (int s = 0; s < count; s++) {
+            int record = s * STRIDE;
+            int table = states[record + TABLE];
+            if (table < 0)
+                continue;
+            states[record + TABLE] = -1;
+            for (int c = 0; c < states[record + LENGTH]; c++)
+                tables[table + c] = next(s, (char) (states[record + LOW] + c));
+            states[record + TABLE] = table;
+        }
+    }
+
+    /**
+     * Builds the automaton of the keys of a trie, in O(number of nodes).
+     * @param trie the trie, not modified. Compile a snapshot() of the trie if it may be modified meanwhile.
+     * @return an automaton finding the keys of the trie
+     */
+    public static <T> AhoCorasick<T> of(TrieMap<T> trie) {
+        TrieNode<T> root = trie.getRoot();
+        int capacity = 16;
+        int[] firstTransition = new int[capacity + 1];
+        char[] labels = new char[capacity];
+        int[] depths = new int[capacity];
+        Object[] values = new Object[capacity];
+
+        // BFS: the children of a state get the next numbers, so the transitions of the state i lead to the states firstTransition[i] + 1..
+        ArrayDeque<TrieNode<T>> queue = new ArrayDeque<>();
+        queue.add(root);
+        values[0] = root.getValue();
+        int states = 1;
+        int transitions = 0;
+        for (int s = 0; !queue.isEmpty(); s++) {
+            TrieNode<T> node = queue.poll();
+            firstTransition[s] = transitions;
+            for (TrieNode<T> child : node.getSortedChilds()) {
+                if (states == capacity) {
+                    capacity *= 2;
+                    firstTransition = Arrays.copyOf(firstTransition, capacity + 1);
+                    labels = Arrays.copyOf(labels, capacity);
+                    depths = Arrays.copyOf(depths, capacity);
+                    values = Arrays.copyOf(values, capacity);
+                }
+                labels[transitions++] = child.getChar();
+                depths[states] = depths[s] + 1;
+                values[states++] = child.getValue();
+                queue.add(child);
+            }
+        }
+        firstTransition = Arrays.copyOf(firstTransition, states + 1);
+        firstTransition[states] = transitions;
+        return new AhoCorasick<>(firstTransition, Arrays.copyOf(labels, transitions), Arrays.copyOf(depths, states),
+                Arrays.copyOf(values, states));
+    }
+
+    /**
+     * @return the target of the transition of the state with the char, -1 if none. Not for the states having a table.
+     */
+    private int transition(int state, char c) {
+        int low = states[state * STRIDE + FIRST];
+        int high = states[state * STRIDE + STRIDE + FIRST];
+        if (high - low <= LINEAR_SCAN_LIMIT) {
+            for (int i = low; i < high; i++) {
+                char label = labels[i];
+                if (label == c)
+                    return i + 1;
+                if (label > c)
+                    return -1;
+            }
+            return -1;
+        }
+        int index = Arrays.binarySearch(labels, low, high, c);
+        return index >= 0 ? index + 1 : -1;
+    }
+
+    /**
+     * @return the state after reading the char from the state, following the failure links until a transition is found
+     */
+    private int next(int state, char c) {
+        while (true) {
+            int record = state * STRIDE;
+            int table = states[record + TABLE];
+            if (table >= 0) {
+                int index = c - states[record + LOW];
+                if (index >= 0 && index < states[record + LENGTH])
+                    return tables[table + index];
+            } else {
+                int next = transition(state, c);
+                if (next >= 0)
+                    return next;
+            }
+            if (state == 0)
+                return 0;
+            state = states[record + FAIL];
+        }
+    }
+
+    /**
+     * reports the keys ending at the state
+     * @param match the MATCH of the state, not 0
+     * @param end the offset after the last char read
+     * @return false if the handler stopped the scan
+     */
+    @SuppressWarnings("unchecked")
+    private boolean report(int match, long end, TrieMatchHandler<? super T> handler) {
+        for (int s = match; s != 0; s = output[s]) {
+            if (!handler.onMatch(end - states[s * STRIDE + DEPTH], end, (T) values[s]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reports all the occurrences of the keys in the text, in the order of their end offsets (the longest first for the same end).
+     * Occurrences may overlap. The empty key, if any, is not reported.
+     * @param text the text
+     * @param handler called for each occurrence, with its offsets in the text
+     * @return false if the handler stopped the scan
+     */
+    public boolean scan(CharSequence text, TrieMatchHandler<? super T> handler) {
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = next(state, text.charAt(i));
+            int match = states[state * STRIDE + MATCH];
+            if (match != 0 && !report(match, i + 1, handler))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Same as scan(CharSequence, handler), reading the chars of the buffer in place from its position to its limit.
+     * The position of the buffer is not changed, and the offsets are relative to it.
+     */
+    public boolean scan(CharBuffer buffer, TrieMatchHandler<? super T> handler) {
+        if (!buffer.hasArray())
+            return scan((CharSequence) buffer, handler);
+        return scan(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), 0, 0, handler) >= 0;
+    }
+
+    /**
+     * Same as scan(CharSequence, handler), reading the text from a reader through a buffer: the matches spanning the ends of the
+     * chunks read are found as well, and the offsets are counted from the first char read.
+     * @return false if the handler stopped the scan
+     * @throws IOException if the reader fails
+     */
+    public boolean scan(Reader reader, TrieMatchHandler<? super T> handler) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        int state = 0;
+        long offset = 0;
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            state = scan(buffer, 0, read, offset, state, handler);
+            if (state < 0)
+                return false;
+            offset += read;
+        }
+        return true;
+    }
+
+    /**
+     * @param offset the offset of the first char of the chunk in the text
+     * @param state the state after the previous chunk
+     * @return the state after the chunk, -1 if the handler stopped the scan
+     */
+    private int scan(char[] chars, int from, int count, long offset, int state, TrieMatchHandler<? super T> handler) {
+        long base = offset - from;
+        for (int i = from, end = from + count; i < end; i++) {
+            state = next(state, chars[i]);
+            int match = states[state * STRIDE + MATCH];
+            if (match != 0 && !report(match, base + i + 1, handler))
+                return -1;
+        }
+        return state;
+    }
+
+    /**
+     * @return the number of states (the nodes of the trie)
+     */
+    public int getStatesCount() {
+        return values.length;
+    }
+}
@@ -0,0 +1,386 @@
+package com.markety.trie;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A TrieMap holding at most maxEntries entries, and nodes of at most maxBytes estimated bytes, for prefix-aware caches.
+ * When a put goes over a bound, entries are evicted with the CLOCK algorithm: the entries are kept in a ring (the clock) which a
+ * hand sweeps, giving a second chance to the entries read since its last pass (LRU policy), or to the entries read often, their
+ * read counter being halved at each pass (LFU policy). Entries may also expire, a time to live after they were put.
+ * A read only sets a flag or increments a small saturating counter on the node of its key, with plain writes: there is no list to
+ * reorder and no lock, so reads cost as much as in a TrieMap and gets can run in parallel (when no thread writes the trie). The
+ * bookkeeping of a write is O(1) on the clock, plus O(key length) to remove an evicted entry: evictions use the TrieMap removal,
+ * which prunes the branch the entry leaves empty.
+ * invalidatePrefix(prefix) removes all the keys starting with a prefix in O(prefix length), detaching the node of the prefix; its
+ * entries leave the clock later, when the hand reaches them or at once when they fill half of the clock.
+ * Expired entries are not returned by get and containsKey, but prefix queries and iterations see them until they are evicted or
+ * purged by cleanUp().
+ * snapshot() returns a detached copy of the live entries, in O(number of entries): a copy-on-write snapshot would copy the nodes
+ * known by the clock.
+ * <pre>
+ * BoundedTrieMap&lt;String&gt; cache = TrieFactory.createBoundedTrieMap(100_000);
+ * cache.put("/api/users/42", resolved, 30, TimeUnit.SECONDS);
+ * cache.invalidatePrefix("/api/users/");
+ * </pre>
+ * @param <T> Class type of the value to be stored in the trie
+ */
+public class BoundedTrieMap<T> extends TrieMap<T> {
+
+    /**
+     * The entries kept when the trie is full
+     */
+    public enum EvictionPolicy {
+        /**
+         * the entries read recently, approximated by a flag cleared by the clock hand
+         */
+        LRU,
+        /**
+         * the entries read often, approximated by a counter of reads (up to 15) halved by the clock hand
+         */
+        LFU
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final EvictionPolicy policy;
+    /**
+     * the time to live of the entries put without one, in nanoseconds, 0 if they do not expire
+     */
+    private final long timeToLive;
+
+    /**
+     * the nodes holding an entry, and the entries of the detached sub-tries not purged yet
+     */
+    private BoundedTrieNode<T>[] clock;
+    private int clockSize;
+    private int hand;
+    private int detachedEntries;
+    private long estimatedBytes;
+    private long evictions;
+
+    /**
+     * Builds a bounded trie
+     * @param childsStorageMode the storage mode of the children of the nodes
+     * @param maxEntries the maximum number of entries
+     * @param maxBytes the maximum estimated bytes of the nodes (see TrieStatistics.getEstimatedBytes), Long.MAX_VALUE for no bound
+     * @param policy the entries kept when a bound is reached
+     * @param timeToLive the time to live of the entries put without one, 0 if they do not expire
+     * @param unit the unit of timeToLive
+     */
+    public BoundedTrieMap(byte childsStorageMode, int maxEntries, long maxBytes, EvictionPolicy policy, long timeToLive, TimeUnit unit) {
+        super(childsStorageMode);
+        if (maxEntries < 1 || maxBytes < 1)
+            throw new IllegalArgumentException("The bounds must be positive: " + maxEntries + " entries, " + maxBytes + " bytes");
+        if (timeToLive < 0)
+            throw new IllegalArgumentException("The time to live must not be negative: " + timeToLive);
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.timeToLive = unit.toNanos(timeToLive);
+        this.clock = newClock(16);
+    }
+
+    @Override
+    TrieNode<T> newRoot(byte childsStorageMode) {
+        return new BoundedTrieNode<>('0', childsStorageMode, null);
+    }
+
+    //================================CLASS METHODS=============================
+
+    /**
+     * puts or replaces the value specified by the key, expiring after the default time to live. Entries are evicted if the trie
+     * goes over its bounds.
+     * @param key the key
+     * @param value the value to store
+     * @return the previous value if exist (and not expired), null otherwise
+     */
+    @Override
+    public T put(String key, T value) {
+        return put(key, 0, key.length(), value, timeToLive);
+    }
+
+    @Override
+    public T put(CharSequence key, int start, int end, T value) {
+        return put(key, start, end, value, timeToLive);
+    }
+
+    /**
+     * puts or replaces the value specified by the key, with its own time to live
+     * @param key the key
+     * @param value the value to store
+     * @param timeToLive the time after which the entry expires, 0 if it does not expire
+     * @param unit the unit of timeToLive
+     * @return the previous value if exist (and not expired), null otherwise
+     */
+    public T put(String key, T value, long timeToLive, TimeUnit unit) {
+        if (timeToLive < 0)
+            throw new IllegalArgumentException("The time to live must not be negative: " + timeToLive);
+        return put(key, 0, key.length(), value, unit.toNanos(timeToLive));
+    }
+
+    private T put(CharSequence key, int start, int end, T value, long ttl) {
+        T prev = super.put(key, start, end, value);
+        BoundedTrieNode<T> node = (BoundedTrieNode<T>) getRoot().getNode(key, start, end);
+        long now = ttl > 0 || node.expiresAt != BoundedTrieNode.NEVER ? System.nanoTime() : 0;
+        if (prev == null)
+            insert(node);
+        else if (node.isExpired(now))
+            prev = null;
+        node.expiresAt = ttl > 0 ? now + ttl : BoundedTrieNode.NEVER;
+        sweep(node);
+        return prev;
+    }
+
+    /**
+     * @param key the key
+     * @return the value associated with the key, null if the key does not exist or has expired
+     */
+    @Override
+    public T get(Object key) {
+        if (key instanceof String == false)
+            return null;
+        String word = (String) key;
+        return get(word, 0, word.length());
+    }
+
+    @Override
+    public T get(CharSequence key, int start, int end) {
+        checkRange(key, start, end);
+        TrieMetrics metrics = getMetrics();
+        long time = metrics == null ? TrieMetrics.NOT_SAMPLED : metrics.start();
+        BoundedTrieNode<T> node = (BoundedTrieNode<T>) getRoot().getNode(key, start, end);
+        T value = node == null ? null : node.getValue();
+        if (value != null) {
+            if (node.expiresAt != BoundedTrieNode.NEVER && node.isExpired(System.nanoTime()))
+                value = null;
+            else
+                node.touch();
+        }
+        if (metrics != null)
+            metrics.recordGet(time, value != null);
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public boolean containsKey(CharSequence key, int start, int end) {
+        return get(key, start, end) != null;
+    }
+
+    /**
+     * @param key the key of the entry to remove
+     * @return the value of the removed entry if exist (and not expired)
+     */
+    @Override
+    public T remove(Object key) {
+        if (key instanceof String == false)
+            return null;
+        String word = (String) key;
+        return remove(word, 0, word.length());
+    }
+
+    @Override
+    public T remove(CharSequence key, int start, int end) {
+        checkRange(key, start, end);
+        BoundedTrieNode<T> node = (BoundedTrieNode<T>) getRoot().getNode(key, start, end);
+        if (node == null || node.getValue() == null)
+            return null;
+        boolean expired = node.expiresAt != BoundedTrieNode.NEVER && node.isExpired(System.nanoTime());
+        drop(node);
+        T prev = super.remove(key, start, end);
+        return expired ? null : prev;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        clock = newClock(16);
+        clockSize = 0;
+        hand = 0;
+        detachedEntries = 0;
+        estimatedBytes = 0;
+    }
+
+    /**
+     * Removes all the keys starting with the prefix, in O(prefix length): the node of the prefix is detached from the trie.
+     * @param prefix the prefix, all the keys being removed if it is empty
+     * @return the number of removed keys
+     */
+    public int invalidatePrefix(String prefix) {
+        if (prefix.isEmpty()) {
+            int count = size();
+            clear();
+            return count;
+        }
+        BoundedTrieNode<T> node = (BoundedTrieNode<T>) removeSubTrie(prefix);
+        if (node == null)
+            return 0;
+        node.detached = true;
+        detachedEntries += node.size();
+        // purging the clock costs O(clock size), paid by the invalidated entries, which are at least half of it
+        if (detachedEntries > clockSize / 2)
+            purge(false);
+        return node.size();
+    }
+
+    /**
+     * Removes the expired entries, and the entries of the invalidated prefixes still known by the clock. O(number of entries).
+     */
+    public void cleanUp() {
+        purge(true);
+    }
+
+    /**
+     * Copies the entries which have not expired to a new read-only trie, in O(number of entries): unlike TrieMap.snapshot(), the
+     * copy shares no node with this trie, whose nodes are known by the eviction clock. It is not bounded, and its entries do not expire.
+     * @return a read-only trie holding the current entries of this trie
+     */
+    @Override
+    public TrieMap<T> snapshot() {
+        TrieMap<T> copy = new TrieMap<>(getRoot().getChildsStorageMode());
+        long now = System.nanoTime();
+        for (int i = 0; i < clockSize; i++) {
+            BoundedTrieNode<T> node = clock[i];
+            if (node.isExpired(now) || (detachedEntries > 0 && node.isDetached()))
+                continue;
+            copy.put(node.getKey(), node.getValue());
+        }
+        return copy.snapshot();
+    }
+
+    /**
+     * @return the number of entries evicted to stay within the bounds, or because they expired
+     */
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the estimated bytes of the nodes created by the insertions of the entries in the clock (the values apart), which
+     * is bounded by maxBytes
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+
+    //================================CLOCK=====================================
+
+    /**
+     * Adds a new entry to the clock, weighing the nodes its insertion created: the nodes of its path holding no other entry.
+     * The entry starts unread, so the entries which are put but never read are evicted first.
+     */
+    private void insert(BoundedTrieNode<T> node) {
+        long bytes = 0;
+        for (ParentedTrieNode<T> n = node; n.getParent() != null && n.size() == 1; n = n.getParent())
+            bytes += n.estimateRetainedBytes();
+        node.weight = (int) Math.min(bytes, Integer.MAX_VALUE);
+        node.referenced = false;
+        node.frequency = 0;
+        estimatedBytes += node.weight;
+
+        if (clockSize == clock.length)
+            clock = Arrays.copyOf(clock, clockSize * 2);
+        node.slot = clockSize;
+        clock[clockSize++] = node;
+    }
+
+    /**
+     * Removes an entry from the clock, moving the last entry of the clock to its slot
+     */
+    private void drop(BoundedTrieNode<T> node) {
+        int slot = node.slot;
+        BoundedTrieNode<T> last = clock[--clockSize];
+        clock[slot] = last;
+        last.slot = slot;
+        clock[clockSize] = null;
+        node.slot = -1;
+        estimatedBytes -= node.weight;
+    }
+
+    /**
+     * Removes an entry from the clock and from the trie
+     */
+    private void evictEntry(BoundedTrieNode<T> node) {
+        String key = node.getKey();
+        drop(node);
+        super.remove(key, 0, key.length());
+        evictions++;
+    }
+
+    /**
+     * Sweeps the clock until the trie is within its bounds, sparing the entry just put
+     */
+    private void sweep(BoundedTrieNode<T> inserted) {
+        long now = 0;
+        while ((size() > maxEntries || estimatedBytes > maxBytes) && clockSize > 1) {
+            if (hand >= clockSize)
+                hand = 0;
+            BoundedTrieNode<T> node = clock[hand];
+            if (detachedEntries > 0 && node.isDetached()) {
+                drop(node);
+                detachedEntries--;
+                continue;
+            }
+            if (node == inserted) {
+                hand++;
+                continue;
+            }
+            if (node.expiresAt != BoundedTrieNode.NEVER) {
+                if (now == 0)
+                    now = System.nanoTime();
+                if (node.isExpired(now)) {
+                    evictEntry(node);
+                    continue;
+                }
+            }
+            if (policy == EvictionPolicy.LRU ? node.referenced : node.frequency > 0) {
+                // second chance
+                node.referenced = false;
+                node.frequency >>= 1;
+                hand++;
+                continue;
+            }
+            evictEntry(node);
+        }
+    }
+
+    /**
+     * Removes the entries of the detached sub-tries from the clock, and the expired entries from the trie
+     */
+    private void purge(boolean expired) {
+        long now = System.nanoTime();
+        for (int i = 0; i < clockSize;) {
+            BoundedTrieNode<T> node = clock[i];
+            if (detachedEntries > 0 && node.isDetached()) {
+                drop(node);
+                detachedEntries--;
+            } else if (expired && node.isExpired(now))
+                evictEntry(node);
+            else
+                i++;
+        }
+        detachedEntries = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> BoundedTrieNode<T>[] newClock(int length) {
+        return (BoundedTrieNode<T>[]) new BoundedTrieNode<?>[length];
+    }
+}
@@ -0,0 +1,70 @@
+package com.markety.trie;
+
+/**
+ * A node of a BoundedTrieMap. Besides its value, a node holding an entry keeps the eviction state of the entry: its slot in the
+ * clock of the trie, whether it was read since the clock hand last passed (LRU), a small counter of its reads (LFU), its expiry
+ * time and the estimated bytes its insertion added.
+ * Reads only set the flag or increment the counter, with plain writes, and only while they are not already set or saturated.
+ * @param <T> Class type of the value to be stored in the trie
+ */
+class BoundedTrieNode<T> extends ParentedTrieNode<T> {
+
+    /**
+     * the expiry time of the entries which never expire
+     */
+    static final long NEVER = Long.MIN_VALUE;
+    static final int MAX_FREQUENCY = 15;
+
+    /**
+     * the index of the entry in the clock, -1 if the node holds no entry
+     */
+    int slot = -1;
+    boolean referenced;
+    byte frequency;
+    /**
+     * set on the root of a sub-trie removed by BoundedTrieMap.invalidatePrefix: the entries below it are not in the trie anymore
+     */
+    boolean detached;
+    /**
+     * the estimated bytes of the nodes created by the insertion of the entry
+     */
+    int weight;
+    /**
+     * the System.nanoTime() at which the entry expires, NEVER if it does not expire
+     */
+    long expiresAt = NEVER;
+
+    BoundedTrieNode(char key, byte childsStorageMode, ParentedTrieNode<T> parent) {
+        super(key, null, childsStorageMode, parent);
+    }
+
+    @Override
+    TrieNode<T> newChild(char ch) {
+        return new BoundedTrieNode<>(ch, getChildsStorageMode(), this);
+    }
+
+    /**
+     * Records a read of the entry of this node
+     */
+    void touch() {
+        if (!referenced)
+            referenced = true;
+        if (frequency < MAX_FREQUENCY)
+            frequency++;
+    }
+
+    boolean isExpired(long now) {
+        return expiresAt != NEVER && now - expiresAt >= 0;
+    }
+
+    /**
+     * @return true if this node or one of its ancestors was detached from the trie by invalidatePrefix
+     */
+    boolean isDetached() {
+        for (ParentedTrieNode<T> node = this; node != null; node = node.getParent()) {
+            if (((BoundedTrieNode<T>) node).detached)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,563 @@
+package com.markety.trie;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A thread-safe trie map. Reads (get, containsKey, prefix queries and iteration) never block: they only read volatile fields.
+ * Writers never lock either: the value and the children of a node are an immutable state (the children being a sorted array) which
+ * is replaced by compare-and-set when the value changes or a child is added, which gives the atomic ConcurrentMap operations
+ * (putIfAbsent, replace, remove(key, value)..).
+ * Iterators are weakly consistent: they never throw ConcurrentModificationException and reflect the trie at some point at or since their creation.
+ * Removing a key prunes the nodes of its path left without value nor children. A pruned node is first given the final DEAD state by
+ * compare-and-set, so no value or child can be added to it anymore, then it is removed from the children of its parent. A writer
+ * reaching a dead node retries from the root, so a put never lands in a pruned branch.
+ * size() is maintained by a striped counter (LongAdder), so it is exact only when no write is running.
+ * @param <T> Class type of the value to be stored in the trie
+ */
+public class ConcurrentTrieMap<T> extends AbstractTrieMap<T> implements ConcurrentMap<String,T> {
+
+    private static final int LINEAR_SCAN_LIMIT = 8;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, State.class, "state");
+
+    final Node<T> root = new Node<>('0');
+    private final LongAdder size = new LongAdder();
+
+    //================================CLASS METHODS=============================
+
+    /**
+     * @param key the key
+     * @return the value associated with the key
+     */
+    @Override
+    public T get(Object key) {
+        if (key instanceof String == false)
+            return null;
+        String word = (String) key;
+        Node<T> node = getNode(word, 0, word.length());
+        return node == null ? null : node.state.value;
+    }
+
+    /**
+     * Finds the value of a key given as a slice of a char sequence (ex: a part of a buffer), without copying it.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return the value associated with the key, null if the key does not exist
+     */
+    public T get(CharSequence key, int start, int end) {
+        if (start < 0 || end > key.length() || start > end)
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + key.length());
+        Node<T> node = getNode(key, start, end);
+        return node == null ? null : node.state.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * puts or replaces the value specified by the key
+     * @param key the key
+     * @param value the value to store, not null
+     * @return the previous value if exist, null otherwise
+     */
+    @Override
+    public T put(String key, T value) {
+        checkValue(value);
+        return putValue(key, value, false);
+    }
+
+    @Override
+    public T putIfAbsent(String key, T value) {
+        checkValue(value);
+        return putValue(key, value, true);
+    }
+
+    /**
+     * Returns the value of the key, computing and putting it if the key is absent.
+     * The function may be called by several threads racing on the same absent key, only one of the results is stored and returned to all of them.
+     */
+    @Override
+    public T computeIfAbsent(String key, Function<? super String, ? extends T> mappingFunction) {
+        T value = get(key);
+        if (value != null)
+            return value;
+        T computed = mappingFunction.apply(key);
+        if (computed == null)
+            return null;
+        T prev = putIfAbsent(key, computed);
+        return prev != null ? prev : computed;
+    }
+
+    @Override
+    public T replace(String key, T value) {
+        checkValue(value);
+        Node<T> node = getNode(key, 0, key.length());
+        if (node == null)
+            return null;
+        while (true) {
+            State<T> state = node.state;
+            // a dead node has no value
+            if (state.value == null)
+                return null;
+            if (casValue(node, state, value))
+                return state.value;
+        }
+    }
+
+    @Override
+    public boolean replace(String key, T oldValue, T newValue) {
+        checkValue(oldValue);
+        checkValue(newValue);
+        Node<T> node = getNode(key, 0, key.length());
+        if (node == null)
+            return false;
+        while (true) {
+            State<T> state = node.state;
+            if (state.value == null || !state.value.equals(oldValue))
+                return false;
+            if (casValue(node, state, newValue))
+                return true;
+        }
+    }
+
+    /**
+     * Removes the entry of the key, pruning the nodes it leaves without value nor children (see the class documentation).
+     * @param key the key of the entry to remove
+     * @return the value of the removed entry if exist
+     */
+    @Override
+    public T remove(Object key) {
+        if (key instanceof String == false)
+            return null;
+        return removeValue((String) key, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (key instanceof String == false || value == null)
+            return false;
+        return removeValue((String) key, value) != null;
+    }
+
+    /**
+     * @return the number of entries. Exact when no write is running, an estimate otherwise.
+     */
+    @Override
+    public int size() {
+        long count = size.sum();
+        return count > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size.sum() <= 0;
+    }
+
+    /**
+     * Removes all the entries, one by one. Entries put concurrently may survive.
+     */
+    @Override
+    public void clear() {
+        Iterator<String> it = getKeySetIterator();
+        while (it.hasNext())
+            remove(it.next());
+    }
+
+    @Override
+    TrieWalker<String> walkKeys(String prefix) {
+        Node<T> node = getNode(prefix, 0, prefix.length());
+        return node == null ? null : new KeysIterator(node, prefix);
+    }
+
+    /**
+     * @return the characteristics of the streams of keys, which are weakly consistent
+     */
+    @Override
+    int keysCharacteristics() {
+        return super.keysCharacteristics() | Spliterator.CONCURRENT;
+    }
+
+    /**
+     * @return a view of the entries of this trie, with weakly consistent iterators. Map.Entry.setValue puts the new value in the trie.
+     */
+    @Override
+    public Set<Map.Entry<String,T>> entrySet() {
+        return new AbstractSet<Map.Entry<String,T>>() {
+            @Override
+            public Iterator<Map.Entry<String,T>> iterator() {
+                return new EntriesIterator(root, "");
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentTrieMap.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (o instanceof Map.Entry == false)
+                    return false;
+                Map.Entry<?,?> entry = (Map.Entry<?,?>) o;
+                T value = get(entry.getKey());
+                return value != null && value.equals(entry.getValue());
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if (o instanceof Map.Entry == false)
+                    return false;
+                Map.Entry<?,?> entry = (Map.Entry<?,?>) o;
+                return ConcurrentTrieMap.this.remove(entry.getKey(), entry.getValue());
+            }
+        };
+    }
+
+    private Node<T> getNode(CharSequence key, int start, int end) {
+        Node<T> node = root;
+        for (int i = start; i < end && node != null; i++)
+            node = node.state.find(key.charAt(i));
+        return node;
+    }
+
+    /**
+     * Sets the value of the key, adding the missing nodes of its path with compare-and-set. The path is walked again from the root
+     * when one of its nodes was pruned meanwhile.
+     * @param onlyIfAbsent true to keep the current value if any
+     * @return the previous value, null if the key did not exist
+     */
+    private T putValue(String key, T value, boolean onlyIfAbsent) {
+        retry:
+        while (true) {
+            Node<T> node = getOrCreateNode(key);
+            if (node == null)
+                continue;
+            while (true) {
+                State<T> state = node.state;
+                if (state == dead())
+                    continue retry;
+                if (state.value != null && onlyIfAbsent)
+                    return state.value;
+                if (casValue(node, state, value))
+                    return state.value;
+            }
+        }
+    }
+
+    /**
+     * finds the node of the key, adding the missing nodes of its path with compare-and-set. The dead children met on the way are
+     * unlinked, not to wait for the thread pruning them.
+     * @return the node, null if a node of the path was pruned meanwhile
+     */
+    private Node<T> getOrCreateNode(String key) {
+        Node<T> node = root;
+        for (int i = 0; i < key.length(); i++) {
+            char ch = key.charAt(i);
+            while (true) {
+                State<T> state = node.state;
+                if (state == dead())
+                    return null;
+                Node<T> child = state.find(ch);
+                if (child == null) {
+                    State<T> updated = state.with(new Node<>(ch));
+                    if (!STATE.compareAndSet(node, state, updated))
+                        continue; // another writer changed the state, maybe adding this child
+                    child = updated.find(ch);
+                } else if (child.state == dead()) {
+                    unlink(node, child);
+                    continue;
+                }
+                node = child;
+                break;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Clears the value of the key if it is 'expected' (any value if null), then prunes its path
+     * @return the removed value, null if the key did not exist or did not have the expected value
+     */
+    private T removeValue(String key, Object expected) {
+        Node<T>[] path = newNodes(key.length() + 1);
+        Node<T> node = root;
+        path[0] = node;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.state.find(key.charAt(i));
+            if (node == null)
+                return null;
+            path[i + 1] = node;
+        }
+        while (true) {
+            State<T> state = node.state;
+            T prev = state.value;
+            if (prev == null || (expected != null && !prev.equals(expected)))
+                return null;
+            if (casValue(node, state, null)) {
+                prune(path, key.length());
+                return prev;
+            }
+        }
+    }
+
+    /**
+     * Removes the nodes of a path left without value nor children, from the bottom. Each node is given the DEAD state by
+     * compare-and-set from its empty state, so a writer adding a value or a child to it at the same time either wins (and the
+     * node is kept) or sees it dead.
+     * @param path the nodes of the path, from the root
+     * @param depth the index of the last node of the path
+     */
+    private void prune(Node<T>[] path, int depth) {
+        for (int d = depth; d > 0; d--) {
+            Node<T> node = path[d];
+            State<T> state = node.state;
+            if (state != dead() && (!state.isEmpty() || !STATE.compareAndSet(node, state, dead())))
+                return;
+            unlink(path[d - 1], node);
+        }
+    }
+
+    /**
+     * Removes a dead node from the children of its parent, if it is still there. The parent, having a child, can not be dead.
+     */
+    private void unlink(Node<T> parent, Node<T> node) {
+        while (true) {
+            State<T> state = parent.state;
+            int index = state.indexOf(node.key);
+            if (index < 0 || state.nodes[index] != node)
+                return;
+            if (STATE.compareAndSet(parent, state, state.without(index)))
+                return;
+        }
+    }
+
+    /**
+     * sets the value of a node if its state is still 'state', counting the entries added and removed
+     */
+    private boolean casValue(Node<T> node, State<T> state, T value) {
+        if (!STATE.compareAndSet(node, state, state.withValue(value)))
+            return false;
+        if (state.value == null && value != null)
+            size.increment();
+        else if (state.value != null && value == null)
+            size.decrement();
+        return true;
+    }
+
+    private static void checkValue(Object value) {
+        if (value == null)
+            throw new NullPointerException("ConcurrentTrieMap does not support null values");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] newNodes(int length) {
+        return (Node<T>[]) new Node<?>[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> State<T>[] newStates(int length) {
+        return (State<T>[]) new State<?>[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> State<T> dead() {
+        return (State<T>) State.DEAD;
+    }
+
+    /**
+     * A node of the concurrent trie. Its state is only changed with compare-and-set.
+     */
+    static final class Node<T> {
+
+        final char key;
+        volatile State<T> state = State.empty();
+
+        Node(char key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * The immutable value and sorted children of a node. Changing the value or adding a child creates a new instance.
+     */
+    static final class State<T> {
+
+        private static final State<?> EMPTY = new State<>(null, new char[0], ConcurrentTrieMap.<Object>newNodes(0));
+        /**
+         * the final state of a pruned node, which has no value and no children
+         */
+        static final State<?> DEAD = new State<>(null, new char[0], ConcurrentTrieMap.<Object>newNodes(0));
+
+        final T value;
+        final char[] chars;
+        final Node<T>[] nodes;
+
+        State(T value, char[] chars, Node<T>[] nodes) {
+            this.value = value;
+            this.chars = chars;
+            this.nodes = nodes;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> State<T> empty() {
+            return (State<T>) EMPTY;
+        }
+
+        boolean isEmpty() {
+            return value == null && chars.length == 0;
+        }
+
+        Node<T> find(char ch) {
+            int index = indexOf(ch);
+            return index >= 0 ? nodes[index] : null;
+        }
+
+        /**
+         * @return the index of the child of the char, a negative number if there is none
+         */
+        int indexOf(char ch) {
+            char[] chars = this.chars;
+            if (chars.length <= LINEAR_SCAN_LIMIT) {
+                for (int i = 0; i < chars.length; i++)
+                    if (chars[i] == ch)
+                        return i;
+                return -1;
+            }
+            return Arrays.binarySearch(chars, ch);
+        }
+
+        State<T> withValue(T value) {
+            return new State<>(value, chars, nodes);
+        }
+
+        /**
+         * @return a copy of this state with the (absent) child inserted at its place
+         */
+        State<T> with(Node<T> child) {
+            int index = -Arrays.binarySearch(chars, child.key) - 1;
+            char[] newChars = new char[chars.length + 1];
+            Node<T>[] newNodes = Arrays.copyOf(nodes, nodes.length + 1);
+            System.arraycopy(chars, 0, newChars, 0, index);
+            System.arraycopy(chars, index, newChars, index + 1, chars.length - index);
+            System.arraycopy(nodes, index, newNodes, index + 1, nodes.length - index);
+            newChars[index] = child.key;
+            newNodes[index] = child;
+            return new State<>(value, newChars, newNodes);
+        }
+
+        /**
+         * @return a copy of this state without the child at the index
+         */
+        State<T> without(int index) {
+            char[] newChars = new char[chars.length - 1];
+            Node<T>[] newNodes = newNodes(nodes.length - 1);
+            System.arraycopy(chars, 0, newChars, 0, index);
+            System.arraycopy(chars, index + 1, newChars, index, newChars.length - index);
+            System.arraycopy(nodes, 0, newNodes, 0, index);
+            System.arraycopy(nodes, index + 1, newNodes, index, newNodes.length - index);
+            return new State<>(value, newChars, newNodes);
+        }
+    }
+
+    /**
+     * Walks the sub-trie of a node. The state of each node is read once, as a snapshot, a cursor being the index of a child in
+     * this snapshot, so the iteration is weakly consistent.
+     */
+    private abstract class DfsIterator<E> extends TrieWalker<E> {
+
+        private Node<T>[] nodes = newNodes(INITIAL_DEPTH);
+        private State<T>[] states = newStates(INITIAL_DEPTH);
+        T nextValue;
+
+        DfsIterator(Node<T> start, String prefix) {
+            super(prefix);
+            nodes[0] = start;
+        }
+
+        @Override
+        int firstCursor(int depth) {
+            State<T> snapshot = nodes[depth].state;
+            states[depth] = snapshot;
+            return snapshot.nodes.length > 0 ? 0 : END;
+        }
+
+        @Override
+        int nextCursor(int depth, int cursor) {
+            return cursor + 1 < states[depth].nodes.length ? cursor + 1 : END;
+        }
+
+        @Override
+        void pushChild(int depth, int cursor) {
+            Node<T> child = states[depth - 1].nodes[cursor];
+            nodes[depth] = child;
+            appendLabel(child.key);
+        }
+
+        @Override
+        boolean visit(int depth) {
+            nextValue = states[depth].value;
+            return nextValue != null;
+        }
+
+        @Override
+        void pop(int depth) {
+            nodes[depth] = null;
+            states[depth] = null;
+        }
+
+        @Override
+        void grow(int length) {
+            nodes = Arrays.copyOf(nodes, length);
+            states = Arrays.copyOf(states, length);
+        }
+
+        @Override
+        void removeKey(String key) {
+            ConcurrentTrieMap.this.remove(key);
+        }
+    }
+
+    private class KeysIterator extends DfsIterator<String> {
+
+        KeysIterator(Node<T> start, String prefix) {
+            super(start, prefix);
+        }
+
+        @Override
+        String current() {
+            return nextKey;
+        }
+    }
+
+    private class EntriesIterator extends DfsIterator<Map.Entry<String,T>> {
+
+        EntriesIterator(Node<T> start, String prefix) {
+            super(start, prefix);
+        }
+
+        @Override
+        Map.Entry<String,T> current() {
+            return new AbstractMap.SimpleEntry<String,T>(nextKey, nextValue) {
+                @Override
+                public T setValue(T value) {
+                    put(getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.markety.trie;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+
+/**
+ * A read-only map stored as a minimal acyclic automaton (DAWG), built from a TrieMap.
+ * A trie shares the common prefixes of its keys, a DAWG also shares their common suffixes: the sub-tries accepting the same set of
+ * suffixes are merged into one state. Dictionary-like keys (words and their inflected forms, domain names..) share most of their
+ * suffixes, so the automaton has much less states than the trie has nodes.
+ *
+ * Values can not be stored in shared states, so each key is given its ordinal, its rank in lexicographic order, and the values are
+ * stored in a table indexed by the ordinal. The ordinal is computed while walking the key: each state knows the number of keys
+ * accepted from it, and each transition the number of keys of the transitions before it.
+ * The states and transitions are stored in flat primitive arrays; the transitions of a state are contiguous and sorted by char.
+ * @param <T> Class type of the values
+ */
+public class DawgMap<T> extends AbstractTrieMap<T> {
+
+    private static final int LINEAR_SCAN_LIMIT = 8;
+
+    /**
+     * the transitions of the state s are the indexes [firstTransition[s], firstTransition[s + 1])
+     */
+    private final int[] firstTransition;
+    /**
+     * the states accepting the empty suffix (the ends of keys)
+     */
+    private final BitSet finals;
+    /**
+     * the number of keys accepted from each state
+     */
+    private final int[] counts;
+    private final char[] labels;
+    private final int[] targets;
+    /**
+     * the number of keys accepted from the state of each transition through the transitions before it (its final flag included)
+     */
+    private final int[] skipped;
+    private final Object[] values;
+    private final int root;
+
+    private DawgMap(Builder<T> builder, int root, Object[] values) {
+        int states = builder.stateCount;
+        int transitions = builder.transitionCount;
+        this.firstTransition = Arrays.copyOf(builder.firstTransition, states + 1);
+        this.firstTransition[states] = transitions;
+        this.finals = builder.finals;
+        this.counts = Arrays.copyOf(builder.counts, states);
+        this.labels = Arrays.copyOf(builder.labels, transitions);
+        this.targets = Arrays.copyOf(builder.targets, transitions);
+        this.skipped = Arrays.copyOf(builder.skipped, transitions);
+        this.values = values;
+        this.root = root;
+    }
+
+    /**
+     * Builds the minimal automaton of the keys of a trie, in O(number of nodes): the nodes are visited in post-order, and a node
+     * becomes the state already built for an equivalent node (same final flag, same chars leading to the same states) if any.
+     * @param trie the trie to convert, not modified. Convert a snapshot() of the trie if it may be modified meanwhile.
+     * @return a read-only map having the entries of the trie
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> DawgMap<T> of(TrieMap<T> trie) {
+        TrieNode<T> rootNode = trie.getRoot();
+        Builder<T> builder = new Builder<>();
+
+        Frame<T>[] stack = (Frame<T>[]) new Frame<?>[16];
+        int depth = 0;
+        stack[0] = new Frame<>();
+        stack[0].init(rootNode);
+        int root = -1;
+        while (depth >= 0) {
+            Frame<T> frame = stack[depth];
+            if (frame.next < frame.childs.length) {
+                if (++depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth * 2);
+                if (stack[depth] == null)
+                    stack[depth] = new Frame<>();
+                stack[depth].init(frame.childs[frame.next]);
+                continue;
+            }
+            int state = builder.intern(frame.node.getValue() != null, frame.childs, frame.states);
+            frame.node = null;
+            if (--depth >= 0) {
+                Frame<T> parent = stack[depth];
+                parent.states[parent.next++] = state;
+            } else {
+                root = state;
+            }
+        }
+
+        // the values, by ordinal: the keys in lexicographic order
+        Object[] values = new Object[rootNode.size()];
+        int ordinal = 0;
+        TrieNode<T>[] nodes = TrieNode.newNodeArray(16);
+        int top = 0;
+        nodes[0] = rootNode;
+        while (top >= 0) {
+            TrieNode<T> node = nodes[top--];
+            if (node.getValue() != null)
+                values[ordinal++] = node.getValue();
+            TrieNode<T>[] childs = node.getSortedChilds();
+            if (top + childs.length >= nodes.length)
+                nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, top + childs.length + 1));
+            for (int i = childs.length - 1; i >= 0; i--)
+                nodes[++top] = childs[i];
+        }
+        return new DawgMap<>(builder, root, values);
+    }
+
+    //================================CLASS METHODS=============================
+
+    /**
+     * @param key the key
+     * @return the value associated with the key
+     */
+    @Override
+    public T get(Object key) {
+        if (key instanceof String == false)
+            return null;
+        int ordinal = ordinal((String) key);
+        return ordinal < 0 ? null : getValue(ordinal);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && ordinal((String) key) >= 0;
+    }
+
+    /**
+     * @param key the key
+     * @return the rank of the key among the keys of this map in lexicographic order, -1 if the key does not exist
+     */
+    public int ordinal(CharSequence key) {
+        long found = walk(key);
+        if (found < 0)
+            return -1;
+        int state = (int) (found >>> 32);
+        return finals.get(state) ? (int) found : -1;
+    }
+
+    /**
+     * @return the number of entries, which is counted by the initial state. O(1)
+     */
+    @Override
+    public int size() {
+        return counts[root];
+    }
+
+    @Override
+    public T put(String key, T value) {
+        throw new RuntimeException("Can not make modifications to read-only trie-view");
+    }
+
+    @Override
+    public T remove(Object key) {
+        throw new RuntimeException("Can not make modifications to read-only trie-view");
+    }
+
+    @Override
+    public void clear() {
+        throw new RuntimeException("Can not make modifications to read-only trie-view");
+    }
+
+    @Override
+    TrieWalker<String> walkKeys(String prefix) {
+        long found = walk(prefix);
+        return found < 0 ? null : new KeysIterator(found, prefix);
+    }
+
+    @Override
+    int keysCharacteristics() {
+        return super.keysCharacteristics() | Spliterator.IMMUTABLE;
+    }
+
+    /**
+     * @return a read-only view of the entries of this map, in lexicographic key order
+     */
+    @Override
+    public Set<Map.Entry<String,T>> entrySet() {
+        return new AbstractSet<Map.Entry<String,T>>() {
+            @Override
+            public Iterator<Map.Entry<String,T>> iterator() {
+                return new EntriesIterator((long) root << 32, "");
+            }
+
+            @Override
+            public int size() {
+                return DawgMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return the number of states of the automaton
+     */
+    public int getStatesCount() {
+        return counts.length;
+    }
+
+    /**
+     * @return the number of transitions of the automaton
+     */
+    public int getTransitionsCount() {
+        return labels.length;
+    }
+
+    //================================STATES====================================
+
+    /**
+     * Follows the chars of a key from the initial state
+     * @return the reached state in the 32 high bits and the ordinal of the first key starting with 'key' in the 32 low bits, -1 if no key starts with it
+     */
+    private long walk(CharSequence key) {
+        int state = root;
+        int ordinal = 0;
+        for (int i = 0; i < key.length(); i++) {
+            int transition = findTransition(state, key.charAt(i));
+            if (transition < 0)
+                return -1;
+            ordinal += skipped[transition];
+            state = targets[transition];
+        }
+        return (long) state << 32 | ordinal;
+    }
+
+    private int findTransition(int state, char ch) {
+        int low = firstTransition[state];
+        int high = firstTransition[state + 1] - 1;
+        if (high - low < LINEAR_SCAN_LIMIT) {
+            for (int i = low; i <= high; i++) {
+                char c = labels[i];
+                if (c == ch)
+                    return i;
+                if (c > ch)
+                    return -1;
+            }
+            return -1;
+        }
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char c = labels[mid];
+            if (c < ch)
+                low = mid + 1;
+            else if (c > ch)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T getValue(int ordinal) {
+        return (T) values[ordinal];
+    }
+
+    /**
+     * Hash-conses the states while the trie is visited in post-order
+     */
+    private static final class Builder<T> {
+
+        private final Map<Signature, Integer> states = new HashMap<>();
+        int[] firstTransition = new int[16];
+        final BitSet finals = new BitSet();
+        int[] counts = new int[16];
+        int stateCount;
+        char[] labels = new char[16];
+        int[] targets = new int[16];
+        int[] skipped = new int[16];
+        int transitionCount;
+
+        /**
+         * @return the state of a node, created if no equivalent state exists
+         */
+        int intern(boolean isFinal, TrieNode<T>[] childs, int[] childStates) {
+            char[] chars = new char[childs.length];
+            for (int i = 0; i < childs.length; i++)
+                chars[i] = childs[i].getChar();
+            Signature signature = new Signature(isFinal, chars, childStates);
+            Integer existing = states.get(signature);
+            if (existing != null)
+                return existing;
+
+            int state = stateCount++;
+            if (state == counts.length) {
+                firstTransition = Arrays.copyOf(firstTransition, state * 2);
+                counts = Arrays.copyOf(counts, state * 2);
+            }
+            if (transitionCount + chars.length > labels.length) {
+                int capacity = Math.max(labels.length * 2, transitionCount + chars.length);
+                labels = Arrays.copyOf(labels, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                skipped = Arrays.copyOf(skipped, capacity);
+            }
+            firstTransition[state] = transitionCount;
+            int count = isFinal ? 1 : 0;
+            if (isFinal)
+                finals.set(state);
+            for (int i = 0; i < chars.length; i++) {
+                labels[transitionCount] = chars[i];
+                targets[transitionCount] = childStates[i];
+                skipped[transitionCount++] = count;
+                count += counts[childStates[i]];
+            }
+            counts[state] = count;
+            states.put(signature, state);
+            return state;
+        }
+    }
+
+    /**
+     * What makes two states equivalent: the final flag and the transitions (chars and target states)
+     */
+    private static final class Signature {
+
+        private final boolean isFinal;
+        private final char[] chars;
+        private final int[] targets;
+        private final int hash;
+
+        Signature(boolean isFinal, char[] chars, int[] targets) {
+            this.isFinal = isFinal;
+            this.chars = chars;
+            this.targets = targets;
+            this.hash = 31 * (31 * Boolean.hashCode(isFinal) + Arrays.hashCode(chars)) + Arrays.hashCode(targets);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Signature == false)
+                return false;
+            Signature other = (Signature) obj;
+            return hash == other.hash && isFinal == other.isFinal && Arrays.equals(chars, other.chars) && Arrays.equals(targets, other.targets);
+        }
+    }
+
+    /**
+     * A node of the trie being converted, with the states of its children converted so far
+     */
+    private static final class Frame<T> {
+
+        TrieNode<T> node;
+        TrieNode<T>[] childs;
+        int[] states;
+        int next;
+
+        void init(TrieNode<T> node) {
+            this.node = node;
+            this.childs = node.getSortedChilds();
+            this.states = new int[childs.length];
+            this.next = 0;
+        }
+    }
+
+    /**
+     * Walks the keys accepted from a state, a cursor being the index of a transition. Keys are visited in the order of their
+     * ordinals, so the ordinal of the current key is a counter.
+     */
+    private abstract class DfsIterator<E> extends TrieWalker<E> {
+
+        private int[] states = new int[INITIAL_DEPTH];
+        private int ordinal;
+        int nextOrdinal;
+
+        /**
+         * @param start the state in the 32 high bits, the ordinal of its first key in the 32 low bits
+         */
+        DfsIterator(long start, String base) {
+            super(base);
+            states[0] = (int) (start >>> 32);
+            ordinal = (int) start;
+        }
+
+        @Override
+        int firstCursor(int depth) {
+            int state = states[depth];
+            return firstTransition[state] < firstTransition[state + 1] ? firstTransition[state] : END;
+        }
+
+        @Override
+        int nextCursor(int depth, int cursor) {
+            return cursor + 1 < firstTransition[states[depth] + 1] ? cursor + 1 : END;
+        }
+
+        @Override
+        void pushChild(int depth, int cursor) {
+            states[depth] = targets[cursor];
+            appendLabel(labels[cursor]);
+        }
+
+        @Override
+        boolean visit(int depth) {
+            if (!finals.get(states[depth]))
+                return false;
+            nextOrdinal = ordinal++;
+            return true;
+        }
+
+        @Override
+        void grow(int length) {
+            states = Arrays.copyOf(states, length);
+        }
+
+        @Override
+        long size() {
+            return counts[states[0]];
+        }
+    }
+
+    private class KeysIterator extends DfsIterator<String> {
+
+        KeysIterator(long start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        String current() {
+            return nextKey;
+        }
+    }
+
+    private class EntriesIterator extends DfsIterator<Map.Entry<String,T>> {
+
+        EntriesIterator(long start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        Map.Entry<String,T> current() {
+            return new AbstractMap.SimpleImmutableEntry<>(nextKey, getValue(nextOrdinal));
+        }
+    }
+}
@@ -0,0 +1,662 @@
+package com.markety.trie;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A trie map stored in a double array: the nodes are slots of two int arrays, BASE and CHECK, and the child of the node s for the
+ * char c is the slot t = BASE[s] + code(c), which is a child of s if CHECK[t] == s. A step of a lookup is thus two array reads,
+ * with no hashing, no boxed char and no pointer chasing; the root is the slot 0.
+ * The chars are given small codes in order of first appearance (the alphabet), so the children of a node fit in a narrow range of
+ * slots. A new child whose slot is taken makes the children of its parent move to a new BASE where all their slots are free
+ * (relocation); the free slots are kept in a linked list threaded through the arrays.
+ * Each node also links its first child and its next sibling in char order, to iterate the keys in lexicographic order and to find
+ * the children to move without scanning the alphabet.
+ *
+ * A trie is best built at once (of), placing the children of each node together, and then updated by put and remove.
+ * Iterators are not valid anymore after a put or a remove.
+ * @param <T> Class type of the value to be stored in the trie
+ */
+public class DoubleArrayTrieMap<T> extends AbstractTrieMap<T> {
+
+    private static final int INITIAL_CAPACITY = 256;
+    /**
+     * the number of free slots tried by findBase before placing the children after the last slot
+     */
+    private static final int MAX_TRIALS = 1024;
+    private static final int NONE = -1;
+    /**
+     * the check of the root, which is no node: the slot 0 is then never taken for a child of the node 0
+     */
+    private static final int ROOT_CHECK = Integer.MAX_VALUE;
+
+    /**
+     * for a node, the offset of the slots of its children; for a free slot, minus the previous free slot
+     */
+    private int[] base;
+    /**
+     * for a node, its parent (ROOT_CHECK for the root); for a free slot, minus the next free slot
+     */
+    private int[] check;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private Object[] values;
+    /**
+     * a free slot, 0 if none (the root is never free)
+     */
+    private int freeHead;
+
+    /**
+     * the code of each char, 0 for the chars not in any key, and the char of each code
+     */
+    private int[] codes;
+    private char[] chars;
+    private int alphabetSize;
+
+    private int size;
+    private int nodesCount;
+
+    /**
+     * Builds an empty trie
+     */
+    public DoubleArrayTrieMap() {
+        init(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Builds a trie having the entries of a TrieMap, in O(number of nodes): its nodes are visited in BFS order and the children of
+     * each node are placed together, so no node is moved.
+     * @param trie the trie to copy, not modified
+     * @return a trie having the entries of the passed trie
+     */
+    public static <T> DoubleArrayTrieMap<T> of(TrieMap<? extends T> trie) {
+        DoubleArrayTrieMap<T> map = new DoubleArrayTrieMap<>();
+        map.values[0] = trie.getRoot().getValue();
+        map.size = trie.size();
+
+        // the slots of the queued nodes, in the same order
+        ArrayDeque<TrieNode<? extends T>> queue = new ArrayDeque<>();
+        int[] slots = new int[16];
+        int head = 0;
+        int tail = 0;
+        queue.add(trie.getRoot());
+        slots[tail++] = 0;
+        int[] childCodes = new int[16];
+        while (!queue.isEmpty()) {
+            TrieNode<? extends T> node = queue.poll();
+            int s = slots[head++];
+            TrieNode<? extends T>[] childs = node.getSortedChilds();
+            if (childs.length == 0)
+                continue;
+            if (childs.length > childCodes.length)
+                childCodes = new int[Math.max(childs.length, childCodes.length * 2)];
+            for (int i = 0; i < childs.length; i++) {
+                char c = childs[i].getChar();
+                int code = map.code(c);
+                childCodes[i] = code != 0 ? code : map.addCode(c);
+            }
+            map.base[s] = map.findBase(childCodes, childs.length);
+            // the children are sorted by char, so each one is linked after the previous one
+            int previous = NONE;
+            for (int i = 0; i < childs.length; i++) {
+                int t = map.newNode(s, childCodes[i]);
+                map.values[t] = childs[i].getValue();
+                if (previous == NONE)
+                    map.firstChild[s] = t;
+                else
+                    map.nextSibling[previous] = t;
+                previous = t;
+                if (tail == slots.length)
+                    slots = Arrays.copyOf(slots, tail * 2);
+                queue.add(childs[i]);
+                slots[tail++] = t;
+            }
+        }
+        map.trim();
+        return map;
+    }
+
+    /**
+     * Builds a trie having the entries of a map
+     * @param entries the entries, not null values
+     * @return a trie having the entries of the passed map
+     */
+    public static <T> DoubleArrayTrieMap<T> of(Map<String, ? extends T> entries) {
+        if (entries instanceof TrieMap)
+            return of((TrieMap<? extends T>) entries);
+        TrieMap<T> trie = new TrieMap<>(TrieMap.CHILD_STORAGE_MODE_USING_ARRAYS, false);
+        trie.putAll(entries);
+        return of(trie);
+    }
+
+    //================================CLASS METHODS=============================
+
+    /**
+     * puts or replaces the value specified by the key
+     * @param key the key
+     * @param value the value to store, not null
+     * @return the previous value if exist, null otherwise
+     */
+    @Override
+    public T put(String key, T value) {
+        return put(key, 0, key.length(), value);
+    }
+
+    /**
+     * puts or replaces the value specified by the key, where the key is a slice of a char sequence (ex: a part of a buffer).
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @param value the value to store, not null
+     * @return the previous value if exist, null otherwise
+     */
+    public T put(CharSequence key, int start, int end, T value) {
+        if (value == null)
+            throw new NullPointerException("DoubleArrayTrieMap does not support null values");
+        checkRange(key, start, end);
+
+        int s = 0;
+        for (int i = start; i < end; i++) {
+            char c = key.charAt(i);
+            int code = code(c);
+            if (code == 0)
+                code = addCode(c);
+            int t = base[s] + code;
+            if (t >= check.length || check[t] != s)
+                t = insertChild(s, code);
+            s = t;
+        }
+        T prev = getValue(s);
+        values[s] = value;
+        if (prev == null)
+            size++;
+        return prev;
+    }
+
+    /**
+     * @param key the key
+     * @return the value associated with the key
+     */
+    @Override
+    public T get(Object key) {
+        if (key instanceof String == false)
+            return null;
+        String word = (String) key;
+        int node = getNode(word, 0, word.length());
+        return node < 0 ? null : getValue(node);
+    }
+
+    /**
+     * Finds the value of a key given as a slice of a char sequence (ex: a part of a buffer), without copying it.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return the value associated with the key, null if the key does not exist
+     */
+    public T get(CharSequence key, int start, int end) {
+        checkRange(key, start, end);
+        int node = getNode(key, start, end);
+        return node < 0 ? null : getValue(node);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Checks whether a key given as a slice of a char sequence (ex: a part of a buffer) exists.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return true if the key exists in this trie
+     */
+    public boolean containsKey(CharSequence key, int start, int end) {
+        return get(key, start, end) != null;
+    }
+
+    /**
+     * Removes the entry of the key, and frees the slots of the nodes left without value and children
+     * @param key the key of the entry to remove
+     * @return the value of the removed entry if exist
+     */
+    @Override
+    public T remove(Object key) {
+        if (key instanceof String == false)
+            return null;
+        String word = (String) key;
+        return remove(word, 0, word.length());
+    }
+
+    /**
+     * Removes the entry of a key given as a slice of a char sequence (ex: a part of a buffer).
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return the value of the removed entry if exist
+     */
+    public T remove(CharSequence key, int start, int end) {
+        checkRange(key, start, end);
+        int node = getNode(key, start, end);
+        if (node < 0 || values[node] == null)
+            return null;
+
+        T prev = getValue(node);
+        values[node] = null;
+        size--;
+        while (node != 0 && values[node] == null && firstChild[node] == NONE) {
+            int parent = check[node];
+            unlinkChild(parent, node);
+            freeSlot(node);
+            nodesCount--;
+            node = parent;
+        }
+        return prev;
+    }
+
+    /**
+     * @return the number of entries. O(1)
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        init(INITIAL_CAPACITY);
+    }
+
+    @Override
+    TrieWalker<String> walkKeys(String prefix) {
+        int node = getNode(prefix, 0, prefix.length());
+        return node < 0 ? null : new KeysIterator(node, prefix);
+    }
+
+    /**
+     * @return a view of the entries of this trie, in lexicographic key order. Map.Entry.setValue writes through to the trie.
+     */
+    @Override
+    public Set<Map.Entry<String,T>> entrySet() {
+        return new AbstractSet<Map.Entry<String,T>>() {
+            @Override
+            public Iterator<Map.Entry<String,T>> iterator() {
+                return new EntriesIterator(0, "");
+            }
+
+            @Override
+            public int size() {
+                return DoubleArrayTrieMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return the number of nodes of this trie (the root included)
+     */
+    public int getNodesCount() {
+        return nodesCount;
+    }
+
+    /**
+     * @return the number of slots of the arrays, used or free
+     */
+    public int getCapacity() {
+        return check.length;
+    }
+
+    //================================NODES=====================================
+
+    private void init(int capacity) {
+        base = new int[0];
+        check = new int[0];
+        firstChild = new int[0];
+        nextSibling = new int[0];
+        values = new Object[0];
+        freeHead = 0;
+        codes = new int[128];
+        chars = new char[16];
+        alphabetSize = 0;
+        size = 0;
+        nodesCount = 1;
+        ensureCapacity(capacity);
+        occupy(0, ROOT_CHECK);
+    }
+
+    private static void checkRange(CharSequence key, int start, int end) {
+        if (start < 0 || end > key.length() || start > end)
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + key.length());
+    }
+
+    private int code(char c) {
+        return c < codes.length ? codes[c] : 0;
+    }
+
+    private int addCode(char c) {
+        if (c >= codes.length)
+            codes = Arrays.copyOf(codes, Math.max(c + 1, Math.min(codes.length * 2, Character.MAX_VALUE + 1)));
+        if (++alphabetSize == chars.length)
+            chars = Arrays.copyOf(chars, alphabetSize * 2);
+        codes[c] = alphabetSize;
+        chars[alphabetSize] = c;
+        return alphabetSize;
+    }
+
+    /**
+     * @return the node of the key, -1 if no key starts with it
+     */
+    private int getNode(CharSequence key, int start, int end) {
+        int s = 0;
+        for (int i = start; i < end; i++) {
+            char c = key.charAt(i);
+            // a char out of the alphabet leads to the slot base[s], which is never a child of s
+            int t = base[s] + (c < codes.length ? codes[c] : 0);
+            if (t >= check.length || check[t] != s)
+                return -1;
+            s = t;
+        }
+        return s;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T getValue(int node) {
+        return (T) values[node];
+    }
+
+    private char getChar(int node) {
+        return chars[node - base[check[node]]];
+    }
+
+    private boolean isFree(int slot) {
+        return slot >= check.length || check[slot] < 0;
+    }
+
+    /**
+     * Adds a child to a node, moving its children first if the slot of the new one is taken
+     * @return the new child
+     */
+    private int insertChild(int s, int code) {
+        if (firstChild[s] == NONE)
+            base[s] = findBase(new int[]{code}, 1);
+        else if (!isFree(base[s] + code))
+            relocate(s, code);
+        int t = newNode(s, code);
+
+        char c = chars[code];
+        int previous = NONE;
+        int next = firstChild[s];
+        while (next != NONE && getChar(next) < c) {
+            previous = next;
+            next = nextSibling[next];
+        }
+        nextSibling[t] = next;
+        if (previous == NONE)
+            firstChild[s] = t;
+        else
+            nextSibling[previous] = t;
+        return t;
+    }
+
+    /**
+     * Takes the slot of the child of a node for a code, the base of the node being set
+     * @return the new child
+     */
+    private int newNode(int s, int code) {
+        int t = base[s] + code;
+        ensureCapacity(t + 1);
+        occupy(t, s);
+        nodesCount++;
+        return t;
+    }
+
+    /**
+     * Moves the children of a node to a base where they and a new child all find a free slot
+     */
+    private void relocate(int s, int newCode) {
+        int oldBase = base[s];
+        int count = 0;
+        int[] childCodes = new int[8];
+        for (int t = firstChild[s]; t != NONE; t = nextSibling[t]) {
+            if (count == childCodes.length)
+                childCodes = Arrays.copyOf(childCodes, count * 2);
+            childCodes[count++] = t - oldBase;
+        }
+        if (count == childCodes.length)
+            childCodes = Arrays.copyOf(childCodes, count + 1);
+        childCodes[count] = newCode;
+        int newBase = findBase(childCodes, count + 1);
+
+        int max = 0;
+        for (int i = 0; i <= count; i++)
+            max = Math.max(max, childCodes[i]);
+        ensureCapacity(newBase + max + 1);
+        for (int i = 0; i < count; i++) {
+            int from = oldBase + childCodes[i];
+            int to = newBase + childCodes[i];
+            occupy(to, s);
+            base[to] = base[from];
+            values[to] = values[from];
+            firstChild[to] = firstChild[from];
+            nextSibling[to] = nextSibling[from] == NONE ? NONE : nextSibling[from] - oldBase + newBase;
+            // the children of the moved node point to its new slot
+            for (int g = firstChild[from]; g != NONE; g = nextSibling[g])
+                check[g] = to;
+            freeSlot(from);
+        }
+        firstChild[s] = firstChild[s] - oldBase + newBase;
+        base[s] = newBase;
+    }
+
+    /**
+     * @return a base where all the codes find a free slot: one tried from the free slots (up to MAX_TRIALS), or after the last slot
+     */
+    private int findBase(int[] childCodes, int count) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++)
+            min = Math.min(min, childCodes[i]);
+        if (freeHead != 0) {
+            // next fit: the search goes on from the slot where the previous one stopped
+            int slot = freeHead;
+            int trials = 0;
+            do {
+                int b = slot - min;
+                if (b >= 0 && fits(b, childCodes, count)) {
+                    freeHead = slot;
+                    return b;
+                }
+                slot = -check[slot];
+            } while (slot != freeHead && ++trials < MAX_TRIALS);
+            freeHead = slot;
+        }
+        return Math.max(0, check.length - min);
+    }
+
+    private boolean fits(int b, int[] childCodes, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!isFree(b + childCodes[i]))
+                return false;
+        }
+        return true;
+    }
+
+    private void unlinkChild(int parent, int child) {
+        if (firstChild[parent] == child) {
+            firstChild[parent] = nextSibling[child];
+            return;
+        }
+        int previous = firstChild[parent];
+        while (nextSibling[previous] != child)
+            previous = nextSibling[previous];
+        nextSibling[previous] = nextSibling[child];
+    }
+
+    private void ensureCapacity(int capacity) {
+        int length = check.length;
+        if (capacity <= length)
+            return;
+        int newLength = Math.max(capacity, length * 2);
+        base = Arrays.copyOf(base, newLength);
+        check = Arrays.copyOf(check, newLength);
+        firstChild = Arrays.copyOf(firstChild, newLength);
+        nextSibling = Arrays.copyOf(nextSibling, newLength);
+        values = Arrays.copyOf(values, newLength);
+        for (int slot = Math.max(length, 1); slot < newLength; slot++)
+            freeSlot(slot);
+        // the new slots are tried first
+        freeHead = Math.max(length, 1);
+    }
+
+    /**
+     * Cuts the arrays after the last node, and links again the free slots left before it
+     */
+    private void trim() {
+        int length = check.length;
+        while (length > 1 && check[length - 1] < 0)
+            length--;
+        base = Arrays.copyOf(base, length);
+        check = Arrays.copyOf(check, length);
+        firstChild = Arrays.copyOf(firstChild, length);
+        nextSibling = Arrays.copyOf(nextSibling, length);
+        values = Arrays.copyOf(values, length);
+        freeHead = 0;
+        for (int slot = 1; slot < length; slot++) {
+            if (check[slot] < 0)
+                freeSlot(slot);
+        }
+    }
+
+    /**
+     * Links a slot at the end of the free list
+     */
+    private void freeSlot(int slot) {
+        if (freeHead == 0) {
+            freeHead = slot;
+            check[slot] = -slot;
+            base[slot] = -slot;
+        } else {
+            int last = -base[freeHead];
+            check[last] = -slot;
+            base[slot] = -last;
+            check[slot] = -freeHead;
+            base[freeHead] = -slot;
+        }
+        values[slot] = null;
+    }
+
+    /**
+     * Unlinks a slot from the free list and makes it a node without children
+     */
+    private void occupy(int slot, int parent) {
+        if (slot != 0) {
+            int next = -check[slot];
+            int previous = -base[slot];
+            if (next == slot) {
+                freeHead = 0;
+            } else {
+                check[previous] = -next;
+                base[next] = -previous;
+                if (freeHead == slot)
+                    freeHead = next;
+            }
+        }
+        check[slot] = parent;
+        base[slot] = 0;
+        firstChild[slot] = NONE;
+        nextSibling[slot] = NONE;
+        values[slot] = null;
+    }
+
+    /**
+     * Walks the sub-trie of a node following the first child and next sibling links, a cursor being the slot of a child
+     */
+    private abstract class DfsIterator<E> extends TrieWalker<E> {
+
+        private int[] nodes = new int[INITIAL_DEPTH];
+
+        DfsIterator(int start, String base) {
+            super(base);
+            nodes[0] = start;
+        }
+
+        @Override
+        int firstCursor(int depth) {
+            int child = firstChild[nodes[depth]];
+            return child != NONE ? child : END;
+        }
+
+        @Override
+        int nextCursor(int depth, int cursor) {
+            int sibling = nextSibling[cursor];
+            return sibling != NONE ? sibling : END;
+        }
+
+        @Override
+        void pushChild(int depth, int cursor) {
+            nodes[depth] = cursor;
+            appendLabel(getChar(cursor));
+        }
+
+        @Override
+        boolean visit(int depth) {
+            return values[nodes[depth]] != null;
+        }
+
+        @Override
+        void grow(int length) {
+            nodes = Arrays.copyOf(nodes, length);
+        }
+
+        @Override
+        void removeKey(String key) {
+            DoubleArrayTrieMap.this.remove(key);
+            // the freed slots were left already, but the sibling links around them changed: the next siblings are read again
+            for (int d = 0; d < depth(); d++) {
+                int sibling = nextSibling[nodes[d + 1]];
+                resetCursor(d, sibling != NONE ? sibling : END);
+            }
+        }
+
+        /**
+         * @return the node of nextKey
+         */
+        int currentNode() {
+            return nodes[depth()];
+        }
+    }
+
+    private class KeysIterator extends DfsIterator<String> {
+
+        KeysIterator(int start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        String current() {
+            return nextKey;
+        }
+    }
+
+    private class EntriesIterator extends DfsIterator<Map.Entry<String,T>> {
+
+        EntriesIterator(int start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        Map.Entry<String,T> current() {
+            return new AbstractMap.SimpleEntry<String,T>(nextKey, getValue(currentNode())) {
+                @Override
+                public T setValue(T value) {
+                    // the key exists, so put changes no slot
+                    put(getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,835 @@
+package com.markety.trie;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A TrieMap kept on disk by a write-ahead log and checkpoints, recovered by open(directory, codec) after a restart or a crash.
+ * Each put, remove and clear appends a record to an in-memory batch, under the lock of the map, and returns. A flusher thread writes
+ * the batch to the log and forces it to the disk every syncInterval milliseconds, so all the writes of the interval share one fsync
+ * (group commit): writes cost about as much as in memory, and a crash loses at most the last interval. A writer which needs its
+ * writes on the disk calls sync(), which waits for the next batch: the threads calling sync() together share its fsync.
+ * A checkpoint thread writes a compact image of the trie every checkpointInterval milliseconds, from a snapshot() taken under the
+ * lock in O(1): writers go on while the image is written. The log is rotated when the snapshot is taken, and the older logs and
+ * checkpoints are deleted once the new checkpoint is on the disk. So recovery maps the latest checkpoint and replays the log tail.
+ * The directory holds:
+ * <pre>
+ * checkpoint-N.trie  the entries written by the logs before log-N, in the format of MappedTrieMap (2GB at most)
+ * log-N.wal          magic, version, then batches: length, CRC32, records (op, key length, key chars, value length, value bytes)
+ * </pre>
+ * A batch torn by a crash fails its CRC: it is dropped from the end of the last log on recovery. Its writes were never acknowledged by sync().
+ * All the operations are synchronized: reads are as fast as in memory, but other threads wait during writes. Iterators and prefix
+ * streams run over a snapshot, without holding the lock.
+ * <pre>
+ * DurableTrieMap&lt;Integer&gt; trie = DurableTrieMap.open(Paths.get("data"), TrieValueCodec.INTEGERS);
+ * trie.put("car", 1);
+ * trie.sync();      // optional: wait for the write to be on the disk
+ * trie.close();
+ * </pre>
+ * @param <T> Class type of the values stored in the trie
+ */
+public class DurableTrieMap<T> extends AbstractMap<String,T> implements Closeable {
+
+    /**
+     * the writes are forced to the disk every 10ms by default
+     */
+    public static final long DEFAULT_SYNC_INTERVAL = 10;
+    /**
+     * a checkpoint is written every minute by default, if the trie was modified
+     */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 60_000;
+
+    private static final int MAGIC = 0x5457414C; // "TWAL"
+    private static final int VERSION = 1;
+    private static final int LOG_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int BATCH_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".trie";
+    private static final String LOG_PREFIX = "log-";
+    private static final String LOG_SUFFIX = ".wal";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BATCH_CAPACITY = 1 << 16;
+    /**
+     * writers wait for the flusher when the batch reaches this size, a larger batch is not kept after it was written
+     */
+    private static final int MAX_BATCH_SIZE = 1 << 24;
+
+    private final Path directory;
+    private final TrieValueCodec<T> codec;
+    private final TrieMap<T> trie;
+    private final long syncInterval;
+    private final Thread flusher;
+    private final ScheduledExecutorService checkpointer;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer batchHeader = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+
+    /**
+     * guarded by this: the records not written yet, the buffer they are swapped with, the number of records appended,
+     * and the number of records waited for by sync()
+     */
+    private ByteBuffer batch = ByteBuffer.allocate(BATCH_CAPACITY);
+    private ByteBuffer spare = ByteBuffer.allocate(BATCH_CAPACITY);
+    private long appended;
+    private long requested;
+    private boolean closed;
+    /**
+     * the number of records forced to the disk, and the error which stopped the flusher
+     */
+    private volatile long durable;
+    private volatile IOException failure;
+    private volatile IOException checkpointFailure;
+
+    private final Object checkpointLock = new Object();
+    /**
+     * guarded by ioLock: the current log, its number and the number of records when the last checkpoint was taken
+     */
+    private final Object ioLock = new Object();
+    private FileChannel log;
+    private long segment;
+    private long checkpointed;
+
+    private DurableTrieMap(Path directory, TrieValueCodec<T> codec, TrieMap<T> trie, long segment, long syncInterval,
+            long checkpointInterval) throws IOException {
+        this.directory = directory;
+        this.codec = codec;
+        this.trie = trie;
+        this.segment = segment;
+        this.syncInterval = syncInterval;
+        this.log = createLog(segment);
+
+        this.flusher = new Thread(this::runFlusher, "trie-log-flusher " + directory);
+        flusher.setDaemon(true);
+        flusher.start();
+        this.checkpointer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "trie-checkpointer " + directory);
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointer.scheduleWithFixedDelay(this::runCheckpoint, checkpointInterval, checkpointInterval, TimeUnit.MILLISECONDS);
+    }
+
+    //================================RECOVERY==================================
+
+    /**
+     * Opens a durable trie with the default intervals, storing the children of its nodes in hashmaps
+     * @param directory the directory of the log and the checkpoints, created if it does not exist
+     * @param codec the codec of the values
+     * @return the trie recovered from the directory, empty if the directory is new
+     * @throws IOException if the directory can not be read or written, or a checkpoint or a log is corrupted
+     */
+    public static <T> DurableTrieMap<T> open(Path directory, TrieValueCodec<T> codec) throws IOException {
+        return open(directory, codec, DEFAULT_SYNC_INTERVAL, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Opens a durable trie, storing the children of its nodes in hashmaps
+     * @param directory the directory of the log and the checkpoints, created if it does not exist
+     * @param codec the codec of the values
+     * @param syncIntervalMillis the longest time a write waits to be forced to the disk (the most a crash can lose)
+     * @param checkpointIntervalMillis the time between two checkpoints (the longest log to replay on recovery)
+     * @return the trie recovered from the directory, empty if the directory is new
+     * @throws IOException if the directory can not be read or written, or a checkpoint or a log is corrupted
+     */
+    public static <T> DurableTrieMap<T> open(Path directory, TrieValueCodec<T> codec, long syncIntervalMillis,
+            long checkpointIntervalMillis) throws IOException {
+        return open(directory, codec, TrieMap.CHILD_STORAGE_MODE_USING_HASHMAP, syncIntervalMillis, checkpointIntervalMillis);
+    }
+
+    /**
+     * Loads the latest checkpoint, replays the logs written since, and starts a new log
+     * @param childsStorageMode the storage mode of the children of the nodes of the trie
+     */
+    static <T> DurableTrieMap<T> open(Path directory, TrieValueCodec<T> codec, byte childsStorageMode, long syncIntervalMillis,
+            long checkpointIntervalMillis) throws IOException {
+        if (syncIntervalMillis <= 0 || checkpointIntervalMillis <= 0)
+            throw new IllegalArgumentException("The intervals must be positive: " + syncIntervalMillis + ", " + checkpointIntervalMillis);
+        Files.createDirectories(directory);
+        TreeMap<Long,Path> checkpoints = new TreeMap<>();
+        TreeMap<Long,Path> logs = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX))
+                    Files.delete(file); // a checkpoint interrupted by a crash
+                else if (name.startsWith(CHECKPOINT_PREFIX) && name.endsWith(CHECKPOINT_SUFFIX))
+                    checkpoints.put(number(name, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX), file);
+                else if (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX))
+                    logs.put(number(name, LOG_PREFIX, LOG_SUFFIX), file);
+            }
+        }
+
+        // the entries of the latest checkpoint come in lexicographic order: the trie is built bottom-up in one pass
+        TrieMapBuilder<T> builder = new TrieMapBuilder<>(childsStorageMode, false);
+        long base = 1;
+        if (!checkpoints.isEmpty()) {
+            base = checkpoints.lastKey();
+            builder.addAll(MappedTrieMap.open(checkpoints.lastEntry().getValue(), codec).entrySet().iterator());
+        }
+        TrieMap<T> trie = builder.build();
+
+        Map<Long,Path> tail = logs.tailMap(base, true);
+        long last = base - 1;
+        for (Map.Entry<Long,Path> entry : tail.entrySet()) {
+            long number = entry.getKey();
+            if (number != last + 1)
+                throw new IOException("Missing log " + LOG_PREFIX + (last + 1) + LOG_SUFFIX + " in " + directory);
+            replay(entry.getValue(), codec, trie, number == logs.lastKey());
+            last = number;
+        }
+
+        DurableTrieMap<T> map = new DurableTrieMap<>(directory, codec, trie, last + 1, syncIntervalMillis, checkpointIntervalMillis);
+        if (!tail.isEmpty())
+            map.checkpointed = -1; // the replayed logs are compacted by the next checkpoint
+        map.deleteBefore(base);
+        return map;
+    }
+
+    private static long number(String name, String prefix, String suffix) throws IOException {
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected file in a trie directory: " + name, e);
+        }
+    }
+
+    /**
+     * Applies the records of a log to a trie
+     * @param last true for the last log, whose last batch may have been torn by a crash: it is dropped from the file
+     */
+    private static <T> void replay(Path file, TrieValueCodec<T> codec, TrieMap<T> trie, boolean last) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < LOG_HEADER_SIZE) {
+                // created by a crash before its header was written
+                if (!last)
+                    throw new IOException("Truncated log: " + file);
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(BATCH_CAPACITY);
+            long position = 0;
+            if (read(channel, buffer, position, LOG_HEADER_SIZE) != LOG_HEADER_SIZE || buffer.getInt(0) != MAGIC)
+                throw new IOException("Not a trie log: " + file);
+            if (buffer.getInt(4) != VERSION)
+                throw new IOException("Unsupported trie log version " + buffer.getInt(4) + ": " + file);
+            position += LOG_HEADER_SIZE;
+
+            CRC32 crc = new CRC32();
+            while (position < channel.size()) {
+                int length = -1;
+                if (read(channel, buffer, position, BATCH_HEADER_SIZE) == BATCH_HEADER_SIZE) {
+                    length = buffer.getInt(0);
+                    int checksum = buffer.getInt(4);
+                    if (length < 0 || length > channel.size() - position - BATCH_HEADER_SIZE)
+                        length = -1;
+                    else {
+                        if (length > buffer.capacity())
+                            buffer = ByteBuffer.allocate(length);
+                        read(channel, buffer, position + BATCH_HEADER_SIZE, length);
+                        crc.reset();
+                        crc.update(buffer.array(), 0, length);
+                        if ((int) crc.getValue() != checksum)
+                            length = -1;
+                    }
+                }
+                if (length < 0) {
+                    if (!last)
+                        throw new IOException("Corrupted log at " + position + ": " + file);
+                    channel.truncate(position);
+                    channel.force(true);
+                    return;
+                }
+                apply(buffer, length, codec, trie);
+                position += BATCH_HEADER_SIZE + length;
+            }
+        }
+    }
+
+    /**
+     * reads length bytes of a channel at the start of the buffer
+     * @return the number of bytes read, less than length at the end of the channel
+     */
+    private static int read(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                break;
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Applies the records of a batch to a trie
+     */
+    private static <T> void apply(ByteBuffer batch, int length, TrieValueCodec<T> codec, TrieMap<T> trie) throws IOException {
+        batch.clear().limit(length);
+        StringBuilder key = new StringBuilder();
+        while (batch.hasRemaining()) {
+            byte op = batch.get();
+            if (op == CLEAR) {
+                trie.clear();
+                continue;
+            }
+            key.setLength(0);
+            for (int i = batch.getInt(); i > 0; i--)
+                key.append(batch.getChar());
+            if (op == REMOVE)
+                trie.remove(key, 0, key.length());
+            else if (op == PUT) {
+                int valueLength = batch.getInt();
+                trie.put(key, 0, key.length(), codec.decode(batch, batch.position(), valueLength));
+                batch.position(batch.position() + valueLength);
+            } else
+                throw new IOException("Unknown log record: " + op);
+        }
+    }
+
+    //================================CLASS METHODS=============================
+
+    /**
+     * puts or replaces the value specified by the key, and appends the write to the log
+     * @param key the key
+     * @param value the value to store, not null
+     * @return the previous value if exist, null otherwise
+     * @throws UncheckedIOException if the log can not be written anymore
+     */
+    @Override
+    public T put(String key, T value) {
+        return put(key, 0, key.length(), value);
+    }
+
+    /**
+     * puts or replaces the value of a key given as a slice of a char sequence (ex: a part of a buffer), and appends the write to the log
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @param value the value to store, not null
+     * @return the previous value if exist, null otherwise
+     * @throws UncheckedIOException if the log can not be written anymore
+     */
+    public T put(CharSequence key, int start, int end, T value) {
+        if (value == null)
+            throw new NullPointerException("TrieMap does not support null values");
+        // encoded before the trie is modified: a failing codec leaves both unchanged
+        byte[] bytes = codec.encode(value);
+        synchronized (this) {
+            awaitBatchSpace();
+            T prev = trie.put(key, start, end, value);
+            append(PUT, key, start, end, bytes);
+            return prev;
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the value associated with the key
+     */
+    @Override
+    public synchronized T get(Object key) {
+        return trie.get(key);
+    }
+
+    /**
+     * Finds the value of a key given as a slice of a char sequence (ex: a part of a buffer), without copying it.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return the value associated with the key, null if the key does not exist
+     */
+    public synchronized T get(CharSequence key, int start, int end) {
+        return trie.get(key, start, end);
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return trie.containsKey(key);
+    }
+
+    /**
+     * Checks whether a key given as a slice of a char sequence (ex: a part of a buffer) exists.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return true if the key exists in this trie
+     */
+    public synchronized boolean containsKey(CharSequence key, int start, int end) {
+        return trie.containsKey(key, start, end);
+    }
+
+    /**
+     * removes the key, and appends the removal to the log if the key existed
+     * @param key the key
+     * @return the removed value, null if the key did not exist
+     * @throws UncheckedIOException if the log can not be written anymore
+     */
+    @Override
+    public T remove(Object key) {
+        if (key instanceof String == false)
+            return null;
+        String word = (String) key;
+        return remove(word, 0, word.length());
+    }
+
+    /**
+     * removes a key given as a slice of a char sequence (ex: a part of a buffer), and appends the removal to the log if the key existed
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return the removed value, null if the key did not exist
+     * @throws UncheckedIOException if the log can not be written anymore
+     */
+    public synchronized T remove(CharSequence key, int start, int end) {
+        awaitBatchSpace();
+        T prev = trie.remove(key, start, end);
+        if (prev != null)
+            append(REMOVE, key, start, end, null);
+        return prev;
+    }
+
+    @Override
+    public synchronized void clear() {
+        awaitBatchSpace();
+        trie.clear();
+        append(CLEAR, "", 0, 0, null);
+    }
+
+    /**
+     * @return the number of entries. O(1)
+     */
+    @Override
+    public synchronized int size() {
+        return trie.size();
+    }
+
+    /**
+     * Takes an immutable snapshot of the entries, in O(1) (see TrieMap.snapshot): it can be queried by any thread, without lock,
+     * while writers go on.
+     * @return a read-only trie holding the current entries of this trie
+     */
+    public synchronized TrieMap<T> snapshot() {
+        return trie.snapshot();
+    }
+
+    /**
+     * Retrieves a set of all keys starting with the specified prefix
+     * @param prefix
+     * @return a list containing all keys starting with the specified prefix
+     */
+    public synchronized LinkedList<String> getKeysStartingWith(String prefix) {
+        return trie.getKeysStartingWith(prefix);
+    }
+
+    /**
+     * Retrieves a lazy iterator through the keys starting with the specified prefix, over a snapshot of the trie.
+     * @param prefix
+     * @return an iterator through the keys starting with the specified prefix (empty if no key starts with it)
+     */
+    public Iterator<String> getKeysStartingWithIterator(String prefix) {
+        return snapshot().getKeysStartingWithIterator(prefix);
+    }
+
+    /**
+     * Retrieves a lazy stream of the keys starting with the specified prefix, over a snapshot of the trie.
+     * @param prefix
+     * @return a sequential stream of the keys starting with the specified prefix
+     */
+    public Stream<String> keysStartingWith(String prefix) {
+        return snapshot().keysStartingWith(prefix);
+    }
+
+    /**
+     * Retrieves an iterator through all the keys, over a snapshot of the trie
+     */
+    public Iterator<String> getKeySetIterator() {
+        return snapshot().getKeySetIterator();
+    }
+
+    /**
+     * @return a view of the entries of this trie, in lexicographic key order. Each iterator walks a snapshot of the trie taken when it
+     * is created. Map.Entry.setValue puts the value in this trie, and removing an entry removes it from this trie.
+     */
+    @Override
+    public Set<Map.Entry<String,T>> entrySet() {
+        return new AbstractSet<Map.Entry<String,T>>() {
+            @Override
+            public Iterator<Map.Entry<String,T>> iterator() {
+                Iterator<Map.Entry<String,T>> it = snapshot().getRoot().newEntriesIterator("", DurableTrieMap.this::put);
+                return new Iterator<Map.Entry<String,T>>() {
+                    private Map.Entry<String,T> last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String,T> next() {
+                        last = it.next();
+                        return last;
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null)
+                            throw new IllegalStateException();
+                        DurableTrieMap.this.remove(last.getKey());
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return DurableTrieMap.this.size();
+            }
+        };
+    }
+
+    //================================LOG=======================================
+
+    /**
+     * Waits until all the writes made before the call are forced to the disk. The threads calling sync() while a batch is written
+     * are all served by the next batch, with a single fsync.
+     * @throws IOException if the log can not be written
+     */
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appended;
+            if (durable < target && requested < target) {
+                requested = target;
+                notifyAll();
+            }
+            try {
+                while (durable < target && failure == null && flusher.isAlive())
+                    wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the log to be written");
+            }
+        }
+        if (failure != null)
+            throw new IOException("The log can not be written", failure);
+        if (durable < target)
+            flush(false); // closed meanwhile
+    }
+
+    /**
+     * Writes a checkpoint now: the entries of a snapshot are written to a new checkpoint, a new log is started, and the older
+     * checkpoints and logs are deleted. Writers go on while the checkpoint is written.
+     * @throws IOException if the checkpoint can not be written
+     */
+    public void checkpoint() throws IOException {
+        checkpoint(true);
+    }
+
+    /**
+     * @return the error of the last checkpoint written in the background, null if it succeeded. The logs of a failed checkpoint are
+     * kept, so no write is lost: the next checkpoint tries again.
+     */
+    public IOException getCheckpointFailure() {
+        return checkpointFailure;
+    }
+
+    /**
+     * Stops the background threads, and forces the last writes to the disk. The entries can still be read, but not modified.
+     * @throws IOException if the last writes can not be forced to the disk
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+        checkpointer.shutdown();
+        try {
+            checkpointer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the trie");
+        }
+        synchronized (ioLock) {
+            try {
+                if (failure == null)
+                    flush(false);
+            } finally {
+                log.close();
+            }
+        }
+        if (failure != null)
+            throw new IOException("The log can not be written", failure);
+    }
+
+    private void checkWritable() {
+        if (closed)
+            throw new IllegalStateException("The trie is closed");
+        if (failure != null)
+            throw new UncheckedIOException("The log can not be written", failure);
+    }
+
+    /**
+     * Waits for the flusher if the batch is full, then checks that the trie can be modified. Called under the lock before the
+     * trie is modified: wait() releases the lock, so the trie must not be changed before its record is appended.
+     */
+    private void awaitBatchSpace() {
+        checkWritable();
+        if (batch.position() < MAX_BATCH_SIZE)
+            return;
+        requested = appended;
+        notifyAll();
+        boolean interrupted = false;
+        while (batch.position() >= MAX_BATCH_SIZE && failure == null && !closed && flusher.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        checkWritable();
+    }
+
+    /**
+     * Appends a record to the batch, growing it if needed. Called under the lock, after awaitBatchSpace and the change of the
+     * trie, without releasing the lock in between.
+     */
+    private void append(byte op, CharSequence key, int start, int end, byte[] value) {
+        int length = 1 + Integer.BYTES + (end - start) * Character.BYTES;
+        if (value != null)
+            length += Integer.BYTES + value.length;
+        if (batch.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(batch.capacity() * 2, batch.position() + length));
+            batch.flip();
+            batch = larger.put(batch);
+        }
+        batch.put(op);
+        if (op != CLEAR) {
+            batch.putInt(end - start);
+            for (int i = start; i < end; i++)
+                batch.putChar(key.charAt(i));
+            if (value != null)
+                batch.putInt(value.length).put(value);
+        }
+        appended++;
+    }
+
+    private void runFlusher() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (closed)
+                        return;
+                    if (requested <= durable)
+                        wait(syncInterval);
+                }
+                flush(false);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes the batch to the log and forces it to the disk
+     * @param rotate true to take a snapshot along with the batch, and to start a new log after it
+     * @return the snapshot, null if not rotating
+     */
+    private TrieMap<T> flush(boolean rotate) throws IOException {
+        synchronized (ioLock) {
+            ByteBuffer records;
+            long count;
+            TrieMap<T> snapshot = null;
+            synchronized (this) {
+                if (!rotate && appended == durable)
+                    return null;
+                if (rotate)
+                    snapshot = trie.snapshot();
+                records = batch;
+                batch = spare;
+                spare = null;
+                count = appended;
+            }
+
+            int length = records.position();
+            boolean written = false;
+            try {
+                if (length > 0) {
+                    batchHeader.clear();
+                    crc.reset();
+                    crc.update(records.array(), 0, length);
+                    batchHeader.putInt(length).putInt((int) crc.getValue()).flip();
+                    records.flip();
+                    ByteBuffer[] buffers = {batchHeader, records};
+                    while (records.hasRemaining())
+                        log.write(buffers);
+                    log.force(false);
+                }
+                written = true;
+                if (rotate) {
+                    log.close();
+                    log = createLog(++segment);
+                    checkpointed = count;
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (written) {
+                        records.clear();
+                        spare = records;
+                        durable = count;
+                    } else {
+                        restore(records, length);
+                    }
+                    failure = e;
+                    notifyAll();
+                }
+                throw e;
+            }
+
+            records.clear();
+            if (records.capacity() > MAX_BATCH_SIZE)
+                records = ByteBuffer.allocate(BATCH_CAPACITY);
+            synchronized (this) {
+                spare = records;
+                durable = count;
+                notifyAll();
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Puts the records of a batch which could not be written back in front of the records appended since, so the batch and its
+     * spare are left as before the flush. Called under the lock.
+     */
+    private void restore(ByteBuffer records, int length) {
+        records.clear().position(length);
+        if (records.remaining() < batch.position()) {
+            ByteBuffer larger = ByteBuffer.allocate(length + batch.position());
+            records.flip();
+            records = larger.put(records);
+        }
+        batch.flip();
+        records.put(batch);
+        batch.clear();
+        spare = batch;
+        batch = records;
+    }
+
+    /**
+     * Creates an empty log, forced to the disk with its header
+     */
+    private FileChannel createLog(long number) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOG_PREFIX + number + LOG_SUFFIX), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining())
+            channel.write(header);
+        channel.force(true);
+        syncDirectory();
+        return channel;
+    }
+
+    //================================CHECKPOINTS===============================
+
+    private void runCheckpoint() {
+        try {
+            checkpoint(false);
+            checkpointFailure = null;
+        } catch (IOException e) {
+            checkpointFailure = e;
+        }
+    }
+
+    /**
+     * @param force false to skip the checkpoint if the trie was not modified since the last one
+     */
+    private void checkpoint(boolean force) throws IOException {
+        // one checkpoint at a time, between the checkpoint thread and the callers of checkpoint()
+        synchronized (checkpointLock) {
+            long number;
+            TrieMap<T> snapshot;
+            synchronized (ioLock) {
+                if (failure != null)
+                    throw new IOException("The log can not be written", failure);
+                synchronized (this) {
+                    if (closed && force)
+                        throw new IllegalStateException("The trie is closed");
+                    if (closed || (!force && appended == checkpointed))
+                        return;
+                }
+                snapshot = flush(true);
+                number = segment;
+            }
+
+            // the snapshot holds the writes of the logs before the new one
+            Path file = directory.resolve(CHECKPOINT_PREFIX + number + CHECKPOINT_SUFFIX);
+            Path temp = directory.resolve(CHECKPOINT_PREFIX + number + CHECKPOINT_SUFFIX + TEMP_SUFFIX);
+            MappedTrieMap.write(snapshot, temp, codec);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+            deleteBefore(number);
+        }
+    }
+
+    /**
+     * Deletes the checkpoints and the logs older than a checkpoint
+     */
+    private void deleteBefore(long number) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if ((name.startsWith(CHECKPOINT_PREFIX) && name.endsWith(CHECKPOINT_SUFFIX)
+                        && number(name, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX) < number)
+                        || (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX) && number(name, LOG_PREFIX, LOG_SUFFIX) < number))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Forces the creations and renamings of files to the disk
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories can not be opened on some platforms (Windows), where the renamings are durable anyway
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.markety.trie;
+
+/**
+ * A trie mapping strings to ints (counters, ids..), without boxing: see PrimitiveTrieMap.
+ * getInt, putInt, addTo and incrementAndGet allocate nothing but the nodes of new keys.
+ */
+public class IntTrieMap extends PrimitiveTrieMap<Integer> {
+
+    @Override
+    long normalize(long value) {
+        return (int) value;
+    }
+
+    @Override
+    Integer box(long value) {
+        return (int) value;
+    }
+
+    /**
+     * @param key the key
+     * @return the value associated with the key, 0 if the key does not exist
+     */
+    public int getInt(CharSequence key) {
+        return getInt(key, 0);
+    }
+
+    /**
+     * @param key the key
+     * @param defaultValue the value returned if the key does not exist
+     * @return the value associated with the key, defaultValue if the key does not exist
+     */
+    public int getInt(CharSequence key, int defaultValue) {
+        PrimitiveTrieNode node = getNode(key);
+        return node != null && node.present ? (int) node.value : defaultValue;
+    }
+
+    /**
+     * puts or replaces the value specified by the key
+     * @param key the key
+     * @param value the value to store
+     * @return the previous value, 0 if the key did not exist
+     */
+    public int putInt(CharSequence key, int value) {
+        return (int) update(key, value, false);
+    }
+
+    /**
+     * Adds a delta to the value of a key, which is created with the value delta if it does not exist.
+     * @param key the key
+     * @param delta the number to add
+     * @return the new value
+     */
+    public int addTo(CharSequence key, int delta) {
+        return (int) normalize(update(key, delta, true) + delta);
+    }
+
+    /**
+     * Increments the value of a key, which is created with the value 1 if it does not exist.
+     * @param key the key
+     * @return the new value
+     */
+    public int incrementAndGet(CharSequence key) {
+        return addTo(key, 1);
+    }
+}
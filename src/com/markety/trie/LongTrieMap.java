@@ -0,0 +1,65 @@
+package com.markety.trie;
+
+/**
+ * A trie mapping strings to longs (counters, ids..), without boxing: see PrimitiveTrieMap.
+ * getLong, putLong, addTo and incrementAndGet allocate nothing but the nodes of new keys.
+ */
+public class LongTrieMap extends PrimitiveTrieMap<Long> {
+
+    @Override
+    long normalize(long value) {
+        return value;
+    }
+
+    @Override
+    Long box(long value) {
+        return value;
+    }
+
+    /**
+     * @param key the key
+     * @return the value associated with the key, 0 if the key does not exist
+     */
+    public long getLong(CharSequence key) {
+        return getLong(key, 0);
+    }
+
+    /**
+     * @param key the key
+     * @param defaultValue the value returned if the key does not exist
+     * @return the value associated with the key, defaultValue if the key does not exist
+     */
+    public long getLong(CharSequence key, long defaultValue) {
+        PrimitiveTrieNode node = getNode(key);
+        return node != null && node.present ? node.value : defaultValue;
+    }
+
+    /**
+     * puts or replaces the value specified by the key
+     * @param key the key
+     * @param value the value to store
+     * @return the previous value, 0 if the key did not exist
+     */
+    public long putLong(CharSequence key, long value) {
+        return update(key, value, false);
+    }
+
+    /**
+     * Adds a delta to the value of a key, which is created with the value delta if it does not exist.
+     * @param key the key
+     * @param delta the number to add
+     * @return the new value
+     */
+    public long addTo(CharSequence key, long delta) {
+        return update(key, delta, true) + delta;
+    }
+
+    /**
+     * Increments the value of a key, which is created with the value 1 if it does not exist.
+     * @param key the key
+     * @return the new value
+     */
+    public long incrementAndGet(CharSequence key) {
+        return addTo(key, 1);
+    }
+}
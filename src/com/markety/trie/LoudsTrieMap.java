@@ -0,0 +1,419 @@
+package com.markety.trie;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+
+/**
+ * A read-only map storing a trie in a succinct form (LOUDS, level-order unary degree sequence), built from a TrieMap (TrieMap.freeze).
+ * The nodes are numbered in BFS order, the root being 0, and the shape of the trie is a bit vector: for each node, a 1 per child then
+ * a 0. The children of a node are consecutive in BFS order, so the node i has its children after the (i-1)th 0 of the bit vector,
+ * and its first child is the number of 1s before them plus one: walking down the trie only needs select on the bit vector, answered
+ * in O(1) by a small directory. The chars of the nodes are a char array indexed by node, and the nodes holding a value are marked
+ * in a second bit vector, whose rank gives the index of the value.
+ *
+ * A node costs 2 bits of shape, 1 bit of value flag, 2 bytes of char and the directories (about 2.5 bytes), instead of the object
+ * graph of TrieNode (headers, children maps or arrays, parent pointer..), plus the reference to its value for the nodes holding one.
+ * Lookups cost O(key length * log(children per node)), and the keys are iterated in lexicographic order.
+ * @param <T> Class type of the values
+ */
+public class LoudsTrieMap<T> extends AbstractTrieMap<T> {
+
+    private static final int LINEAR_SCAN_LIMIT = 8;
+
+    /**
+     * the shape of the trie: for each node in BFS order, a 1 per child then a 0
+     */
+    private final Bits louds;
+    /**
+     * the nodes holding a value
+     */
+    private final Bits terminals;
+    /**
+     * the char of each node (unused for the root)
+     */
+    private final char[] labels;
+    /**
+     * the values of the nodes holding one, in BFS order
+     */
+    private final Object[] values;
+
+    private LoudsTrieMap(Bits louds, Bits terminals, char[] labels, Object[] values) {
+        this.louds = louds;
+        this.terminals = terminals;
+        this.labels = labels;
+        this.values = values;
+    }
+
+    /**
+     * Encodes a trie, in O(number of nodes), visiting its nodes in BFS order.
+     * @param trie the trie to encode, not modified. Encode a snapshot() of the trie if it may be modified meanwhile.
+     * @return a read-only map having the entries of the trie
+     */
+    public static <T> LoudsTrieMap<T> of(TrieMap<T> trie) {
+        TrieNode<T> root = trie.getRoot();
+        BitsBuilder louds = new BitsBuilder();
+        BitsBuilder terminals = new BitsBuilder();
+        char[] labels = new char[16];
+        Object[] values = new Object[root.size()];
+        int count = 0;
+        int nodes = 1;
+
+        ArrayDeque<TrieNode<T>> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            TrieNode<T> node = queue.poll();
+            boolean terminal = node.getValue() != null;
+            terminals.add(terminal);
+            if (terminal)
+                values[count++] = node.getValue();
+            for (TrieNode<T> child : node.getSortedChilds()) {
+                if (nodes == labels.length)
+                    labels = Arrays.copyOf(labels, nodes * 2);
+                labels[nodes++] = child.getChar();
+                louds.add(true);
+                queue.add(child);
+            }
+            louds.add(false);
+        }
+        return new LoudsTrieMap<>(louds.build(), terminals.build(), Arrays.copyOf(labels, nodes), values);
+    }
+
+    //================================CLASS METHODS=============================
+
+    /**
+     * @param key the key
+     * @return the value associated with the key
+     */
+    @Override
+    public T get(Object key) {
+        if (key instanceof String == false)
+            return null;
+        int node = walk((String) key);
+        return node >= 0 && terminals.get(node) ? getValue(node) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key instanceof String == false)
+            return false;
+        int node = walk((String) key);
+        return node >= 0 && terminals.get(node);
+    }
+
+    /**
+     * @return the number of entries. O(1)
+     */
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public T put(String key, T value) {
+        throw new RuntimeException("Can not make modifications to read-only trie-view");
+    }
+
+    @Override
+    public T remove(Object key) {
+        throw new RuntimeException("Can not make modifications to read-only trie-view");
+    }
+
+    @Override
+    public void clear() {
+        throw new RuntimeException("Can not make modifications to read-only trie-view");
+    }
+
+    @Override
+    TrieWalker<String> walkKeys(String prefix) {
+        int node = walk(prefix);
+        return node < 0 ? null : new KeysIterator(node, prefix);
+    }
+
+    @Override
+    int keysCharacteristics() {
+        return super.keysCharacteristics() | Spliterator.IMMUTABLE;
+    }
+
+    /**
+     * @return a read-only view of the entries of this map, in lexicographic key order
+     */
+    @Override
+    public Set<Map.Entry<String,T>> entrySet() {
+        return new AbstractSet<Map.Entry<String,T>>() {
+            @Override
+            public Iterator<Map.Entry<String,T>> iterator() {
+                return new EntriesIterator(0, "");
+            }
+
+            @Override
+            public int size() {
+                return LoudsTrieMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return the number of nodes of the encoded trie
+     */
+    public int getNodesCount() {
+        return labels.length;
+    }
+
+    /**
+     * @return the number of bytes of the encoding (the shape, the value flags, the chars and the directories), the values apart
+     */
+    public long getEncodedSize() {
+        return louds.getEncodedSize() + terminals.getEncodedSize() + 2L * labels.length;
+    }
+
+    //================================NODES=====================================
+
+    /**
+     * @return the position in louds of the 1 of the first child of the node, or of its 0 if it has no child
+     */
+    private long childsStart(int node) {
+        return node == 0 ? 0 : louds.select0(node - 1) + 1;
+    }
+
+    /**
+     * Follows the chars of a key from the root
+     * @return the reached node, -1 if no key starts with 'key'
+     */
+    private int walk(CharSequence key) {
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            long start = childsStart(node);
+            int count = (int) (louds.nextZero(start) - start);
+            // the 1s before start are the children of the nodes before this one, so the first child is start - node + 1
+            int first = (int) (start - node + 1);
+            node = findChild(first, first + count, key.charAt(i));
+            if (node < 0)
+                return -1;
+        }
+        return node;
+    }
+
+    /**
+     * @return the child of the char among the nodes [low, high), -1 if none
+     */
+    private int findChild(int low, int high, char ch) {
+        if (high - low <= LINEAR_SCAN_LIMIT) {
+            for (int i = low; i < high; i++) {
+                char c = labels[i];
+                if (c == ch)
+                    return i;
+                if (c > ch)
+                    return -1;
+            }
+            return -1;
+        }
+        int index = Arrays.binarySearch(labels, low, high, ch);
+        return index >= 0 ? index : -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T getValue(int node) {
+        return (T) values[(int) terminals.rank1(node)];
+    }
+
+    /**
+     * A bit vector with rank and select directories: the number of 1s before each block of 512 bits, and the block of every 512th 0.
+     * rank1 counts the bits of at most 8 words, select0 starts from a sampled block and scans a few blocks.
+     */
+    private static final class Bits {
+
+        private static final int BLOCK_WORDS = 8;
+        private static final int BLOCK_BITS = BLOCK_WORDS * 64;
+        private static final int SAMPLE_SHIFT = 9;
+
+        private final long[] words;
+        private final long length;
+        private final long[] ranks;
+        private final int[] zeroSamples;
+
+        Bits(long[] words, long length) {
+            this.words = words;
+            this.length = length;
+            int blocks = (int) ((length + BLOCK_BITS - 1) / BLOCK_BITS);
+            this.ranks = new long[blocks + 1];
+            int[] samples = new int[(int) (length >>> SAMPLE_SHIFT) + 1];
+            int sampleCount = 0;
+            long ones = 0;
+            for (int block = 0; block < blocks; block++) {
+                ranks[block] = ones;
+                for (int w = block * BLOCK_WORDS; w < Math.min(words.length, (block + 1) * BLOCK_WORDS); w++)
+                    ones += Long.bitCount(words[w]);
+                long zerosAfter = Math.min(length, (long) (block + 1) * BLOCK_BITS) - ones;
+                // the blocks holding the 0s of rank k << SAMPLE_SHIFT
+                while (sampleCount < samples.length && ((long) sampleCount << SAMPLE_SHIFT) < zerosAfter)
+                    samples[sampleCount++] = block;
+            }
+            ranks[blocks] = ones;
+            this.zeroSamples = Arrays.copyOf(samples, sampleCount);
+        }
+
+        boolean get(long position) {
+            return (words[(int) (position >>> 6)] & 1L << position) != 0;
+        }
+
+        /**
+         * @return the number of 1s before the position
+         */
+        long rank1(long position) {
+            int block = (int) (position / BLOCK_BITS);
+            long rank = ranks[block];
+            int word = (int) (position >>> 6);
+            for (int w = block * BLOCK_WORDS; w < word; w++)
+                rank += Long.bitCount(words[w]);
+            if ((position & 63) != 0)
+                rank += Long.bitCount(words[word] & (-1L >>> (64 - (position & 63))));
+            return rank;
+        }
+
+        /**
+         * @return the position of the kth 0 (k from 0)
+         */
+        long select0(long k) {
+            int block = zeroSamples[(int) (k >>> SAMPLE_SHIFT)];
+            // the 0s before a block are its bits minus its 1s
+            while (block + 1 < ranks.length - 1 && (long) (block + 1) * BLOCK_BITS - ranks[block + 1] <= k)
+                block++;
+            long remaining = k - ((long) block * BLOCK_BITS - ranks[block]);
+            int word = block * BLOCK_WORDS;
+            while (true) {
+                long zeros = ~words[word];
+                int count = Long.bitCount(zeros);
+                if (remaining < count)
+                    return ((long) word << 6) + selectInWord(zeros, (int) remaining);
+                remaining -= count;
+                word++;
+            }
+        }
+
+        /**
+         * @return the position of the first 0 from the position
+         */
+        long nextZero(long position) {
+            int word = (int) (position >>> 6);
+            long zeros = ~words[word] & (-1L << position);
+            while (zeros == 0)
+                zeros = ~words[++word];
+            return ((long) word << 6) + Long.numberOfTrailingZeros(zeros);
+        }
+
+        long getEncodedSize() {
+            return 8L * words.length + 8L * ranks.length + 4L * zeroSamples.length;
+        }
+
+        /**
+         * @return the index of the kth 1 of the word
+         */
+        private static int selectInWord(long word, int k) {
+            for (int i = 0; i < k; i++)
+                word &= word - 1;
+            return Long.numberOfTrailingZeros(word);
+        }
+    }
+
+    private static final class BitsBuilder {
+
+        private long[] words = new long[16];
+        private long length;
+
+        void add(boolean bit) {
+            int word = (int) (length >>> 6);
+            if (word == words.length)
+                words = Arrays.copyOf(words, word * 2);
+            if (bit)
+                words[word] |= 1L << length;
+            length++;
+        }
+
+        Bits build() {
+            return new Bits(Arrays.copyOf(words, (int) ((length + 63) >>> 6)), length);
+        }
+    }
+
+    /**
+     * Walks the sub-trie of a node, a cursor being the number of a child: the children of a node being consecutive, a frame is the
+     * range of its children still to visit.
+     */
+    private abstract class DfsIterator<E> extends TrieWalker<E> {
+
+        private int[] nodes = new int[INITIAL_DEPTH];
+        private int[] endChild = new int[INITIAL_DEPTH];
+
+        DfsIterator(int start, String base) {
+            super(base);
+            nodes[0] = start;
+        }
+
+        @Override
+        int firstCursor(int depth) {
+            int node = nodes[depth];
+            long start = childsStart(node);
+            int first = (int) (start - node + 1);
+            endChild[depth] = first + (int) (louds.nextZero(start) - start);
+            return first < endChild[depth] ? first : END;
+        }
+
+        @Override
+        int nextCursor(int depth, int cursor) {
+            return cursor + 1 < endChild[depth] ? cursor + 1 : END;
+        }
+
+        @Override
+        void pushChild(int depth, int cursor) {
+            nodes[depth] = cursor;
+            appendLabel(labels[cursor]);
+        }
+
+        @Override
+        boolean visit(int depth) {
+            return terminals.get(nodes[depth]);
+        }
+
+        @Override
+        void grow(int length) {
+            nodes = Arrays.copyOf(nodes, length);
+            endChild = Arrays.copyOf(endChild, length);
+        }
+
+        /**
+         * @return the node of nextKey
+         */
+        int currentNode() {
+            return nodes[depth()];
+        }
+    }
+
+    private class KeysIterator extends DfsIterator<String> {
+
+        KeysIterator(int start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        String current() {
+            return nextKey;
+        }
+    }
+
+    private class EntriesIterator extends DfsIterator<Map.Entry<String,T>> {
+
+        EntriesIterator(int start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        Map.Entry<String,T> current() {
+            return new AbstractMap.SimpleImmutableEntry<>(nextKey, getValue(currentNode()));
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.markety.trie;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+
+/**
+ * A read-only trie map answering its queries straight from a file mapped in memory, without building any node object.
+ * Opening it only maps the file and checks its header, so it is ready in milliseconds whatever the number of keys is.
+ * The mapping is read-only, so all the JVMs of a host opening the same file share its pages in the page cache, and the trie takes no heap.
+ * A file is written from a built TrieMap by write(trie, file, codec).
+ *
+ * The file holds the nodes in breadth-first order, so the children of a node are contiguous (sorted by char) and follow the children
+ * of the previous node: a node is given by its index, and its children by the index of its first child and the one of the next node.
+ * Every section is a flat array:
+ * <pre>
+ * header       magic, version, node count, value count, length of the value bytes (5 ints)
+ * labels       the char of each node (padded to 4 bytes)
+ * first child  the index of the first child of each node, plus the node count (node count + 1 ints)
+ * sizes        the number of entries in the sub-trie of each node (node count ints)
+ * values       the index of the value of each node, -1 if it has none (node count ints)
+ * value bytes  the encoded values (padded to 4 bytes)
+ * value table  the offset of each value in the value bytes, plus their length (value count + 1 ints)
+ * </pre>
+ * A single buffer can not map more than 2GB, so the file size is limited to 2GB.
+ * @param <T> Class type of the values stored in the trie
+ */
+public class MappedTrieMap<T> extends AbstractTrieMap<T> {
+
+    private static final int MAGIC = 0x54524945; // "TRIE"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+    private static final int LINEAR_SCAN_LIMIT = 8;
+
+    private final ByteBuffer buffer;
+    private final TrieValueCodec<? extends T> codec;
+    private final int nodeCount;
+    private final int firstChildOffset;
+    private final int sizesOffset;
+    private final int valueIndexesOffset;
+    private final int valueBytesOffset;
+    private final int valueTableOffset;
+
+    private MappedTrieMap(ByteBuffer buffer, TrieValueCodec<? extends T> codec, Path file) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a trie file: " + file);
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported trie file version " + buffer.getInt(4) + ": " + file);
+        this.buffer = buffer;
+        this.codec = codec;
+        this.nodeCount = buffer.getInt(8);
+        int valueCount = buffer.getInt(12);
+        int valueBytesLength = buffer.getInt(16);
+
+        this.firstChildOffset = HEADER_SIZE + align(nodeCount * Character.BYTES);
+        this.sizesOffset = firstChildOffset + (nodeCount + 1) * Integer.BYTES;
+        this.valueIndexesOffset = sizesOffset + nodeCount * Integer.BYTES;
+        this.valueBytesOffset = valueIndexesOffset + nodeCount * Integer.BYTES;
+        this.valueTableOffset = valueBytesOffset + align(valueBytesLength);
+        if (nodeCount < 1 || buffer.capacity() != valueTableOffset + (valueCount + 1) * Integer.BYTES)
+            throw new IOException("Truncated or corrupted trie file: " + file);
+    }
+
+    //================================FILE I/O==================================
+
+    /**
+     * Maps a trie file in memory (read-only).
+     * @param file a file written by write(trie, file, codec)
+     * @param codec the codec the values were written with
+     * @return a read-only map reading the mapped file
+     * @throws IOException if the file can not be read, or is not a trie file
+     */
+    public static <T> MappedTrieMap<T> open(Path file, TrieValueCodec<? extends T> codec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Trie file larger than 2GB: " + file);
+            // the mapping remains valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedTrieMap<>(buffer, codec, file);
+        }
+    }
+
+    /**
+     * Writes a trie to a file, in the format read by open(file, codec). Write a snapshot() of the trie if it may be modified meanwhile.
+     * @param trie the trie to write
+     * @param file the file to write, replaced if it exists
+     * @param codec the codec of the values
+     * @throws IOException if the file can not be written, or would be larger than 2GB
+     */
+    public static <T> void write(TrieMap<T> trie, Path file, TrieValueCodec<? super T> codec) throws IOException {
+        // breadth-first order: the children of a node follow the children of the previous nodes
+        List<TrieNode<T>> nodes = new ArrayList<>();
+        nodes.add(trie.getRoot());
+        for (int i = 0; i < nodes.size(); i++)
+            Collections.addAll(nodes, nodes.get(i).getSortedChilds());
+        int count = nodes.size();
+        if ((long) count * 14 > Integer.MAX_VALUE)
+            throw new IOException("The trie is too large to be written to a single file: " + count + " nodes");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.write(new byte[HEADER_SIZE]); // written last, when the length of the values is known
+
+            for (TrieNode<T> node : nodes)
+                out.writeChar(node.getChar());
+            if (count % 2 != 0)
+                out.writeChar(0);
+
+            int firstChild = 1;
+            for (TrieNode<T> node : nodes) {
+                out.writeInt(firstChild);
+                firstChild += node.getChildsCount();
+            }
+            out.writeInt(firstChild);
+
+            for (TrieNode<T> node : nodes)
+                out.writeInt(node.size());
+
+            int valueCount = 0;
+            for (TrieNode<T> node : nodes)
+                out.writeInt(node.getValue() != null ? valueCount++ : -1);
+
+            int[] valueTable = new int[valueCount + 1];
+            long length = 0;
+            int index = 0;
+            for (TrieNode<T> node : nodes) {
+                if (node.getValue() == null)
+                    continue;
+                byte[] bytes = codec.encode(node.getValue());
+                out.write(bytes);
+                length += bytes.length;
+                if (HEADER_SIZE + 14L * count + length + 4L * valueCount > Integer.MAX_VALUE)
+                    throw new IOException("The trie is too large to be written to a single file");
+                valueTable[++index] = (int) length;
+            }
+            for (int i = (int) length; i < align((int) length); i++)
+                out.writeByte(0);
+            for (int offset : valueTable)
+                out.writeInt(offset);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(valueCount).putInt((int) length);
+            header.flip();
+            long position = 0;
+            while (header.hasRemaining())
+                position += channel.write(header, position);
+        }
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    //================================CLASS METHODS=============================
+
+    /**
+     * @param key the key
+     * @return the value associated with the key, decoded from the mapped file
+     */
+    @Override
+    public T get(Object key) {
+        if (key instanceof String == false)
+            return null;
+        String word = (String) key;
+        return get(word, 0, word.length());
+    }
+
+    /**
+     * Finds the value of a key given as a slice of a char sequence (ex: a part of a buffer), without copying it.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return the value associated with the key, null if the key does not exist
+     */
+    public T get(CharSequence key, int start, int end) {
+        checkRange(key, start, end);
+        int node = getNode(key, start, end);
+        return node < 0 ? null : getValue(node);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key instanceof String == false)
+            return false;
+        String word = (String) key;
+        return containsKey(word, 0, word.length());
+    }
+
+    /**
+     * Checks whether a key given as a slice of a char sequence (ex: a part of a buffer) exists.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return true if the key exists in this trie
+     */
+    public boolean containsKey(CharSequence key, int start, int end) {
+        checkRange(key, start, end);
+        int node = getNode(key, start, end);
+        return node >= 0 && valueIndex(node) >= 0;
+    }
+
+    /**
+     * @return the number of entries, which is stored for the root node. O(1)
+     */
+    @Override
+    public int size() {
+        return subTrieSize(0);
+    }
+
+    @Override
+    public T put(String key, T value) {
+        throw new RuntimeException("Can not make modifications to read-only trie-view");
+    }
+
+    @Override
+    public T remove(Object key) {
+        throw new RuntimeException("Can not make modifications to read-only trie-view");
+    }
+
+    @Override
+    public void clear() {
+        throw new RuntimeException("Can not make modifications to read-only trie-view");
+    }
+
+    @Override
+    TrieWalker<String> walkKeys(String prefix) {
+        int node = getNode(prefix, 0, prefix.length());
+        return node < 0 ? null : new KeysIterator(node, prefix);
+    }
+
+    @Override
+    int keysCharacteristics() {
+        return super.keysCharacteristics() | Spliterator.IMMUTABLE;
+    }
+
+    /**
+     * @return a read-only view of the entries of this trie, in lexicographic key order. Values are decoded while iterating.
+     */
+    @Override
+    public Set<Map.Entry<String,T>> entrySet() {
+        return new AbstractSet<Map.Entry<String,T>>() {
+            @Override
+            public Iterator<Map.Entry<String,T>> iterator() {
+                return new EntriesIterator(0, "");
+            }
+
+            @Override
+            public int size() {
+                return MappedTrieMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return the number of nodes of this trie, the root included
+     */
+    public int getNodesCount() {
+        return nodeCount;
+    }
+
+    //================================NODES=====================================
+
+    /**
+     * finds the node whose key is exactly the passed key
+     * @return the index of the node, -1 if the key leaves the trie
+     */
+    private int getNode(CharSequence key, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end && node >= 0; i++)
+            node = findChild(node, key.charAt(i));
+        return node;
+    }
+
+    /**
+     * @return the index of the child of the node having the passed char, -1 if there is no such child
+     */
+    private int findChild(int node, char ch) {
+        int low = firstChild(node);
+        int high = firstChild(node + 1) - 1;
+        if (high - low < LINEAR_SCAN_LIMIT) {
+            for (int i = low; i <= high; i++) {
+                char c = label(i);
+                if (c == ch)
+                    return i;
+                if (c > ch)
+                    return -1;
+            }
+            return -1;
+        }
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char c = label(mid);
+            if (c < ch)
+                low = mid + 1;
+            else if (c > ch)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private char label(int node) {
+        return buffer.getChar(HEADER_SIZE + node * Character.BYTES);
+    }
+
+    private int firstChild(int node) {
+        return buffer.getInt(firstChildOffset + node * Integer.BYTES);
+    }
+
+    private int subTrieSize(int node) {
+        return buffer.getInt(sizesOffset + node * Integer.BYTES);
+    }
+
+    private int valueIndex(int node) {
+        return buffer.getInt(valueIndexesOffset + node * Integer.BYTES);
+    }
+
+    private T getValue(int node) {
+        int index = valueIndex(node);
+        if (index < 0)
+            return null;
+        int offset = buffer.getInt(valueTableOffset + index * Integer.BYTES);
+        int end = buffer.getInt(valueTableOffset + (index + 1) * Integer.BYTES);
+        return codec.decode(buffer, valueBytesOffset + offset, end - offset);
+    }
+
+    private static void checkRange(CharSequence key, int start, int end) {
+        if (start < 0 || end > key.length() || start > end)
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + key.length());
+    }
+
+    /**
+     * Walks the sub-trie of a node, a cursor being the offset of a child: the children of a node are consecutive
+     */
+    private abstract class DfsIterator<E> extends TrieWalker<E> {
+
+        private int[] nodes = new int[INITIAL_DEPTH];
+
+        DfsIterator(int start, String base) {
+            super(base);
+            nodes[0] = start;
+        }
+
+        @Override
+        int firstCursor(int depth) {
+            int node = nodes[depth];
+            int child = firstChild(node);
+            return child < firstChild(node + 1) ? child : END;
+        }
+
+        @Override
+        int nextCursor(int depth, int cursor) {
+            return cursor + 1 < firstChild(nodes[depth] + 1) ? cursor + 1 : END;
+        }
+
+        @Override
+        void pushChild(int depth, int cursor) {
+            nodes[depth] = cursor;
+            appendLabel(label(cursor));
+        }
+
+        @Override
+        boolean visit(int depth) {
+            return valueIndex(nodes[depth]) >= 0;
+        }
+
+        @Override
+        void grow(int length) {
+            nodes = Arrays.copyOf(nodes, length);
+        }
+
+        @Override
+        long size() {
+            return subTrieSize(nodes[0]);
+        }
+
+        /**
+         * @return the node of nextKey
+         */
+        int currentNode() {
+            return nodes[depth()];
+        }
+    }
+
+    private class KeysIterator extends DfsIterator<String> {
+
+        KeysIterator(int start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        String current() {
+            return nextKey;
+        }
+    }
+
+    private class EntriesIterator extends DfsIterator<Map.Entry<String,T>> {
+
+        EntriesIterator(int start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        Map.Entry<String,T> current() {
+            return new AbstractMap.SimpleImmutableEntry<>(nextKey, getValue(currentNode()));
+        }
+    }
+}
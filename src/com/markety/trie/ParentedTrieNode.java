@@ -0,0 +1,48 @@
+package com.markety.trie;
+
+/**
+ * A trie node keeping a pointer to its parent, so it knows its full key (see getKey). This is the node of the tries built with
+ * parent pointers, the default.
+ * @param <T> Class type of the value to be stored in the trie
+ */
+class ParentedTrieNode<T> extends TrieNode<T> {
+
+    private final ParentedTrieNode<T> parent;
+
+    ParentedTrieNode(char key, T value, byte childsStorageMode, ParentedTrieNode<T> parent) {
+        super(key, value, childsStorageMode);
+        this.parent = parent;
+    }
+
+    @Override
+    TrieNode<T> newChild(char ch) {
+        return new ParentedTrieNode<>(ch, null, getChildsStorageMode(), this);
+    }
+
+    /**
+     * @return the parent of this node, null for the root
+     */
+    ParentedTrieNode<T> getParent() {
+        return parent;
+    }
+
+    /**
+     * Builds and returns the full key of this node (its parent key + its char), walking up to the root once to find its length and
+     * once to fill it. Copies made by copy-on-write keep the parent of the original node, whose key is the same.
+     * @return the full key of this node (its parent key + its char)
+     */
+    @Override
+    public String getKey() {
+        // root node has no key. It just have pointers to other nodes, with keys
+        int length = 0;
+        for (ParentedTrieNode<T> node = this; node.parent != null; node = node.parent)
+            length++;
+        char[] key = new char[length];
+        ParentedTrieNode<T> node = this;
+        for (int i = length - 1; i >= 0; i--) {
+            key[i] = node.getChar();
+            node = node.parent;
+        }
+        return new String(key);
+    }
+}
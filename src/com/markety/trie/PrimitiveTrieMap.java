@@ -0,0 +1,308 @@
+package com.markety.trie;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The base of the tries mapping strings to primitive numbers (IntTrieMap, LongTrieMap), made for counters and ids.
+ * Values are stored unboxed in the nodes, with a presence flag, so 0 is a value like any other and the primitive operations
+ * (get, put, addTo, increment, prefix sums) allocate nothing but the nodes of new keys. Each node also sums the values of its
+ * sub-trie, so the sum of the values of the keys starting with a prefix costs O(prefix length).
+ * The methods of java.util.Map are supported as well, boxing the values.
+ * @param <V> the boxed type of the values
+ */
+public abstract class PrimitiveTrieMap<V extends Number> extends AbstractTrieMap<V> {
+
+    private PrimitiveTrieNode root = new PrimitiveTrieNode('0');
+
+    PrimitiveTrieMap() {
+    }
+
+    /**
+     * @return the value converted to the primitive type of this map (ex: truncated to an int)
+     */
+    abstract long normalize(long value);
+
+    abstract V box(long value);
+
+    //================================PRIMITIVE OPERATIONS======================
+
+    /**
+     * finds the node whose key is exactly the passed key
+     */
+    final PrimitiveTrieNode getNode(CharSequence key) {
+        PrimitiveTrieNode node = root;
+        for (int i = 0; i < key.length() && node != null; i++)
+            node = node.findChild(key.charAt(i));
+        return node;
+    }
+
+    /**
+     * Sets the value of a key, or adds to it, and updates the sums and the counts of its path.
+     * @param add true to add 'value' to the current value (0 if the key does not exist), false to replace the current value
+     * @return the previous value, 0 if the key did not exist
+     */
+    final long update(CharSequence key, long value, boolean add) {
+        PrimitiveTrieNode node = root;
+        for (int i = 0; i < key.length(); i++)
+            node = node.findOrAddChild(key.charAt(i));
+        long previous = node.present ? node.value : 0;
+        long updated = normalize(add ? previous + value : value);
+        int added = node.present ? 0 : 1;
+        node.value = updated;
+        node.present = true;
+
+        // a second walk down the path, instead of keeping the path nodes somewhere
+        long delta = updated - previous;
+        node = root;
+        node.sum += delta;
+        node.size += added;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.findChild(key.charAt(i));
+            node.sum += delta;
+            node.size += added;
+        }
+        return previous;
+    }
+
+    /**
+     * Removes a key, and prunes the branch left without entries.
+     * @return true if the key existed
+     */
+    final boolean delete(CharSequence key) {
+        PrimitiveTrieNode target = getNode(key);
+        if (target == null || !target.present)
+            return false;
+        long delta = target.value;
+        PrimitiveTrieNode node = root;
+        node.sum -= delta;
+        node.size--;
+        for (int i = 0; i < key.length(); i++) {
+            PrimitiveTrieNode child = node.findChild(key.charAt(i));
+            if (--child.size == 0) {
+                node.removeChild(child.key);
+                return true;
+            }
+            child.sum -= delta;
+            node = child;
+        }
+        node.present = false;
+        node.value = 0;
+        return true;
+    }
+
+    /**
+     * @param key the key
+     * @return true if the key exists in this trie
+     */
+    public boolean containsKey(CharSequence key) {
+        PrimitiveTrieNode node = getNode(key);
+        return node != null && node.present;
+    }
+
+    /**
+     * @param prefix the prefix
+     * @return the sum of the values of the keys starting with the prefix (the prefix included), computed in O(prefix length)
+     */
+    public long prefixSum(CharSequence prefix) {
+        PrimitiveTrieNode node = getNode(prefix);
+        return node == null ? 0 : node.sum;
+    }
+
+    /**
+     * @param prefix the prefix
+     * @return the number of keys starting with the prefix (the prefix included), computed in O(prefix length)
+     */
+    public int prefixCount(CharSequence prefix) {
+        PrimitiveTrieNode node = getNode(prefix);
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * @return the sum of all the values. O(1)
+     */
+    public long sum() {
+        return root.sum;
+    }
+
+    //================================MAP METHODS===============================
+
+    @Override
+    public V get(Object key) {
+        if (key instanceof CharSequence == false)
+            return null;
+        PrimitiveTrieNode node = getNode((CharSequence) key);
+        return node != null && node.present ? box(node.value) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof CharSequence && containsKey((CharSequence) key);
+    }
+
+    /**
+     * puts or replaces the value specified by the key
+     * @param key the key
+     * @param value the value to store, not null
+     * @return the previous value if exist, null otherwise
+     */
+    @Override
+    public V put(String key, V value) {
+        if (value == null)
+            throw new NullPointerException("Primitive tries do not support null values");
+        PrimitiveTrieNode node = getNode(key);
+        boolean existed = node != null && node.present;
+        long previous = update(key, value.longValue(), false);
+        return existed ? box(previous) : null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (key instanceof CharSequence == false)
+            return null;
+        PrimitiveTrieNode node = getNode((CharSequence) key);
+        if (node == null || !node.present)
+            return null;
+        V previous = box(node.value);
+        delete((CharSequence) key);
+        return previous;
+    }
+
+    /**
+     * @return the number of entries, which is counted by the root node. O(1)
+     */
+    @Override
+    public int size() {
+        return root.size;
+    }
+
+    @Override
+    public void clear() {
+        root = new PrimitiveTrieNode('0');
+    }
+
+    @Override
+    TrieWalker<String> walkKeys(String prefix) {
+        PrimitiveTrieNode node = getNode(prefix);
+        return node == null ? null : new KeysIterator(node, prefix);
+    }
+
+    /**
+     * @return a view of the entries of this trie, in lexicographic key order. Map.Entry.setValue writes through to the trie.
+     */
+    @Override
+    public Set<Map.Entry<String,V>> entrySet() {
+        return new AbstractSet<Map.Entry<String,V>>() {
+            @Override
+            public Iterator<Map.Entry<String,V>> iterator() {
+                return new EntriesIterator(root, "");
+            }
+
+            @Override
+            public int size() {
+                return PrimitiveTrieMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Walks the sub-trie of a node, a cursor being the index of a child in the children of its parent
+     */
+    private abstract class DfsIterator<E> extends TrieWalker<E> {
+
+        private PrimitiveTrieNode[] nodes = new PrimitiveTrieNode[INITIAL_DEPTH];
+
+        DfsIterator(PrimitiveTrieNode start, String base) {
+            super(base);
+            nodes[0] = start;
+        }
+
+        @Override
+        int firstCursor(int depth) {
+            return nodes[depth].childCount > 0 ? 0 : END;
+        }
+
+        @Override
+        int nextCursor(int depth, int cursor) {
+            return cursor + 1 < nodes[depth].childCount ? cursor + 1 : END;
+        }
+
+        @Override
+        void pushChild(int depth, int cursor) {
+            PrimitiveTrieNode child = nodes[depth - 1].childNodes[cursor];
+            nodes[depth] = child;
+            appendLabel(child.key);
+        }
+
+        @Override
+        boolean visit(int depth) {
+            return nodes[depth].present;
+        }
+
+        @Override
+        void pop(int depth) {
+            nodes[depth] = null;
+        }
+
+        @Override
+        void grow(int length) {
+            nodes = Arrays.copyOf(nodes, length);
+        }
+
+        @Override
+        long size() {
+            return nodes[0].size;
+        }
+
+        @Override
+        void removeKey(String key) {
+            delete(key);
+            // the pruned branch was left already, but it may shift the children to visit: their indexes are found again
+            for (int d = 0; d < depth(); d++) {
+                int next = nodes[d].indexOf(nodes[d + 1].key) + 1;
+                resetCursor(d, next < nodes[d].childCount ? next : END);
+            }
+        }
+
+        /**
+         * @return the node of nextKey
+         */
+        PrimitiveTrieNode currentNode() {
+            return nodes[depth()];
+        }
+    }
+
+    private class KeysIterator extends DfsIterator<String> {
+
+        KeysIterator(PrimitiveTrieNode start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        String current() {
+            return nextKey;
+        }
+    }
+
+    private class EntriesIterator extends DfsIterator<Map.Entry<String,V>> {
+
+        EntriesIterator(PrimitiveTrieNode start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        Map.Entry<String,V> current() {
+            return new AbstractMap.SimpleEntry<String,V>(nextKey, box(currentNode().value)) {
+                @Override
+                public V setValue(V value) {
+                    PrimitiveTrieMap.this.put(getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+        }
+    }
+}
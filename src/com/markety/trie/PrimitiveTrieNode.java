@@ -0,0 +1,94 @@
+package com.markety.trie;
+
+import java.util.Arrays;
+
+/**
+ * A node of a primitive-valued trie (IntTrieMap, LongTrieMap). The value is stored as a long with a separate presence flag, so 0 is
+ * a value like any other, and the node counts the entries and sums the values of its sub-trie.
+ * Children are kept in sorted primitive arrays, like CHILD_STORAGE_MODE_USING_ARRAYS.
+ */
+final class PrimitiveTrieNode {
+
+    private static final int LINEAR_SCAN_LIMIT = 8;
+    private static final PrimitiveTrieNode[] NO_CHILDS = new PrimitiveTrieNode[0];
+    private static final char[] NO_CHARS = new char[0];
+
+    final char key;
+    long value;
+    boolean present;
+    /**
+     * the number of entries in the sub-trie rooted at this node, this node included
+     */
+    int size;
+    /**
+     * the sum of the values of the entries in the sub-trie rooted at this node, this node included
+     */
+    long sum;
+    char[] childChars = NO_CHARS;
+    PrimitiveTrieNode[] childNodes = NO_CHILDS;
+    int childCount;
+
+    PrimitiveTrieNode(char key) {
+        this.key = key;
+    }
+
+    PrimitiveTrieNode findChild(char ch) {
+        int index = indexOf(ch);
+        return index >= 0 ? childNodes[index] : null;
+    }
+
+    /**
+     * @return the index of the child of the char, or (-(insertion point) - 1) if there is no such child
+     */
+    int indexOf(char ch) {
+        int count = childCount;
+        if (count <= LINEAR_SCAN_LIMIT) {
+            for (int i = 0; i < count; i++) {
+                char c = childChars[i];
+                if (c == ch)
+                    return i;
+                if (c > ch)
+                    return -i - 1;
+            }
+            return -count - 1;
+        }
+        return Arrays.binarySearch(childChars, 0, count, ch);
+    }
+
+    /**
+     * @return the child of the char, created if it does not exist
+     */
+    PrimitiveTrieNode findOrAddChild(char ch) {
+        int index = indexOf(ch);
+        if (index >= 0)
+            return childNodes[index];
+        index = -index - 1;
+        if (childCount == childChars.length) {
+            int capacity = childCount < 4 ? childCount + 1 : childCount + (childCount >> 1);
+            childChars = Arrays.copyOf(childChars, capacity);
+            childNodes = Arrays.copyOf(childNodes, capacity);
+        }
+        System.arraycopy(childChars, index, childChars, index + 1, childCount - index);
+        System.arraycopy(childNodes, index, childNodes, index + 1, childCount - index);
+        PrimitiveTrieNode child = new PrimitiveTrieNode(ch);
+        childChars[index] = ch;
+        childNodes[index] = child;
+        childCount++;
+        return child;
+    }
+
+    void removeChild(char ch) {
+        int index = indexOf(ch);
+        if (index < 0)
+            return;
+        childCount--;
+        if (childCount == 0) {
+            childChars = NO_CHARS;
+            childNodes = NO_CHILDS;
+            return;
+        }
+        System.arraycopy(childChars, index + 1, childChars, index, childCount - index);
+        System.arraycopy(childNodes, index + 1, childNodes, index, childCount - index);
+        childNodes[childCount] = null;
+    }
+}
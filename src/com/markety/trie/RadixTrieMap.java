@@ -0,0 +1,510 @@
+package com.markety.trie;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A path-compressed (radix, Patricia) trie map. Unlike TrieMap, where every char of a key is a node, a node of a radix trie holds
+ * a run of chars (its label): chains of nodes having a single child and no value are merged into one node.
+ * Keys with long unique suffixes (URLs, file paths, hashes..) therefore need a few nodes instead of one node per char, and a lookup
+ * follows a few references, comparing the labels char by char.
+ * Nodes are split when a key diverges in the middle of a label, and merged back when remove leaves a node with a single child and no value.
+ * Children are kept in sorted primitive arrays (like CHILD_STORAGE_MODE_USING_ARRAYS), so keys are iterated in lexicographic order.
+ * @param <T> Class type of the value to be stored in the trie
+ */
+public class RadixTrieMap<T> extends AbstractTrieMap<T> {
+
+    private static final char[] EMPTY_LABEL = new char[0];
+    private static final int LINEAR_SCAN_LIMIT = 8;
+
+    private Node<T> root = new Node<>(EMPTY_LABEL);
+
+    //================================CLASS METHODS=============================
+
+    /**
+     * puts or replaces the value specified by the key
+     * @param key the key
+     * @param value the value to store, not null
+     * @return the previous value if exist, null otherwise
+     */
+    @Override
+    public T put(String key, T value) {
+        return put(key, 0, key.length(), value);
+    }
+
+    /**
+     * puts or replaces the value specified by the key, where the key is a slice of a char sequence (ex: a part of a buffer).
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @param value the value to store, not null
+     * @return the previous value if exist, null otherwise
+     */
+    public T put(CharSequence key, int start, int end, T value) {
+        if (value == null)
+            throw new NullPointerException("RadixTrieMap does not support null values");
+        checkRange(key, start, end);
+
+        Node<T> node = root;
+        int i = start;
+        while (i < end) {
+            int index = node.indexOf(key.charAt(i));
+            if (index < 0) {
+                Node<T> leaf = new Node<>(toChars(key, i, end));
+                node.insertChild(-index - 1, leaf);
+                node = leaf;
+                break;
+            }
+            Node<T> child = node.childNodes[index];
+            char[] label = child.label;
+            int common = commonPrefixLength(label, key, i, end);
+            if (common < label.length) {
+                // the key diverges (or ends) inside the label: split the child
+                Node<T> middle = new Node<>(Arrays.copyOf(label, common));
+                child.label = Arrays.copyOfRange(label, common, label.length);
+                middle.size = child.size;
+                middle.insertChild(0, child);
+                node.childNodes[index] = middle;
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+
+        T prev = node.value;
+        node.value = value;
+        if (prev == null) {
+            // a new entry, count it in every node of its path
+            node = root;
+            node.size++;
+            for (i = start; i < end; i += node.label.length) {
+                node = node.findChild(key.charAt(i));
+                node.size++;
+            }
+        }
+        return prev;
+    }
+
+    /**
+     * @param key the key
+     * @return the value associated with the key
+     */
+    @Override
+    public T get(Object key) {
+        if (key instanceof String == false)
+            return null;
+        String word = (String) key;
+        Node<T> node = getNode(word, 0, word.length());
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Finds the value of a key given as a slice of a char sequence (ex: a part of a buffer), without copying it.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return the value associated with the key, null if the key does not exist
+     */
+    public T get(CharSequence key, int start, int end) {
+        checkRange(key, start, end);
+        Node<T> node = getNode(key, start, end);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Checks whether a key given as a slice of a char sequence (ex: a part of a buffer) exists.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return true if the key exists in this trie
+     */
+    public boolean containsKey(CharSequence key, int start, int end) {
+        return get(key, start, end) != null;
+    }
+
+    /**
+     * Removes the entry of the key, prunes the resulting unused branch and merges the node left with a single child and no value with this child.
+     * @param key the key of the entry to remove
+     * @return the value of the removed entry if exist
+     */
+    @Override
+    public T remove(Object key) {
+        if (key instanceof String == false)
+            return null;
+        String word = (String) key;
+        return remove(word, 0, word.length());
+    }
+
+    /**
+     * Removes the entry of a key given as a slice of a char sequence (ex: a part of a buffer).
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return the value of the removed entry if exist
+     */
+    public T remove(CharSequence key, int start, int end) {
+        checkRange(key, start, end);
+        Node<T> node = getNode(key, start, end);
+        if (node == null || node.value == null)
+            return null;
+
+        T prev = node.value;
+        node.value = null;
+
+        // uncount the entry along its path, the first node left without entries is pruned
+        node = root;
+        node.size--;
+        for (int i = start; i < end;) {
+            Node<T> child = node.findChild(key.charAt(i));
+            child.size--;
+            if (child.size == 0) {
+                node.removeChild(child.label[0]);
+                break;
+            }
+            i += child.label.length;
+            node = child;
+        }
+        if (node != root)
+            node.mergeWithSingleChild();
+        return prev;
+    }
+
+    /**
+     * @return the number of entries, which is counted by the root node. O(1)
+     */
+    @Override
+    public int size() {
+        return root.size;
+    }
+
+    @Override
+    public void clear() {
+        root = new Node<>(EMPTY_LABEL);
+    }
+
+    @Override
+    TrieWalker<String> walkKeys(String prefix) {
+        StringBuilder base = new StringBuilder(prefix);
+        Node<T> node = findPrefix(prefix, base);
+        return node == null ? null : new KeysIterator(node, base.toString());
+    }
+
+    /**
+     * @return a view of the entries of this trie, in lexicographic key order. Map.Entry.setValue writes through to the trie.
+     */
+    @Override
+    public Set<Map.Entry<String,T>> entrySet() {
+        return new AbstractSet<Map.Entry<String,T>>() {
+            @Override
+            public Iterator<Map.Entry<String,T>> iterator() {
+                return new EntriesIterator(root, "");
+            }
+
+            @Override
+            public int size() {
+                return RadixTrieMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return the number of nodes of this trie (the root included), which is at most twice the number of entries
+     */
+    public int getNodesCount() {
+        int count = 0;
+        Node<?>[] stack = new Node<?>[16];
+        int depth = 0;
+        stack[0] = root;
+        while (depth >= 0) {
+            Node<?> node = stack[depth--];
+            count++;
+            for (int i = 0; i < node.childCount; i++) {
+                if (++depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth] = node.childNodes[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * finds the node whose key is exactly the passed key
+     * @return the node, null if the key ends inside a label or leaves the trie
+     */
+    private Node<T> getNode(CharSequence key, int start, int end) {
+        Node<T> node = root;
+        int i = start;
+        while (i < end) {
+            node = node.findChild(key.charAt(i));
+            if (node == null)
+                return null;
+            char[] label = node.label;
+            if (end - i < label.length)
+                return null;
+            for (int j = 1; j < label.length; j++)
+                if (label[j] != key.charAt(i + j))
+                    return null;
+            i += label.length;
+        }
+        return node;
+    }
+
+    /**
+     * finds the highest node whose keys all start with the prefix
+     * @param base the prefix, to which the end of the node label is appended when the prefix ends inside the label
+     * @return the node, null if no key starts with the prefix
+     */
+    private Node<T> findPrefix(String prefix, StringBuilder base) {
+        Node<T> node = root;
+        int i = 0;
+        int end = prefix.length();
+        while (i < end) {
+            node = node.findChild(prefix.charAt(i));
+            if (node == null)
+                return null;
+            char[] label = node.label;
+            int common = commonPrefixLength(label, prefix, i, end);
+            if (common < label.length) {
+                if (i + common < end)
+                    return null;
+                base.append(label, common, label.length - common);
+            }
+            i += common;
+        }
+        return node;
+    }
+
+    private static int commonPrefixLength(char[] label, CharSequence key, int start, int end) {
+        int max = Math.min(label.length, end - start);
+        int i = 0;
+        while (i < max && label[i] == key.charAt(start + i))
+            i++;
+        return i;
+    }
+
+    private static char[] toChars(CharSequence key, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++)
+            chars[i - start] = key.charAt(i);
+        return chars;
+    }
+
+    private static void checkRange(CharSequence key, int start, int end) {
+        if (start < 0 || end > key.length() || start > end)
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + key.length());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] newNodes(int length) {
+        return (Node<T>[]) new Node<?>[length];
+    }
+
+    /**
+     * A node of the radix trie: a run of chars (its label), an optional value and its children, sorted by the first char of their label.
+     */
+    static final class Node<T> {
+
+        char[] label;
+        T value;
+        /**
+         * the number of entries in the sub-trie rooted at this node, this node included
+         */
+        int size;
+        char[] childChars;
+        Node<T>[] childNodes;
+        int childCount;
+
+        Node(char[] label) {
+            this.label = label;
+        }
+
+        Node<T> findChild(char ch) {
+            int index = indexOf(ch);
+            return index >= 0 ? childNodes[index] : null;
+        }
+
+        /**
+         * @return the index of the child starting with the char, or (-(insertion point) - 1) if there is no such child
+         */
+        int indexOf(char ch) {
+            int count = childCount;
+            if (count <= LINEAR_SCAN_LIMIT) {
+                for (int i = 0; i < count; i++) {
+                    char c = childChars[i];
+                    if (c == ch)
+                        return i;
+                    if (c > ch)
+                        return -i - 1;
+                }
+                return -count - 1;
+            }
+            return Arrays.binarySearch(childChars, 0, count, ch);
+        }
+
+        @SuppressWarnings("unchecked")
+        void insertChild(int index, Node<T> child) {
+            if (childNodes == null) {
+                childChars = new char[1];
+                childNodes = newNodes(1);
+            } else if (childCount == childChars.length) {
+                int capacity = childCount < 4 ? childCount + 1 : childCount + (childCount >> 1);
+                childChars = Arrays.copyOf(childChars, capacity);
+                childNodes = Arrays.copyOf(childNodes, capacity);
+            }
+            System.arraycopy(childChars, index, childChars, index + 1, childCount - index);
+            System.arraycopy(childNodes, index, childNodes, index + 1, childCount - index);
+            childChars[index] = child.label[0];
+            childNodes[index] = child;
+            childCount++;
+        }
+
+        void removeChild(char ch) {
+            int index = indexOf(ch);
+            if (index < 0)
+                return;
+            childCount--;
+            if (childCount == 0) {
+                childChars = null;
+                childNodes = null;
+                return;
+            }
+            System.arraycopy(childChars, index + 1, childChars, index, childCount - index);
+            System.arraycopy(childNodes, index + 1, childNodes, index, childCount - index);
+            childNodes[childCount] = null;
+        }
+
+        /**
+         * Merges this node with its child if it has a single child and no value. This node takes the place of both.
+         */
+        void mergeWithSingleChild() {
+            if (value != null || childCount != 1)
+                return;
+            Node<T> child = childNodes[0];
+            char[] merged = Arrays.copyOf(label, label.length + child.label.length);
+            System.arraycopy(child.label, 0, merged, label.length, child.label.length);
+            label = merged;
+            value = child.value;
+            childChars = child.childChars;
+            childNodes = child.childNodes;
+            childCount = child.childCount;
+        }
+    }
+
+    /**
+     * Walks the sub-trie of a node, a cursor being the index of a child in the children of its parent
+     */
+    private abstract class DfsIterator<E> extends TrieWalker<E> {
+
+        private Node<T>[] nodes = newNodes(INITIAL_DEPTH);
+
+        DfsIterator(Node<T> start, String base) {
+            super(base);
+            nodes[0] = start;
+        }
+
+        @Override
+        int firstCursor(int depth) {
+            return nodes[depth].childCount > 0 ? 0 : END;
+        }
+
+        @Override
+        int nextCursor(int depth, int cursor) {
+            return cursor + 1 < nodes[depth].childCount ? cursor + 1 : END;
+        }
+
+        @Override
+        void pushChild(int depth, int cursor) {
+            Node<T> child = nodes[depth - 1].childNodes[cursor];
+            nodes[depth] = child;
+            appendLabel(child.label);
+        }
+
+        @Override
+        boolean visit(int depth) {
+            return nodes[depth].value != null;
+        }
+
+        @Override
+        void pop(int depth) {
+            nodes[depth] = null;
+        }
+
+        @Override
+        void grow(int length) {
+            nodes = Arrays.copyOf(nodes, length);
+        }
+
+        @Override
+        long size() {
+            return nodes[0].size;
+        }
+
+        @Override
+        void removeKey(String key) {
+            RadixTrieMap.this.remove(key);
+            // a node of the path left with a single child and no value took the place of its child: their frames become one
+            for (int d = 0; d < depth(); d++) {
+                if (nodes[d].findChild(nodes[d + 1].label[0]) != nodes[d + 1]) {
+                    mergeFrames(d);
+                    System.arraycopy(nodes, d + 2, nodes, d + 1, depth() - d);
+                    nodes[depth() + 1] = null;
+                    break;
+                }
+            }
+            // the pruned branch was left already, but it may shift the children to visit: their indexes are found again
+            for (int d = 0; d < depth(); d++) {
+                int next = nodes[d].indexOf(nodes[d + 1].label[0]) + 1;
+                resetCursor(d, next < nodes[d].childCount ? next : END);
+            }
+        }
+
+        /**
+         * @return the node of nextKey
+         */
+        Node<T> currentNode() {
+            return nodes[depth()];
+        }
+    }
+
+    private class KeysIterator extends DfsIterator<String> {
+
+        KeysIterator(Node<T> start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        String current() {
+            return nextKey;
+        }
+    }
+
+    private class EntriesIterator extends DfsIterator<Map.Entry<String,T>> {
+
+        EntriesIterator(Node<T> start, String base) {
+            super(start, base);
+        }
+
+        @Override
+        Map.Entry<String,T> current() {
+            final Node<T> node = currentNode();
+            return new AbstractMap.SimpleEntry<String,T>(nextKey, node.value) {
+                @Override
+                public T setValue(T value) {
+                    if (value == null)
+                        throw new NullPointerException("RadixTrieMap does not support null values");
+                    node.value = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.markety.trie;
+
+import com.markety.trie.RankedTrieNode.Completion;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A TrieMap whose entries have a score, made for type-ahead: topK(prefix, k) returns the best scored keys starting with a prefix.
+ * Each node caches the best completions of its sub-trie (up to 'maxCompletions' of them), which are updated along the path
+ * of the key on each put and remove. So a top-k query only finds the node of the prefix and reads its cached list:
+ * O(prefix length + k), whatever the number of keys starting with the prefix is.
+ * @param <T> Class type of the value to be stored in the trie
+ */
+public class RankedTrieMap<T> extends TrieMap<T> {
+
+    /**
+     * the score of the entries put without a score
+     */
+    public static final double DEFAULT_SCORE = 0;
+
+    private final int maxCompletions;
+
+    /**
+     * Builds a ranked trie
+     * @param childsStorageMode the storage mode of the children of the nodes
+     * @param maxCompletions the number of best completions cached at each node, the largest k for which topK is O(prefix length + k)
+     */
+    public RankedTrieMap(byte childsStorageMode, int maxCompletions) {
+        super(childsStorageMode);
+        if (maxCompletions < 1)
+            throw new IllegalArgumentException("maxCompletions must be positive: " + maxCompletions);
+        this.maxCompletions = maxCompletions;
+    }
+
+    @Override
+    TrieNode<T> newRoot(byte childsStorageMode) {
+        return new RankedTrieNode<>('0', childsStorageMode, null);
+    }
+
+    /**
+     * puts or replaces the value specified by the key, with its score
+     * @param key the key
+     * @param value the value to store
+     * @param score the score of the entry, the higher the better
+     * @return the previous value if exist, null otherwise
+     */
+    public T put(String key, T value, double score) {
+        T prev_val = super.put(key, value);
+
+        RankedTrieNode<T>[] path = getPath(key);
+        RankedTrieNode<T> node = path[path.length - 1];
+        Completion<T> previous = node.getEntry();
+        Completion<T> completion = new Completion<>(key, value, score);
+        node.setEntry(completion);
+        for (int i = path.length - 1; i >= 0; i--)
+            path[i].update(completion, previous, maxCompletions);
+        return prev_val;
+    }
+
+    /**
+     * puts or replaces the value specified by the key. The entry keeps its score if it already exists, DEFAULT_SCORE otherwise.
+     * @param key the key
+     * @param value the value to store
+     * @return the previous value if exist, null otherwise
+     */
+    @Override
+    public T put(String key, T value) {
+        return put(key, value, getScore(key, DEFAULT_SCORE));
+    }
+
+    @Override
+    public T put(CharSequence key, int start, int end, T value) {
+        return put(key.subSequence(start, end).toString(), value);
+    }
+
+    @Override
+    public T remove(Object key) {
+        if (key instanceof String == false || !containsKey(key))
+            return null;
+
+        String word = (String) key;
+        Completion<T> previous = ((RankedTrieNode<T>) getRoot().getNode(word)).getEntry();
+        T prev_val = super.remove(key);
+
+        // the nodes left in the trie after the removal (the path was copied if shared with a snapshot, and may be pruned)
+        RankedTrieNode<T>[] path = getPath(word);
+        if (path.length == word.length() + 1)
+            path[path.length - 1].setEntry(null);
+        for (int i = path.length - 1; i >= 0; i--)
+            path[i].update(null, previous, maxCompletions);
+        return prev_val;
+    }
+
+    @Override
+    public T remove(CharSequence key, int start, int end) {
+        return remove(key.subSequence(start, end).toString());
+    }
+
+    /**
+     * @param key the key
+     * @return the score of the entry, NaN if the key does not exist
+     */
+    public double getScore(String key) {
+        return getScore(key, Double.NaN);
+    }
+
+    private double getScore(String key, double defaultScore) {
+        RankedTrieNode<T> node = (RankedTrieNode<T>) getRoot().getNode(key);
+        if (node == null || node.getEntry() == null)
+            return defaultScore;
+        return node.getEntry().score;
+    }
+
+    /**
+     * Retrieves the k best scored keys starting with the specified prefix, best first (ties are sorted by key).
+     * Costs O(prefix length + k) when k is not greater than maxCompletions, otherwise the whole sub-trie of the prefix is scanned.
+     * @param prefix
+     * @param k the number of keys to return
+     * @return at most k keys starting with the prefix, by descending score
+     */
+    public List<String> topK(String prefix, int k) {
+        RankedTrieNode<T> node = (RankedTrieNode<T>) getRoot().getNode(prefix);
+        if (node == null || k <= 0)
+            return Collections.emptyList();
+
+        List<String> keys = new ArrayList<>(Math.min(k, node.size()));
+        if (k <= maxCompletions) {
+            Completion<T>[] best = node.getBest();
+            for (int i = 0; i < best.length && i < k; i++)
+                keys.add(best[i].key);
+            return keys;
+        }
+
+        // more than what is cached: keep the k best of the sub-trie, the worst on top of the heap
+        PriorityQueue<Completion<T>> heap = new PriorityQueue<>(k, (a, b) -> Completion.compare(b, a));
+        Iterator<TrieNode<T>> it = node.iterator();
+        while (it.hasNext()) {
+            heap.add(((RankedTrieNode<T>) it.next()).getEntry());
+            if (heap.size() > k)
+                heap.poll();
+        }
+        while (!heap.isEmpty())
+            keys.add(heap.poll().key);
+        Collections.reverse(keys);
+        return keys;
+    }
+
+    /**
+     * @return the number of best completions cached at each node
+     */
+    public int getMaxCompletions() {
+        return maxCompletions;
+    }
+
+    /**
+     * @return the nodes of the path of the key which exist in the trie, from the root to the node of the key
+     */
+    @SuppressWarnings("unchecked")
+    private RankedTrieNode<T>[] getPath(String key) {
+        RankedTrieNode<T>[] path = (RankedTrieNode<T>[]) new RankedTrieNode<?>[key.length() + 1];
+        TrieNode<T> node = getRoot();
+        path[0] = (RankedTrieNode<T>) node;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.findChild(key.charAt(i));
+            if (node == null)
+                return Arrays.copyOf(path, i + 1);
+            path[i + 1] = (RankedTrieNode<T>) node;
+        }
+        return path;
+    }
+}
@@ -0,0 +1,142 @@
+package com.markety.trie;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A node of a RankedTrieMap. Besides its value, it caches the best scored completions (entries) of its sub-trie,
+ * so the top completions of a prefix are read from the node of the prefix, whatever the size of its sub-trie is.
+ * @param <T> Class type of the value to be stored in the trie
+ */
+class RankedTrieNode<T> extends ParentedTrieNode<T> {
+
+    private static final Completion<?>[] NO_COMPLETIONS = new Completion<?>[0];
+
+    /**
+     * the entry of this node, null if the node holds no value
+     */
+    private Completion<T> entry;
+    /**
+     * the best completions of the sub-trie rooted at this node, sorted by descending score. Never modified in place, it is replaced on each change.
+     */
+    private Completion<T>[] best = noCompletions();
+
+    RankedTrieNode(char key, byte childsStorageMode, ParentedTrieNode<T> parent) {
+        super(key, null, childsStorageMode, parent);
+    }
+
+    @Override
+    TrieNode<T> newChild(char ch) {
+        return new RankedTrieNode<>(ch, getChildsStorageMode(), this);
+    }
+
+    Completion<T> getEntry() {
+        return this.entry;
+    }
+
+    void setEntry(Completion<T> entry) {
+        this.entry = entry;
+    }
+
+    Completion<T>[] getBest() {
+        return this.best;
+    }
+
+    /**
+     * Updates the cached completions after the completion 'previous' of an entry in this sub-trie was replaced by 'completion'.
+     * The children must be up to date.
+     * @param completion the new completion, null if the entry was removed
+     * @param previous the replaced completion, null if the entry is new
+     * @param max the maximum number of completions to keep
+     */
+    void update(Completion<T> completion, Completion<T> previous, int max) {
+        boolean hadPrevious = previous != null && indexOf(previous) >= 0;
+        if (hadPrevious && (completion == null || Completion.compare(completion, previous) > 0)) {
+            // an entry of the top list got worse, some entry outside of it may now be better
+            recompute(max);
+            return;
+        }
+        Completion<T>[] list = hadPrevious ? without(previous) : this.best;
+        if (completion != null)
+            list = with(list, completion, max);
+        this.best = list;
+    }
+
+    /**
+     * Rebuilds the cached completions from the entry of this node and the cached completions of the children.
+     */
+    void recompute(int max) {
+        Completion<T>[] list = noCompletions();
+        if (this.entry != null)
+            list = with(list, this.entry, max);
+        for (Iterator<TrieNode<T>> it = getChildsIterator(); it.hasNext();) {
+            for (Completion<T> candidate : ((RankedTrieNode<T>) it.next()).best) {
+                if (list.length == max && Completion.compare(candidate, list[max - 1]) >= 0)
+                    break; // the lists of the children are sorted, the next ones are not better
+                list = with(list, candidate, max);
+            }
+        }
+        this.best = list;
+    }
+
+    private int indexOf(Completion<T> completion) {
+        for (int i = 0; i < this.best.length; i++)
+            if (this.best[i] == completion)
+                return i;
+        return -1;
+    }
+
+    private Completion<T>[] without(Completion<T> completion) {
+        int index = indexOf(completion);
+        Completion<T>[] list = Arrays.copyOf(this.best, this.best.length - 1);
+        System.arraycopy(this.best, index + 1, list, index, list.length - index);
+        return list;
+    }
+
+    /**
+     * @return a copy of the sorted list 'list' with 'completion' inserted at its place, truncated to 'max' completions
+     */
+    private static <T> Completion<T>[] with(Completion<T>[] list, Completion<T> completion, int max) {
+        int index = 0;
+        while (index < list.length && Completion.compare(list[index], completion) < 0)
+            index++;
+        if (index >= max)
+            return list;
+        Completion<T>[] result = Arrays.copyOf(list, Math.min(list.length + 1, max));
+        System.arraycopy(list, index, result, index + 1, result.length - index - 1);
+        result[index] = completion;
+        return result;
+    }
+
+    /**
+     * @return the shared empty list of completions
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Completion<T>[] noCompletions() {
+        return (Completion<T>[]) NO_COMPLETIONS;
+    }
+
+    /**
+     * An entry of a ranked trie, with its score. Immutable, so it can be shared by the cached lists of all the nodes of its path.
+     */
+    static final class Completion<T> {
+
+        final String key;
+        final T value;
+        final double score;
+
+        Completion(String key, T value, double score) {
+            this.key = key;
+            this.value = value;
+            this.score = score;
+        }
+
+        /**
+         * Orders completions by descending score, then by key.
+         */
+        static int compare(Completion<?> a, Completion<?> b) {
+            int result = Double.compare(b.score, a.score);
+            return result != 0 ? result : a.key.compareTo(b.key);
+        }
+    }
+}
@@ -5,6 +5,10 @@
  */
 package com.markety.trie;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
 /**
  *
  * @author doried
@@ -16,23 +20,163 @@ public class TrieFactory {
      * Use this method to get a trie optimized for runtime. This trie uses a hashmap inside each node its childs. so it uses a little bit more memory.
      * @return an empty try
      */
-    public static TrieMap createTrieMapOptimizedForExecutionTime(){
-        return new TrieMap(TrieMap.CHILD_STORAGE_MODE_USING_HASHMAP);
+    public static <T> TrieMap<T> createTrieMapOptimizedForExecutionTime(){
+        return new TrieMap<>(TrieMap.CHILD_STORAGE_MODE_USING_HASHMAP);
     }
     
     /**
      * Use this method to get a trie optimized for memory usage. This trie uses a treemap inside each node its childs. so it consumes a little bit more time than a hashmap based trie.
      * @return an empty try
      */
-    public static TrieMap createTrieMapOptimizedForMemory(){
-        return new TrieMap(TrieMap.CHILD_STORAGE_MODE_USING_TREEMAP);
+    public static <T> TrieMap<T> createTrieMapOptimizedForMemory(){
+        return new TrieMap<>(TrieMap.CHILD_STORAGE_MODE_USING_TREEMAP);
     }
     
      /**
      * Use this method to get a trie balancing between execution time and memory usage. This trie combines the usage of a treemap and a hashmap inside its nodes. some nodes use treemap while others uses hashmap (randomly). So it tries to balance memory usage against time consumption.
      * @return an empty try
      */
-    public static TrieMap createTrieMapBalancingExecutionTimeAndMemory(){
-        return new TrieMap(TrieMap.CHILD_STORAGE_MODE_USING_RANDOM);
+    public static <T> TrieMap<T> createTrieMapBalancingExecutionTimeAndMemory(){
+        return new TrieMap<>(TrieMap.CHILD_STORAGE_MODE_USING_RANDOM);
+    }
+    
+    /**
+     * Use this method to get a trie with the smallest memory footprint. Each node stores its childs in primitive arrays (sorted chars and nodes) instead of a map, and leaves store no childs container at all.
+     * Lookups scan small nodes linearly, binary-search medium ones and use a dense table for nodes with many childs (like the root). So it is as fast as a hashmap based trie for typical keys.
+     * @return an empty try
+     */
+    public static <T> TrieMap<T> createTrieMapUsingCompactArrays(){
+        return new TrieMap<>(TrieMap.CHILD_STORAGE_MODE_USING_ARRAYS);
+    }
+    
+    /**
+     * Use this method to get a trie with the smallest footprint: children are stored in compact arrays and the nodes do not keep a pointer to their parent.
+     * The keys are only given by the key iterators and the entry set, TrieNode.getKey is not supported.
+     * @return an empty try
+     */
+    public static <T> TrieMap<T> createTrieMapUsingCompactArraysWithoutParents(){
+        return new TrieMap<>(TrieMap.CHILD_STORAGE_MODE_USING_ARRAYS, false);
+    }
+    
+    /**
+     * Use this method to get a trie for type-ahead (autocompletion) where suggestions are ranked by a score given with each entry.
+     * Each node caches its best completions, so trie.topK(prefix, k) costs O(prefix length + k) for k up to maxCompletions, whatever the number of keys under the prefix. This trie uses a hashmap inside each node for its childs.
+     * @param maxCompletions the number of best completions cached at each node
+     * @return an empty try
+     */
+    public static <T> RankedTrieMap<T> createRankedTrieMap(int maxCompletions){
+        return new RankedTrieMap<>(TrieMap.CHILD_STORAGE_MODE_USING_HASHMAP, maxCompletions);
+    }
+    
+    /**
+     * Use this method to get a trie for a prefix-aware cache, holding at most maxEntries entries: when it is full, a put evicts the entries read least recently (approximated by the CLOCK algorithm, reads only setting a flag). invalidatePrefix(prefix) removes all the keys starting with a prefix in O(prefix length). This trie uses a hashmap inside each node for its childs.
+     * @param maxEntries the maximum number of entries
+     * @return an empty try
+     */
+    public static <T> BoundedTrieMap<T> createBoundedTrieMap(int maxEntries){
+        return new BoundedTrieMap<>(TrieMap.CHILD_STORAGE_MODE_USING_HASHMAP, maxEntries, Long.MAX_VALUE, BoundedTrieMap.EvictionPolicy.LRU, 0, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Use this method to get a trie for a prefix-aware cache, bounded by a number of entries and an estimated size of its nodes, whose entries expire a time to live after they are put (unless put with their own time to live). This trie uses a hashmap inside each node for its childs.
+     * @param maxEntries the maximum number of entries
+     * @param maxBytes the maximum estimated bytes of the nodes, Long.MAX_VALUE for no bound
+     * @param policy the entries kept when the trie is full: read recently (LRU) or often (LFU)
+     * @param timeToLive the time to live of the entries, 0 if they do not expire
+     * @param unit the unit of timeToLive
+     * @return an empty try
+     */
+    public static <T> BoundedTrieMap<T> createBoundedTrieMap(int maxEntries, long maxBytes, BoundedTrieMap.EvictionPolicy policy, long timeToLive, TimeUnit unit){
+        return new BoundedTrieMap<>(TrieMap.CHILD_STORAGE_MODE_USING_HASHMAP, maxEntries, maxBytes, policy, timeToLive, unit);
+    }
+    
+    /**
+     * Use this method to get a path-compressed (radix) trie. Each node holds a run of chars instead of a single char, so chains of nodes with a single child are merged.
+     * Best for long keys with unique suffixes (URLs, file paths, hashes..): much less nodes, and less references followed by each lookup. It offers the same map and prefix-query methods as TrieMap.
+     * @return an empty try
+     */
+    public static <T> RadixTrieMap<T> createRadixTrieMap(){
+        return new RadixTrieMap<>();
+    }
+    
+    /**
+     * Use this method to get a double-array trie. Its nodes are slots of int arrays, and each step of a lookup is two array reads, with no hashing and no boxed char: the fastest get and containsKey. It offers the same map and prefix-query methods as TrieMap.
+     * @return an empty try
+     */
+    public static <T> DoubleArrayTrieMap<T> createDoubleArrayTrieMap(){
+        return new DoubleArrayTrieMap<>();
+    }
+    
+    /**
+     * Use this method to get a double-array copy of a trie, whose nodes are placed in BFS order with no relocation (the most compact arrays). The copy can be modified.
+     * @param trie the trie to copy
+     * @return a double-array trie having the entries of the trie
+     */
+    public static <T> DoubleArrayTrieMap<T> createDoubleArrayTrieMap(TrieMap<? extends T> trie){
+        return DoubleArrayTrieMap.of(trie);
+    }
+    
+    /**
+     * Use this method to get a thread-safe trie. Reads and prefix iterations never block, writers use compare-and-set instead of locks, and it offers the atomic operations of java.util.concurrent.ConcurrentMap.
+     * @return an empty try
+     */
+    public static <T> ConcurrentTrieMap<T> createConcurrentTrieMap(){
+        return new ConcurrentTrieMap<>();
+    }
+    
+    /**
+     * Use this method to get a trie of int values (counters, ids..). Values are not boxed, and it offers addTo, incrementAndGet and sums of the values by prefix.
+     * @return an empty try
+     */
+    public static IntTrieMap createIntTrieMap(){
+        return new IntTrieMap();
+    }
+    
+    /**
+     * Use this method to get a trie of long values (counters, ids..). Values are not boxed, and it offers addTo, incrementAndGet and sums of the values by prefix.
+     * @return an empty try
+     */
+    public static LongTrieMap createLongTrieMap(){
+        return new LongTrieMap();
+    }
+    
+    /**
+     * Use this method to get a read-only copy of a trie sharing the common suffixes of the keys as well as their prefixes (a minimal automaton). Best for dictionary-like keys (words, inflected forms, domain names..), which need much less memory this way.
+     * @param trie the trie to copy
+     * @return a read-only map having the entries of the trie
+     */
+    public static <T> DawgMap<T> createDawg(TrieMap<T> trie){
+        return DawgMap.of(trie);
+    }
+    
+    /**
+     * Use this method to find the keys of a trie in texts: the automaton reports all their occurrences in one linear pass over the text.
+     * @param trie the trie holding the keys to find
+     * @return an Aho-Corasick automaton of the keys of the trie
+     */
+    public static <T> AhoCorasick<T> createAhoCorasick(TrieMap<T> trie){
+        return AhoCorasick.of(trie);
+    }
+    
+    /**
+     * Use this method to load a trie written by MappedTrieMap.write. The file is mapped in memory and read in place: opening it takes milliseconds and no heap, whatever the number of keys is, and the JVMs of a host share its pages.
+     * @param file the trie file
+     * @param codec the codec the values were written with
+     * @return a read-only trie
+     * @throws IOException if the file can not be read, or is not a trie file
+     */
+    public static <T> MappedTrieMap<T> openMappedTrieMap(Path file, TrieValueCodec<? extends T> codec) throws IOException{
+        return MappedTrieMap.open(file, codec);
+    }
+    
+    /**
+     * Use this method to get a trie kept on disk: its writes are appended to a log forced to the disk every few milliseconds (all the writes of the interval sharing one fsync), and a compact checkpoint is written in the background from time to time, without stopping the writers. Opening the directory again recovers the trie, after a restart or a crash.
+     * @param directory the directory of the log and the checkpoints, created if it does not exist
+     * @param codec the codec of the values
+     * @return the trie recovered from the directory, empty if the directory is new
+     * @throws IOException if the directory can not be read or written, or a checkpoint or a log is corrupted
+     */
+    public static <T> DurableTrieMap<T> openDurableTrieMap(Path directory, TrieValueCodec<T> codec) throws IOException{
+        return DurableTrieMap.open(directory, codec);
     }
 }
@@ -6,19 +6,33 @@
 package com.markety.trie;
 
 
-import java.util.ArrayList;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- *
+ * A map storing its keys in a trie. Keys are ordered lexicographically (String.compareTo): the views of the map iterate in this order
+ * whatever the storage mode of the children is, and the navigation methods of NavigableMap are trie walks.
  * @author doried
  */
-public class TrieMap<T> implements Iterable<TrieNode<T>>,Map<String,T>{
+public class TrieMap<T> implements Iterable<TrieNode<T>>,NavigableMap<String,T>{
 
     //================================CONSTANTS=================================
      /**
@@ -34,12 +48,32 @@ public class TrieMap<T> implements Iterable<TrieNode<T>>,Map<String,T>{
      * May be useful to balance between time and space
      */
     static final byte CHILD_STORAGE_MODE_USING_RANDOM=2;
+    /**
+     * use primitive parallel arrays (sorted chars + nodes), or a dense table for high fan-out nodes, to store the children of a trie node.
+     * Leaves do not allocate any children container.
+     */
+    static final byte CHILD_STORAGE_MODE_USING_ARRAYS=3;
+    /**
+     * the number of entries from which containsValueParallel scans the trie in parallel
+     */
+    static final int PARALLEL_THRESHOLD=1<<14;
     
     //================================FIELDS====================================
     private TrieNode<T> root;
     private byte childStorageMode;
-    private Set<String> keySet;
     private boolean readOnly=false;
+    /**
+     * whether the nodes keep a pointer to their parent, which is only needed by TrieNode.getKey
+     */
+    private boolean parentPointers=true;
+    /**
+     * the current epoch of the trie, incremented by each snapshot. Nodes of older epochs are shared with snapshots: writes copy them instead of modifying them.
+     */
+    private int epoch=0;
+    /**
+     * the metrics of the operations, null while they are disabled: then an operation only checks this field
+     */
+    private TrieMetrics metrics;
     
     
     //================================CONSTRUCTORS==============================
@@ -47,57 +81,110 @@ public class TrieMap<T> implements Iterable<TrieNode<T>>,Map<String,T>{
      * Builds a trie using Random selection (hashmap or treemap)  as childs_storage-mode for each node (for balancing execution time and memory)
      */
     public TrieMap(){
-        this.root = new TrieNode('0',null,CHILD_STORAGE_MODE_USING_RANDOM,null);
+        this.root = newRoot(CHILD_STORAGE_MODE_USING_RANDOM);
         this.childStorageMode=CHILD_STORAGE_MODE_USING_HASHMAP;
         this.readOnly=false;
-        this.keySet= new HashSet<>();
     }
     
     /**
-     * Build a trie using an entry
+     * Build a trie using an entry. The entry is used as is, so building it costs nothing.
      * @param entry 
      */
-    private TrieMap(TrieNode<T> entry,boolean readOnly){
+    TrieMap(TrieNode<T> entry,boolean readOnly){
         
         this.root = entry;
         this.childStorageMode = entry.getChildsStorageMode();
         this.readOnly=readOnly;
-        this.keySet=new HashSet<>();
-        
-        Iterator<String> it = entry.getKeysIterator();
-        while(it.hasNext())
-            this.keySet.add(it.next());
+        this.parentPointers = entry instanceof ParentedTrieNode;
     }
     
     /**
      * Builds a trie using the specified childs storage mode
-     * @param childsStorageMode A parameter used to tell the trie which storage mode to use when storing childs. Use HashMap for better execution time, TreeMap for better memory usage, or Random selection for balancing.
+     * @param childsStorageMode A parameter used to tell the trie which storage mode to use when storing childs. Use HashMap for better execution time, TreeMap for better memory usage, Random selection for balancing, or compact arrays for the smallest memory footprint.
      */
     public TrieMap(byte childsStorageMode){
-        this.root = new TrieNode('0',null,childsStorageMode,null);
+        this(childsStorageMode, true);
+    }
+    
+    /**
+     * Builds a trie using the specified childs storage mode, whose nodes may not keep a pointer to their parent.
+     * Dropping the pointer saves a reference per node. Only TrieNode.getKey needs it: the key iterators and the entry set build
+     * the keys while walking down the trie.
+     * @param childsStorageMode A parameter used to tell the trie which storage mode to use when storing childs
+     * @param parentPointers false to build nodes without a pointer to their parent, on which TrieNode.getKey is not supported
+     */
+    public TrieMap(byte childsStorageMode, boolean parentPointers){
+        this.parentPointers=parentPointers;
+        this.root = newRoot(childsStorageMode);
         this.childStorageMode=childsStorageMode;
         this.readOnly=false;
-        this.keySet = new HashSet<>();
     }
     
     //================================CLASS METHODS=============================
     
+    /**
+     * Creates an empty root node. Tries using their own node class override it.
+     * @param childsStorageMode the storage mode of the children
+     * @return a new root node
+     */
+    TrieNode<T> newRoot(byte childsStorageMode){
+        if(parentPointers)
+            return new ParentedTrieNode<>('0',null,childsStorageMode,null);
+        return new TrieNode<>('0',null,childsStorageMode);
+    }
+    
+    /**
+     * @return the root node of this trie (the node of the prefix, for a sub-trie)
+     */
+    TrieNode<T> getRoot(){
+        return this.root;
+    }
+    
     /**
      * puts or replaces the value specified by the key
      * @param key the key
-     * @param value the value to store
+     * @param value the value to store. null values are not supported, as null marks the nodes that hold no entry.
      * @return the previous value if exist, null otherwise
      */
     @Override
     public T put(String key, T value){
         if(readOnly)
             throw new RuntimeException("Can not make modifications to read-only trie-view");
+        if(value==null)
+            throw new NullPointerException("TrieMap does not support null values");
         
-        T prev_val = root.put(key, value);
-        if(prev_val==null){
-            keySet.add(key);
-        }
-        return prev_val;
+        TrieMetrics metrics = this.metrics;
+        if(metrics==null)
+            return writableRoot().put(key, 0, key.length(), value, epoch);
+        long start = metrics.start();
+        T prev = writableRoot().put(key, 0, key.length(), value, epoch);
+        metrics.recordPut(start, prev==null);
+        return prev;
+    }
+    
+    /**
+     * puts or replaces the value specified by the key, where the key is a slice of a char sequence (ex: a part of a buffer).
+     * The chars are read in place, no String is built.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @param value the value to store
+     * @return the previous value if exist, null otherwise
+     */
+    public T put(CharSequence key, int start, int end, T value){
+        if(readOnly)
+            throw new RuntimeException("Can not make modifications to read-only trie-view");
+        if(value==null)
+            throw new NullPointerException("TrieMap does not support null values");
+        checkRange(key, start, end);
+        
+        TrieMetrics metrics = this.metrics;
+        if(metrics==null)
+            return writableRoot().put(key, start, end, value, epoch);
+        long time = metrics.start();
+        T prev = writableRoot().put(key, start, end, value, epoch);
+        metrics.recordPut(time, prev==null);
+        return prev;
     }
 
     /**
@@ -105,11 +192,121 @@ public class TrieMap<T> implements Iterable<TrieNode<T>>,Map<String,T>{
      * @return the value associated with the key
      */
     public T get(Object key){
-        if(key instanceof String)
+        if(key instanceof String==false)
+            return null;
+        TrieMetrics metrics = this.metrics;
+        if(metrics==null)
             return root.get((String)key);
-        else return null;
+        long start = metrics.start();
+        T value = root.get((String)key);
+        metrics.recordGet(start, value!=null);
+        return value;
     }
     
+    /**
+     * Finds the value of a key given as a slice of a char sequence (ex: a part of a buffer), without copying it.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return the value associated with the key, null if the key does not exist
+     */
+    public T get(CharSequence key, int start, int end){
+        checkRange(key, start, end);
+        TrieMetrics metrics = this.metrics;
+        if(metrics==null)
+            return root.get(key, start, end);
+        long time = metrics.start();
+        T value = root.get(key, start, end);
+        metrics.recordGet(time, value!=null);
+        return value;
+    }
+    
+    /**
+     * Finds the longest key which is a prefix of the input (ex: routing a path to the longest matching route), walking the trie along the
+     * input without allocating anything.
+     * @param input a char sequence containing the input
+     * @param start the index of the first char of the input
+     * @param end the index after the last char of the input
+     * @return the length of the longest key which is a prefix of the input, -1 if no key is
+     */
+    public int longestPrefixLength(CharSequence input, int start, int end){
+        checkRange(input, start, end);
+        TrieNode<T> node = root;
+        int longest = node.getValue()!=null ? 0 : -1;
+        for(int i=start;i<end;i++){
+            node = node.findChild(input.charAt(i));
+            if(node==null)
+                break;
+            if(node.getValue()!=null)
+                longest = i+1-start;
+        }
+        return longest;
+    }
+
+    /**
+     * @param input the input
+     * @return the length of the longest key which is a prefix of the input, -1 if no key is
+     */
+    public int longestPrefixLength(CharSequence input){
+        return longestPrefixLength(input, 0, input.length());
+    }
+
+    /**
+     * Same as longestPrefixLength, returning the value of the longest key which is a prefix of the input. Allocates nothing.
+     * @param input the input
+     * @return the value of the longest key which is a prefix of the input, null if no key is
+     */
+    public T longestPrefixValue(CharSequence input){
+        TrieNode<T> node = root;
+        T value = node.getValue();
+        for(int i=0;i<input.length();i++){
+            node = node.findChild(input.charAt(i));
+            if(node==null)
+                break;
+            if(node.getValue()!=null)
+                value = node.getValue();
+        }
+        return value;
+    }
+
+    /**
+     * @param input the input
+     * @return the longest key which is a prefix of the input, null if no key is
+     */
+    public String longestPrefixOf(CharSequence input){
+        int length = longestPrefixLength(input);
+        return length<0 ? null : input.subSequence(0, length).toString();
+    }
+
+    /**
+     * Reports all the keys which are prefixes of the input, the shortest first, walking the trie along the input without allocating anything.
+     * @param input a char sequence containing the input
+     * @param start the index of the first char of the input
+     * @param end the index after the last char of the input
+     * @param handler called with start, the end of the key in the input, and the value of the key. Returning false stops the search.
+     */
+    public void prefixesOf(CharSequence input, int start, int end, TrieMatchHandler<? super T> handler){
+        checkRange(input, start, end);
+        TrieNode<T> node = root;
+        if(node.getValue()!=null && !handler.onMatch(start, start, node.getValue()))
+            return;
+        for(int i=start;i<end;i++){
+            node = node.findChild(input.charAt(i));
+            if(node==null)
+                return;
+            if(node.getValue()!=null && !handler.onMatch(start, i+1, node.getValue()))
+                return;
+        }
+    }
+
+    /**
+     * @param input the input
+     * @param handler called with 0, the length of the key, and the value of the key, for each key which is a prefix of the input
+     */
+    public void prefixesOf(CharSequence input, TrieMatchHandler<? super T> handler){
+        prefixesOf(input, 0, input.length(), handler);
+    }
+
     /**
      * @param key the key of the entry to remove
      * @return the value of the removed entry if exist
@@ -120,16 +317,55 @@ public class TrieMap<T> implements Iterable<TrieNode<T>>,Map<String,T>{
         if(key instanceof String == false)
             return null;
         
-        T prev_val = root.remove((String)key);
-        keySet.remove((String)key);
+        String word = (String)key;
+        TrieMetrics metrics = this.metrics;
+        long start = metrics==null ? TrieMetrics.NOT_SAMPLED : metrics.start();
+        T prev = root.get(word)==null ? null : writableRoot().remove(word, 0, word.length(), epoch);
+        if(metrics!=null)
+            metrics.recordRemove(start, prev!=null);
+        return prev;
+    }
+    
+    /**
+     * Removes the entry of a key given as a slice of a char sequence (ex: a part of a buffer).
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return the value of the removed entry if exist
+     */
+    public T remove(CharSequence key, int start, int end){
+        if(readOnly)
+            throw new RuntimeException("Can not make modifications to read-only trie-view");
+        checkRange(key, start, end);
         
-        return prev_val;
+        TrieMetrics metrics = this.metrics;
+        long time = metrics==null ? TrieMetrics.NOT_SAMPLED : metrics.start();
+        T prev = root.get(key, start, end)==null ? null : writableRoot().remove(key, start, end, epoch);
+        if(metrics!=null)
+            metrics.recordRemove(time, prev!=null);
+        return prev;
+    }
+    
+    /**
+     * Removes all the keys starting with a non-empty prefix at once, detaching the node of the prefix from the trie in O(prefix length).
+     * @param prefix the prefix, not empty
+     * @return the detached node, which keeps its sub-trie and its entries count, null if no key starts with the prefix
+     */
+    TrieNode<T> removeSubTrie(CharSequence prefix){
+        if(readOnly)
+            throw new RuntimeException("Can not make modifications to read-only trie-view");
+        if(root.getNode(prefix, 0, prefix.length())==null)
+            return null;
+        return writableRoot().removeSubTrie(prefix, 0, prefix.length(), epoch);
     }
     
     /**
      * Creates a trie whose root is the node specified by the key.
      * Its useful in cases like when you want to find all the keys starting with a specified prefix
-     * This operation initializes a new trie, explores its keys, stores them in trie.KeySet and returns the resulting object.
+     * This operation only finds the node of the key (O(key length)), the resulting trie is a view sharing the nodes of this trie,
+     * so its size() is known without exploring its keys.
+     * The keys of the resulting trie are relative to the key, in get as in its key set and its entry set: the sub-trie of "so" maps
+     * "ap" to the value of "soap". (Its nodes, given by iterator(), still know their full key when the trie keeps parent pointers.)
      * The resulting object is read only, Its parent will not know about any changes made to it.
      * Ex: if you tried to perform subtrie.put(key,val), the number of keys in the original trie would not be changed.
      * To avoid such situations, we return a read-only try.
@@ -140,10 +376,93 @@ public class TrieMap<T> implements Iterable<TrieNode<T>>,Map<String,T>{
         TrieNode<T> entry = root.getNode(key);
         if(entry==null)
             return null;
-        else return new TrieMap(entry,true);
+        else return new TrieMap<>(entry,true);
                     
     }
     
+    /**
+     * Takes an immutable snapshot of this trie, in O(1).
+     * The snapshot is a read-only trie sharing all the nodes of this trie. Later writes to this trie never modify the shared nodes:
+     * put and remove copy the nodes of the path of their key (O(key length)) and leave the rest of the trie shared.
+     * So readers can keep using a snapshot, from any thread, while a writer keeps modifying this trie, without any lock.
+     * (The snapshot must be handed to other threads through a safe publication, ex: a volatile field or a concurrent queue.)
+     * Sub-tries (getSubTrie) taken from this trie before the snapshot keep showing the snapshot state.
+     * @return a read-only trie holding the current entries of this trie
+     */
+    public TrieMap<T> snapshot(){
+        // from now on, the current nodes belong to the snapshot
+        epoch++;
+        return new TrieMap<>(root,true);
+    }
+    
+    /**
+     * Compiles this trie into a read-only succinct map (see LoudsTrieMap), in O(number of nodes): about 2.5 bytes per node instead of
+     * the node objects, for tries built once and queried all day. The compiled map does not see the later changes of this trie.
+     * Freeze a snapshot() if this trie may be modified by another thread meanwhile.
+     * @return a read-only map having the entries of this trie
+     */
+    public LoudsTrieMap<T> freeze(){
+        return LoudsTrieMap.of(this);
+    }
+    
+    /**
+     * Starts counting the operations of this trie (gets and hits, puts, removes, prefix queries and the number of their matches) and
+     * timing one operation in TrieMetrics.DEFAULT_SAMPLING_PERIOD. Enable them before handing the trie to other threads.
+     * Sub-tries and snapshots have no metrics.
+     * @return the metrics of this trie, to be read or registered over JMX
+     */
+    public TrieMetrics enableMetrics(){
+        return enableMetrics(TrieMetrics.DEFAULT_SAMPLING_PERIOD);
+    }
+    
+    /**
+     * Same as enableMetrics(), timing one operation in samplingPeriod
+     * @param samplingPeriod a power of 2, 1 to time all the operations
+     * @return the metrics of this trie, the current ones if already enabled
+     */
+    public TrieMetrics enableMetrics(int samplingPeriod){
+        if(metrics==null)
+            metrics = new TrieMetrics(samplingPeriod);
+        return metrics;
+    }
+    
+    /**
+     * Stops counting the operations of this trie. The metrics are not unregistered from JMX.
+     */
+    public void disableMetrics(){
+        metrics = null;
+    }
+    
+    /**
+     * @return the metrics of this trie, null if they are not enabled
+     */
+    public TrieMetrics getMetrics(){
+        return metrics;
+    }
+    
+    /**
+     * Computes the shape of this trie (number of nodes and leaves, depths, containers of the children and their estimated bytes),
+     * walking all its nodes, and publishes it to the metrics of this trie if enabled.
+     * The walk must not run while another thread writes the trie: call it from the thread writing the trie.
+     * @return the statistics of this trie
+     */
+    public TrieStatistics getStatistics(){
+        TrieStatistics statistics = TrieStatistics.of(root);
+        TrieMetrics metrics = this.metrics;
+        if(metrics!=null)
+            metrics.publish(statistics);
+        return statistics;
+    }
+    
+    /**
+     * @return the root, replaced by a copy first if it is shared with a snapshot
+     */
+    private TrieNode<T> writableRoot(){
+        if(root.getEpoch()!=epoch)
+            root = root.copy(epoch);
+        return root;
+    }
+    
     /**
      * Retrieves an iterator which iterates through all the entries in the TrieMap
      */
@@ -154,16 +473,19 @@ public class TrieMap<T> implements Iterable<TrieNode<T>>,Map<String,T>{
     
     /**
      * Retrieves an iterator which iterates through all the keys in the TrieMap
-     * @return Iterator which iterates on the keyset of this TrieMap in DFS order.
+     * @return Iterator which iterates on the keyset of this TrieMap in DFS order (lexicographic order for the TreeMap and compact arrays storage modes).
     */
     public Iterator<String> getKeySetIterator(){
         return root.getKeysIterator();
     }
 
 
+    /**
+     * @return the number of entries, which is counted by the root node. O(1)
+     */
     @Override
     public int size() {
-        return keySet().size();
+        return root.size();
     }
 
     @Override
@@ -173,19 +495,41 @@ public class TrieMap<T> implements Iterable<TrieNode<T>>,Map<String,T>{
     
     @Override
     public boolean containsKey(Object key) {
-        if(key instanceof String==false)
-            return false;
-        return keySet.contains((String)key);
+        return get(key)!=null;
+    }
+    
+    /**
+     * Checks whether a key given as a slice of a char sequence (ex: a part of a buffer) exists, walking the trie without copying the key.
+     * @param key a char sequence containing the key
+     * @param start the index of the first char of the key
+     * @param end the index after the last char of the key
+     * @return true if the key exists in this trie
+     */
+    public boolean containsKey(CharSequence key, int start, int end){
+        return get(key, start, end)!=null;
     }
 
+    /**
+     * Looks for a value equal to the passed one, in the calling thread. No key is built.
+     */
     @Override
     public boolean containsValue(Object value) {
-        Iterator<TrieNode<T>> it = this.iterator();
-        while(it.hasNext()){
-            if(it.next().getValue()==value)
-                return true;
-        }
-        return false;
+        if(value==null)
+            return false;
+        return StreamSupport.stream(new TrieSpliterator.Values<>(root), false).anyMatch(value::equals);
+    }
+
+    /**
+     * Same as containsValue, the sub-tries of the tries of at least PARALLEL_THRESHOLD entries being scanned by a parallel stream
+     * in the common pool. The trie must not be modified during the scan.
+     * @param value the value to look for
+     * @return true if a key of this trie is mapped to the value
+     */
+    public boolean containsValueParallel(Object value) {
+        if(value==null)
+            return false;
+        Stream<T> values = StreamSupport.stream(new TrieSpliterator.Values<>(root), root.size()>=PARALLEL_THRESHOLD);
+        return values.anyMatch(value::equals);
     }
 
 
@@ -196,23 +540,146 @@ public class TrieMap<T> implements Iterable<TrieNode<T>>,Map<String,T>{
      * @return a set of Strings containing all keys starting with the specified prefix
      */
     public LinkedList<String> getKeysStartingWith(String prefix){
-        TrieMap<T> trie = getSubTrie(prefix);
-        if(trie==null)
-            return new LinkedList();
-        Set<String> suffixes=trie.keySet();
-        
         LinkedList<String> list = new LinkedList<String>();
         
-        for(String suffix:suffixes)
-            list.add(prefix+suffix);
+        Iterator<String> it = getKeysStartingWithIterator(prefix);
+        while(it.hasNext())
+            list.add(it.next());
         return list;
         
     }
+    
+    /**
+     * Retrieves a lazy iterator through the keys starting with the specified prefix, in DFS order (lexicographic order for the TreeMap and compact arrays storage modes).
+     * Only the node of the prefix is looked up when calling this method, the keys are found and built one by one while iterating,
+     * so stopping after a few keys costs nothing like the number of keys under the prefix.
+     * @param prefix
+     * @return an iterator through the keys starting with the specified prefix (empty if no key starts with it)
+     */
+    public Iterator<String> getKeysStartingWithIterator(String prefix){
+        TrieNode<T> node = findPrefix(prefix);
+        if(node==null)
+            return Collections.emptyIterator();
+        return node.getKeysIterator(prefix);
+    }
+    
+    /**
+     * Retrieves a lazy stream of the keys starting with the specified prefix, in DFS order (lexicographic order for the TreeMap and compact arrays storage modes).
+     * Keys are produced on demand, so operations like limit(10) stop the traversal early. Ex (autocompletion):
+     * trie.keysStartingWith("do").limit(10).collect(Collectors.toList())
+     * @param prefix
+     * @return a sequential stream of the keys starting with the specified prefix
+     */
+    public Stream<String> keysStartingWith(String prefix){
+        TrieNode<T> node = findPrefix(prefix);
+        if(node==null)
+            return Stream.empty();
+        int characteristics = Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.ORDERED;
+        if(childStorageMode==CHILD_STORAGE_MODE_USING_TREEMAP || childStorageMode==CHILD_STORAGE_MODE_USING_ARRAYS)
+            characteristics |= Spliterator.SORTED;
+        Spliterator<String> spliterator = Spliterators.spliterator(node.getKeysIterator(prefix), node.size(), characteristics);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * @return the node of a prefix, null if no key starts with it, counted as a prefix query by the metrics
+     */
+    private TrieNode<T> findPrefix(String prefix){
+        TrieMetrics metrics = this.metrics;
+        if(metrics==null)
+            return root.getNode(prefix);
+        long start = metrics.start();
+        TrieNode<T> node = root.getNode(prefix);
+        metrics.recordPrefixQuery(start, node==null ? 0 : node.size());
+        return node;
+    }
+
+    /**
+     * Retrieves a lazy stream of the keys within an edit distance of the query (Levenshtein distance: insertions, deletions and
+     * substitutions of single chars), in DFS order. Ex ("did you mean"): trie.fuzzySearch("helo", 1).limit(5)
+     * The trie is walked once, keeping a row of the edit distances per level of the path, and a sub-trie is skipped as soon as
+     * no key in it can be within maxEdits of the query, so the cost depends on the keys close to the query, not on the size of the trie.
+     * @param query the query
+     * @param maxEdits the maximum edit distance
+     * @return a sequential stream of the keys within maxEdits of the query
+     */
+    public Stream<String> fuzzySearch(String query, int maxEdits){
+        return fuzzySearch(query, maxEdits, false);
+    }
+
+    /**
+     * Same as fuzzySearch(query, maxEdits), the keys sorted by edit distance: the exact match first, then the keys one edit away, and so on.
+     * The stream stays lazy: the trie is walked once per distance, only when the keys of the previous distances were consumed.
+     * @param query the query
+     * @param maxEdits the maximum edit distance
+     * @return a sequential stream of the keys within maxEdits of the query, the closest first
+     */
+    public Stream<String> fuzzySearchRanked(String query, int maxEdits){
+        return fuzzySearch(query, maxEdits, true);
+    }
+
+    private Stream<String> fuzzySearch(String query, int maxEdits, boolean ranked){
+        if(maxEdits<0)
+            throw new IllegalArgumentException("maxEdits must not be negative: "+maxEdits);
+        Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(root.newFuzzyIterator(query, maxEdits, ranked),
+                Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Retrieves the keys matching a pattern (see TriePattern.glob and TriePattern.regex), in DFS order. Ex: getKeysMatching(TriePattern.glob("ab?d*"))
+     * @param pattern the pattern, matched against whole keys
+     * @return a list containing the matching keys
+     */
+    public LinkedList<String> getKeysMatching(TriePattern pattern){
+        LinkedList<String> list = new LinkedList<>();
+        Iterator<String> it = root.newPatternIterator("", pattern);
+        while(it.hasNext())
+            list.add(it.next());
+        return list;
+    }
+
+    /**
+     * Retrieves a lazy stream of the keys matching a pattern, in DFS order (lexicographic order for the TreeMap and compact arrays storage modes).
+     * The automaton of the pattern is run along the paths of the trie, so only the sub-tries which can hold matching keys are visited:
+     * a pattern with a fixed prefix (ex: "user_??_*") never touches the keys out of this prefix.
+     * @param pattern the pattern, matched against whole keys
+     * @return a sequential stream of the matching keys
+     */
+    public Stream<String> keysMatching(TriePattern pattern){
+        Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(root.newPatternIterator("", pattern),
+                Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Retrieves a stream of the entries of this trie, in the order of getKeySetIterator. Its spliterator splits at child boundaries,
+     * knowing the exact number of entries of each part from the sizes of the sub-tries, so entryStream().parallel() spreads the
+     * sub-tries over the threads evenly. Map.Entry.setValue puts the value in the trie, so it must not be called from a parallel stream.
+     * @return a sequential stream of the entries
+     */
+    public Stream<Map.Entry<String,T>> entryStream(){
+        return StreamSupport.stream(new TrieSpliterator.Entries<>(root, "", this::put), false);
+    }
+
+    /**
+     * Calls the consumer for each entry whose key starts with the prefix, spreading the sub-tries under the prefix over the threads
+     * of the common ForkJoinPool. The consumer is called concurrently, in no particular order, and must not modify the trie.
+     * @param prefix the prefix
+     * @param consumer called with the key and the value of each entry, from several threads
+     */
+    public void forEachParallel(String prefix, BiConsumer<String,? super T> consumer){
+        TrieNode<T> node = root.getNode(prefix);
+        if(node==null)
+            return;
+        StreamSupport.stream(new TrieSpliterator.Entries<>(node, prefix, this::put), true)
+                .forEach(entry -> consumer.accept(entry.getKey(), entry.getValue()));
+    }
 
     @Override
     public void putAll(Map<? extends String, ? extends T> m) {
-        for( Map.Entry entry : m.entrySet()){
-            this.put((String)entry.getKey(), (T)entry.getValue());
+        for( Map.Entry<? extends String, ? extends T> entry : m.entrySet()){
+            this.put(entry.getKey(), entry.getValue());
         }
     }
 
@@ -220,37 +687,466 @@ public class TrieMap<T> implements Iterable<TrieNode<T>>,Map<String,T>{
     public void clear() {
         if(readOnly)
             throw new RuntimeException("Can not make modifications to read-only trie-view");
-        this.root = new TrieNode('0',null,this.childStorageMode,null);
-        this.keySet=new HashSet<>();
+        this.root = newRoot(this.childStorageMode);
     }
 
+    /**
+     * @return a view of the keys of this trie, in lexicographic order. It is backed by the trie (no copy of the keys is kept), so changes to the trie are reflected in it.
+     * Removing a key from it removes the entry from the trie.
+     */
     @Override
     public Set<String> keySet() {
-        return this.keySet;
+        return new KeySet();
     }
 
+    /**
+     * @return a view of the values of this trie, in lexicographic key order. It is backed by the trie, and removing a value
+     * from its iterator removes the entry from the trie. Its streams do not build the keys, and split like entryStream.
+     */
     @Override
     public Collection<T> values() {
-        ArrayList<T> values = new ArrayList<>();
-        Iterator<TrieNode<T>> it = this.iterator();
-        while(it.hasNext()){
-            values.add(it.next().getValue());
-        }
-        return values;
+        return new AbstractCollection<T>(){
+            @Override
+            public Iterator<T> iterator() {
+                final Iterator<Map.Entry<String,T>> it = entrySet().iterator();
+                return new Iterator<T>(){
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public T next() {
+                        return it.next().getValue();
+                    }
+
+                    @Override
+                    public void remove() {
+                        it.remove();
+                    }
+                };
+            }
+
+            @Override
+            public Spliterator<T> spliterator() {
+                return new TrieSpliterator.Values<>(root);
+            }
+
+            @Override
+            public int size() {
+                return TrieMap.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsValue(o);
+            }
+        };
     }
 
+    /**
+     * @return a view of the entries of this trie, in lexicographic key order. It is backed by the trie (no entry is kept), and the keys are
+     * built while iterating. Map.Entry.setValue puts the value in the trie, and removing an entry removes it from the trie.
+     */
     @Override
     public Set<Map.Entry<String,T>> entrySet() {
-        Set< Map.Entry<String,T> > set = new HashSet();
+        return new AbstractSet<Map.Entry<String,T>>(){
+            @Override
+            public Iterator<Map.Entry<String,T>> iterator() {
+                return new EntryIterator(root.newEntriesIterator("", TrieMap.this::put));
+            }
+
+            @Override
+            public Spliterator<Map.Entry<String,T>> spliterator() {
+                return new TrieSpliterator.Entries<>(root, "", TrieMap.this::put);
+            }
+
+            @Override
+            public int size() {
+                return TrieMap.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if(o instanceof Map.Entry==false)
+                    return false;
+                Map.Entry<?,?> entry = (Map.Entry<?,?>)o;
+                T value = get(entry.getKey());
+                return value!=null && value.equals(entry.getValue());
+            }
+        };
+    }
+    
+    /**
+     * Iterates through the entries in lexicographic key order, removing them from the trie
+     */
+    class EntryIterator implements Iterator<Map.Entry<String,T>>{
+        
+        private final TrieNode<T>.EntriesIterator it;
+        private Map.Entry<String,T> last;
+
+        EntryIterator(TrieNode<T>.EntriesIterator it){
+            this.it = it;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String,T> next() {
+            last = it.next();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if(last==null)
+                throw new IllegalStateException();
+            remove(last.getKey());
+            last = null;
+        }
         
-        Iterator<TrieNode<T>> it = this.root.iterator();
-        int cnt=0;
-        while(it.hasNext()){
-            cnt++;
-            TrieNode<T> node = it.next();
-            set.add(new TrieMap.Entry(node.getKey(),node.getValue()));
+        /**
+         * Removes a key lower than the next key of this iterator, going on after the last key returned
+         */
+        void remove(String key){
+            TrieMap.this.remove(key);
+            it.removed();
+        }
+    }
+    
+    /**
+     * A live view of the keys of the trie, in lexicographic order
+     */
+    private class KeySet extends AbstractSet<String>{
+
+        @Override
+        public Iterator<String> iterator() {
+            final TrieNode<T>.KeysIterator it = root.newKeysIterator("");
+            return new Iterator<String>(){
+                private String last;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    last = it.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if(last==null)
+                        throw new IllegalStateException();
+                    TrieMap.this.remove(last);
+                    it.removed();
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return TrieMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return TrieMap.this.remove(o)!=null;
+        }
+
+        @Override
+        public void clear() {
+            TrieMap.this.clear();
+        }
+    }
+
+    /**
+     * Compares the entries of this trie with the entries of a map, as specified by Map.equals: any map holding the same mappings is
+     * equal to this trie, whatever its class is.
+     * @param o the object to compare with this trie
+     * @return true if o is a map holding the same mappings as this trie
+     */
+    @Override
+    public boolean equals(Object o){
+        if(o==this)
+            return true;
+        if(o instanceof Map==false)
+            return false;
+        Map<?,?> m = (Map<?,?>) o;
+        if(m.size()!=size())
+            return false;
+        try{
+            for(Map.Entry<String,T> entry : entrySet()){
+                if(!entry.getValue().equals(m.get(entry.getKey())))
+                    return false;
+            }
+        }catch(ClassCastException | NullPointerException e){
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the sum of the hash codes of the entries, as specified by Map.hashCode
+     */
+    @Override
+    public int hashCode(){
+        int hash = 0;
+        for(Map.Entry<String,T> entry : entrySet())
+            hash += entry.getKey().hashCode() ^ entry.getValue().hashCode();
+        return hash;
+    }
+    
+    //================================NAVIGATION================================
+    
+    /**
+     * Counts the keys lower than a key, in O(key length * children per node): the keys lower than the key are, along its path, the
+     * nodes of its proper prefixes holding a value and the sub-tries of the children of lower chars, whose sizes are known.
+     * @param key the key, which may be absent from the trie
+     * @return the number of keys lower than the key: the index of the key in the key set if it exists, else the index it would have
+     */
+    public int rank(String key){
+        return rank(key, false);
+    }
+    
+    /**
+     * @param inclusive true to count the key itself if it exists
+     * @return the number of keys lower than the key (or equal to it if inclusive)
+     */
+    int rank(String key, boolean inclusive){
+        TrieNode<T> node = root;
+        int rank = 0;
+        for(int i=0;i<key.length();i++){
+            char c = key.charAt(i);
+            if(node.getValue()!=null)
+                rank++;
+            rank += node.sizeBelow(c);
+            node = node.findChild(c);
+            if(node==null)
+                return rank;
+        }
+        return inclusive && node.getValue()!=null ? rank+1 : rank;
+    }
+    
+    /**
+     * Finds the key of an index in the key set, in O(key length * children per node), going down the children whose sub-tries contain the index
+     * (so a page of keys at any offset is reached without iterating through the keys before it).
+     * @param index the index of the key, in lexicographic order
+     * @return the key
+     * @throws IndexOutOfBoundsException if the index is not in [0, size())
+     */
+    public String select(int index){
+        StringBuilder key = new StringBuilder();
+        selectNode(index, key);
+        return key.toString();
+    }
+    
+    /**
+     * @return an immutable entry holding the key and the value of the index
+     */
+    Map.Entry<String,T> entryAt(int index){
+        StringBuilder key = new StringBuilder();
+        TrieNode<T> node = selectNode(index, key);
+        return new AbstractMap.SimpleImmutableEntry<>(key.toString(), node.getValue());
+    }
+    
+    private TrieNode<T> selectNode(int index, StringBuilder key){
+        if(index<0 || index>=size())
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+        TrieNode<T> node = root;
+        while(true){
+            if(node.getValue()!=null){
+                if(index==0)
+                    return node;
+                index--;
+            }
+            Iterator<TrieNode<T>> it = node.getSortedChildsIterator();
+            TrieNode<T> child = it.next();
+            while(index>=child.size()){
+                index -= child.size();
+                child = it.next();
+            }
+            key.append(child.getChar());
+            node = child;
         }
-        return set;
+    }
+    
+    /**
+     * @return an iterator through the entries from a key in lexicographic order, removing them from the trie. Seeking the key costs O(key length).
+     */
+    EntryIterator entryIterator(String from, boolean inclusive){
+        TrieNode<T>.EntriesIterator it = root.newEntriesIterator("", this::put);
+        it.seek(from, inclusive);
+        return new EntryIterator(it);
+    }
+    
+    /**
+     * @return null: the keys are in natural order
+     */
+    @Override
+    public Comparator<? super String> comparator() {
+        return null;
+    }
+
+    @Override
+    public String firstKey() {
+        if(isEmpty())
+            throw new NoSuchElementException();
+        return select(0);
+    }
+
+    @Override
+    public String lastKey() {
+        if(isEmpty())
+            throw new NoSuchElementException();
+        return select(size()-1);
+    }
+
+    @Override
+    public Map.Entry<String,T> firstEntry() {
+        return isEmpty() ? null : entryAt(0);
+    }
+
+    @Override
+    public Map.Entry<String,T> lastEntry() {
+        return isEmpty() ? null : entryAt(size()-1);
+    }
+
+    @Override
+    public Map.Entry<String,T> pollFirstEntry() {
+        Map.Entry<String,T> entry = firstEntry();
+        if(entry!=null)
+            remove(entry.getKey());
+        return entry;
+    }
+
+    @Override
+    public Map.Entry<String,T> pollLastEntry() {
+        Map.Entry<String,T> entry = lastEntry();
+        if(entry!=null)
+            remove(entry.getKey());
+        return entry;
+    }
+
+    @Override
+    public Map.Entry<String,T> lowerEntry(String key) {
+        int index = rank(key, false)-1;
+        return index>=0 ? entryAt(index) : null;
+    }
+
+    @Override
+    public String lowerKey(String key) {
+        int index = rank(key, false)-1;
+        return index>=0 ? select(index) : null;
+    }
+
+    @Override
+    public Map.Entry<String,T> floorEntry(String key) {
+        int index = rank(key, true)-1;
+        return index>=0 ? entryAt(index) : null;
+    }
+
+    @Override
+    public String floorKey(String key) {
+        int index = rank(key, true)-1;
+        return index>=0 ? select(index) : null;
+    }
+
+    @Override
+    public Map.Entry<String,T> ceilingEntry(String key) {
+        int index = rank(key, false);
+        return index<size() ? entryAt(index) : null;
+    }
+
+    @Override
+    public String ceilingKey(String key) {
+        int index = rank(key, false);
+        return index<size() ? select(index) : null;
+    }
+
+    @Override
+    public Map.Entry<String,T> higherEntry(String key) {
+        int index = rank(key, true);
+        return index<size() ? entryAt(index) : null;
+    }
+
+    @Override
+    public String higherKey(String key) {
+        int index = rank(key, true);
+        return index<size() ? select(index) : null;
+    }
+
+    /**
+     * @return a view of the keys of this trie, in lexicographic order, with the navigation methods of NavigableSet
+     */
+    @Override
+    public NavigableSet<String> navigableKeySet() {
+        return new TrieSubMap.KeySetView(this);
+    }
+
+    @Override
+    public NavigableSet<String> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    /**
+     * @return a view of this trie in reverse key order. Its iterators find each entry by its index (see select).
+     */
+    @Override
+    public NavigableMap<String,T> descendingMap() {
+        return new TrieSubMap<>(this, null, true, null, true, true);
+    }
+
+    /**
+     * Gets a view of the entries whose keys are in a range. Its iterators seek the lower key and then walk the trie, and its size
+     * is computed from the ranks of the bounds, so listing a page of keys costs O(page size) after O(key length).
+     */
+    @Override
+    public NavigableMap<String,T> subMap(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+        if(fromKey.compareTo(toKey)>0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        return new TrieSubMap<>(this, fromKey, fromInclusive, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<String,T> headMap(String toKey, boolean inclusive) {
+        return new TrieSubMap<>(this, null, true, Objects.requireNonNull(toKey), inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<String,T> tailMap(String fromKey, boolean inclusive) {
+        return new TrieSubMap<>(this, Objects.requireNonNull(fromKey), inclusive, null, true, false);
+    }
+
+    @Override
+    public SortedMap<String,T> subMap(String fromKey, String toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<String,T> headMap(String toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<String,T> tailMap(String fromKey) {
+        return tailMap(fromKey, true);
+    }
+    
+    static void checkRange(CharSequence key, int start, int end){
+        if(start<0 || end>key.length() || start>end)
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + key.length());
     }
     
     public class Entry<T> implements Map.Entry<String, T>{
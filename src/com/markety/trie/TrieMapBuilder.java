@@ -0,0 +1,268 @@
+package com.markety.trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Builds a TrieMap from keys given in increasing order, in a single pass and bottom-up.
+ * Only the path of the previous key is kept open: a new key reuses the prefix it shares with the previous one, and the nodes below
+ * this prefix are complete, so they are frozen at once. A frozen node gets all its children in one go, in the most compact form of
+ * the storage mode (exactly sized arrays or a dense table, or a map created for its number of children), and its sub-trie size.
+ * So building costs O(total length of the keys), with no lookup from the root, no resizing and no intermediate garbage.
+ * <pre>
+ * TrieMap&lt;Integer&gt; trie = new TrieMapBuilder&lt;Integer&gt;().add("car", 1).add("cart", 2).add("cat", 3).build();
+ * </pre>
+ * buildParallel builds the sub-tries of the first chars of the keys in a ForkJoinPool.
+ * @param <T> Class type of the value to be stored in the trie
+ */
+public class TrieMapBuilder<T> {
+
+    private final byte childsStorageMode;
+    /**
+     * the number of chars of the keys above the root (1 for the sub-tries of buildParallel)
+     */
+    private final int offset;
+    private final char rootChar;
+    private final TrieNode<T> rootParent;
+    private final boolean parentPointers;
+
+    private TrieNode<T> root;
+    private String previous;
+    /**
+     * the open nodes: the path of the previous key, the root at depth 0
+     */
+    private TrieNode<T>[] path;
+    /**
+     * the frozen children of each open node, and the number of entries in them
+     */
+    private char[][] childChars;
+    private TrieNode<T>[][] childNodes;
+    private int[] childCounts;
+    private int[] sizes;
+    private int depth;
+    private boolean built;
+
+    /**
+     * Builds a builder of tries storing the children in compact arrays (the smallest footprint)
+     */
+    public TrieMapBuilder() {
+        this(TrieMap.CHILD_STORAGE_MODE_USING_ARRAYS);
+    }
+
+    /**
+     * @param childsStorageMode the storage mode of the children of the nodes of the built trie
+     */
+    public TrieMapBuilder(byte childsStorageMode) {
+        this(childsStorageMode, true);
+    }
+
+    /**
+     * @param childsStorageMode the storage mode of the children of the nodes of the built trie
+     * @param parentPointers false to build nodes without a pointer to their parent (see TrieMap(byte, boolean))
+     */
+    public TrieMapBuilder(byte childsStorageMode, boolean parentPointers) {
+        this(childsStorageMode, parentPointers, 0, '0', null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TrieMapBuilder(byte childsStorageMode, boolean parentPointers, int offset, char rootChar, TrieNode<T> rootParent) {
+        this.childsStorageMode = childsStorageMode;
+        this.parentPointers = parentPointers;
+        this.offset = offset;
+        this.rootChar = rootChar;
+        this.rootParent = rootParent;
+        this.path = TrieNode.newNodeArray(16);
+        this.childChars = new char[16][];
+        this.childNodes = (TrieNode<T>[][]) new TrieNode<?>[16][];
+        this.childCounts = new int[16];
+        this.sizes = new int[16];
+    }
+
+    /**
+     * Adds an entry. Keys must be added in strictly increasing order (String.compareTo).
+     * @param key the key
+     * @param value the value, not null
+     * @return this builder
+     * @throws IllegalArgumentException if the key is not greater than the previous one
+     */
+    public TrieMapBuilder<T> add(String key, T value) {
+        if (built)
+            throw new IllegalStateException("The trie was already built");
+        if (value == null)
+            throw new NullPointerException("TrieMap does not support null values");
+
+        int common = offset;
+        if (previous != null) {
+            if (key.compareTo(previous) <= 0)
+                throw new IllegalArgumentException("Keys must be added in strictly increasing order: \"" + key + "\" after \"" + previous + "\"");
+            int max = Math.min(key.length(), previous.length());
+            while (common < max && key.charAt(common) == previous.charAt(common))
+                common++;
+        }
+        if (root == null)
+            path[0] = root = newNode(rootChar, key.length() == offset ? value : null, rootParent);
+
+        // the nodes below the common prefix are complete
+        while (depth > common - offset)
+            freeze(depth--);
+        for (int i = common; i < key.length(); i++) {
+            TrieNode<T> node = newNode(key.charAt(i), i == key.length() - 1 ? value : null, path[depth]);
+            push(node);
+        }
+        previous = key;
+        return this;
+    }
+
+    /**
+     * Adds entries. Keys must be given in strictly increasing order, and be greater than the keys already added.
+     * @param sortedEntries the entries, sorted by key
+     * @return this builder
+     */
+    public TrieMapBuilder<T> addAll(Iterator<? extends Map.Entry<String, ? extends T>> sortedEntries) {
+        while (sortedEntries.hasNext()) {
+            Map.Entry<String, ? extends T> entry = sortedEntries.next();
+            add(entry.getKey(), entry.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Freezes the open nodes and returns the trie. The builder can not be used anymore.
+     * @return the built trie
+     */
+    public TrieMap<T> build() {
+        return new TrieMap<>(finish(), false);
+    }
+
+    /**
+     * Builds a trie from sorted entries, building the sub-tries of the first chars of the keys in parallel.
+     * @param childsStorageMode the storage mode of the children of the nodes of the built trie
+     * @param sortedEntries the entries, sorted by key (in strictly increasing order)
+     * @param pool the pool building the sub-tries
+     * @return the built trie
+     * @throws IllegalArgumentException if the keys are not in strictly increasing order
+     */
+    public static <T> TrieMap<T> buildParallel(byte childsStorageMode, List<? extends Map.Entry<String, ? extends T>> sortedEntries, ForkJoinPool pool) {
+        return buildParallel(childsStorageMode, true, sortedEntries, pool);
+    }
+
+    /**
+     * Same as buildParallel(childsStorageMode, sortedEntries, pool), choosing whether the nodes keep a pointer to their parent
+     * @param childsStorageMode the storage mode of the children of the nodes of the built trie
+     * @param parentPointers false to build nodes without a pointer to their parent (see TrieMap(byte, boolean))
+     * @param sortedEntries the entries, sorted by key (in strictly increasing order)
+     * @param pool the pool building the sub-tries
+     * @return the built trie
+     * @throws IllegalArgumentException if the keys are not in strictly increasing order
+     */
+    public static <T> TrieMap<T> buildParallel(byte childsStorageMode, boolean parentPointers, List<? extends Map.Entry<String, ? extends T>> sortedEntries,
+            ForkJoinPool pool) {
+        int count = sortedEntries.size();
+        int start = 0;
+        T rootValue = null;
+        if (count > 0 && sortedEntries.get(0).getKey().isEmpty()) {
+            rootValue = sortedEntries.get(0).getValue();
+            if (rootValue == null)
+                throw new NullPointerException("TrieMap does not support null values");
+            start = 1;
+        }
+        TrieNode<T> root = parentPointers ? new ParentedTrieNode<>('0', rootValue, childsStorageMode, null)
+                : new TrieNode<>('0', rootValue, childsStorageMode);
+
+        // one task per first char, each building a sub-trie of the root
+        List<ForkJoinTask<TrieNode<T>>> tasks = new ArrayList<>();
+        char[] chars = new char[16];
+        while (start < count) {
+            String key = sortedEntries.get(start).getKey();
+            if (key.isEmpty() || (!tasks.isEmpty() && key.charAt(0) <= chars[tasks.size() - 1]))
+                throw new IllegalArgumentException("Keys must be given in strictly increasing order: \"" + key + "\"");
+            char first = key.charAt(0);
+            int end = start + 1;
+            while (end < count && sortedEntries.get(end).getKey().charAt(0) == first)
+                end++;
+            List<? extends Map.Entry<String, ? extends T>> range = sortedEntries.subList(start, end);
+            if (tasks.size() == chars.length)
+                chars = Arrays.copyOf(chars, chars.length * 2);
+            chars[tasks.size()] = first;
+            tasks.add(pool.submit(() -> new TrieMapBuilder<T>(childsStorageMode, parentPointers, 1, first, root).addAll(range.iterator()).finish()));
+            start = end;
+        }
+
+        TrieNode<T>[] nodes = TrieNode.newNodeArray(tasks.size());
+        int size = rootValue != null ? 1 : 0;
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = tasks.get(i).join();
+            size += nodes[i].size();
+        }
+        root.setChilds(chars, nodes, nodes.length, size);
+        return new TrieMap<>(root, false);
+    }
+
+    /**
+     * Freezes the open nodes
+     * @return the root
+     */
+    private TrieNode<T> finish() {
+        if (built)
+            throw new IllegalStateException("The trie was already built");
+        built = true;
+        if (root == null)
+            root = newNode(rootChar, null, rootParent);
+        while (depth >= 0)
+            freeze(depth--);
+        return root;
+    }
+
+    private TrieNode<T> newNode(char key, T value, TrieNode<T> parent) {
+        if (parentPointers)
+            return new ParentedTrieNode<>(key, value, childsStorageMode, (ParentedTrieNode<T>) parent);
+        return new TrieNode<>(key, value, childsStorageMode);
+    }
+
+    private void push(TrieNode<T> node) {
+        if (++depth == path.length) {
+            int length = depth * 2;
+            path = Arrays.copyOf(path, length);
+            childChars = Arrays.copyOf(childChars, length);
+            childNodes = Arrays.copyOf(childNodes, length);
+            childCounts = Arrays.copyOf(childCounts, length);
+            sizes = Arrays.copyOf(sizes, length);
+        }
+        path[depth] = node;
+    }
+
+    /**
+     * Gives its children to the open node at the depth, and adds it to the children of its parent
+     */
+    private void freeze(int level) {
+        TrieNode<T> node = level == 0 ? root : path[level];
+        int count = childCounts[level];
+        node.setChilds(childChars[level], childNodes[level], count, sizes[level] + (node.getValue() != null ? 1 : 0));
+        if (count > 0)
+            Arrays.fill(childNodes[level], 0, count, null);
+        childCounts[level] = 0;
+        sizes[level] = 0;
+        path[level] = null;
+        if (level == 0)
+            return;
+
+        int parent = level - 1;
+        int index = childCounts[parent];
+        if (childChars[parent] == null) {
+            childChars[parent] = new char[4];
+            childNodes[parent] = TrieNode.newNodeArray(4);
+        } else if (index == childChars[parent].length) {
+            childChars[parent] = Arrays.copyOf(childChars[parent], index * 2);
+            childNodes[parent] = Arrays.copyOf(childNodes[parent], index * 2);
+        }
+        childChars[parent][index] = node.getChar();
+        childNodes[parent][index] = node;
+        childCounts[parent] = index + 1;
+        sizes[parent] += node.size();
+    }
+}
@@ -0,0 +1,19 @@
+package com.markety.trie;
+
+/**
+ * Receives the keys of a trie found in a text (TrieMap.prefixesOf, AhoCorasick.scan), one call per match, so that finding them
+ * allocates nothing.
+ * @param <T> Class type of the values
+ */
+@FunctionalInterface
+public interface TrieMatchHandler<T> {
+
+    /**
+     * Called for each match
+     * @param start the offset of the first char of the match in the text
+     * @param end the offset after the last char of the match
+     * @param value the value of the matched key
+     * @return true to go on, false to stop the search
+     */
+    boolean onMatch(long start, long end, T value);
+}
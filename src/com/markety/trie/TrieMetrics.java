@@ -0,0 +1,337 @@
+package com.markety.trie;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The operation counters and latencies of a TrieMap, enabled by TrieMap.enableMetrics.
+ * A trie without metrics only checks that its metrics field is null in its operations. With metrics, each operation increments
+ * striped counters (LongAdder, so the threads reading a trie do not contend on them), and one operation in samplingPeriod (chosen
+ * at random) is timed: its latency goes to a histogram of power of 2 ranges of nanoseconds.
+ * The shape of the trie (TrieStatistics) is computed by a walk, which can not be made while another thread writes the trie: it is
+ * published here by TrieMap.getStatistics, which the owner of the trie calls when convenient (ex: periodically from the writer).
+ * <pre>
+ * TrieMetrics metrics = trie.enableMetrics();
+ * metrics.register("autocomplete");   // com.markety.trie:type=TrieMap,name="autocomplete"
+ * </pre>
+ */
+public class TrieMetrics implements TrieMetricsMXBean {
+
+    /**
+     * one operation in 16 is timed by default
+     */
+    public static final int DEFAULT_SAMPLING_PERIOD = 16;
+    /**
+     * the start time of an operation which is not timed
+     */
+    static final long NOT_SAMPLED = Long.MIN_VALUE;
+    private static final String[] OPERATIONS = {"get", "put", "remove", "prefix"};
+    private static final int GET = 0;
+    private static final int PUT = 1;
+    private static final int REMOVE = 2;
+    private static final int PREFIX = 3;
+
+    private final int samplingMask;
+    private final LongAdder gets = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder removes = new LongAdder();
+    private final LongAdder prefixQueries = new LongAdder();
+    private final LongAdder prefixMatches = new LongAdder();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private volatile TrieStatistics statistics;
+    private ObjectName name;
+
+    /**
+     * @param samplingPeriod one operation in samplingPeriod is timed, a power of 2 (1 to time all of them)
+     */
+    TrieMetrics(int samplingPeriod) {
+        if (samplingPeriod <= 0 || Integer.bitCount(samplingPeriod) != 1)
+            throw new IllegalArgumentException("The sampling period must be a power of 2: " + samplingPeriod);
+        this.samplingMask = samplingPeriod - 1;
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = new LatencyHistogram();
+    }
+
+    //================================RECORDING=================================
+
+    /**
+     * @return the start time of an operation if it is timed, NOT_SAMPLED otherwise
+     */
+    long start() {
+        if (samplingMask != 0 && (ThreadLocalRandom.current().nextInt() & samplingMask) != 0)
+            return NOT_SAMPLED;
+        return System.nanoTime();
+    }
+
+    void recordGet(long start, boolean hit) {
+        gets.increment();
+        if (hit)
+            hits.increment();
+        record(GET, start);
+    }
+
+    void recordPut(long start, boolean inserted) {
+        puts.increment();
+        if (inserted)
+            inserts.increment();
+        record(PUT, start);
+    }
+
+    void recordRemove(long start, boolean removed) {
+        if (removed)
+            removes.increment();
+        record(REMOVE, start);
+    }
+
+    /**
+     * @param matches the number of keys starting with the prefix
+     */
+    void recordPrefixQuery(long start, int matches) {
+        prefixQueries.increment();
+        prefixMatches.add(matches);
+        record(PREFIX, start);
+    }
+
+    private void record(int operation, long start) {
+        if (start != NOT_SAMPLED)
+            latencies[operation].record(System.nanoTime() - start);
+    }
+
+    void publish(TrieStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    //================================JMX=======================================
+
+    /**
+     * Registers these metrics in the platform MBean server
+     * @param name the name of the trie, quoted in the object name
+     * @return the object name: com.markety.trie:type=TrieMap,name="name"
+     * @throws JMException if the name is taken or the registration fails
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.markety.trie:type=TrieMap,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.name = objectName;
+        return objectName;
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server, if they were registered
+     * @throws JMException if the unregistration fails
+     */
+    public synchronized void unregister() throws JMException {
+        if (name == null)
+            return;
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        name = null;
+    }
+
+    //================================COUNTERS==================================
+
+    @Override
+    public long getGets() {
+        return gets.sum();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return Math.max(0, gets.sum() - hits.sum());
+    }
+
+    @Override
+    public double getHitRatio() {
+        long count = gets.sum();
+        return count == 0 ? 0 : Math.min(1, (double) hits.sum() / count);
+    }
+
+    @Override
+    public long getPuts() {
+        return puts.sum();
+    }
+
+    @Override
+    public long getInserts() {
+        return inserts.sum();
+    }
+
+    @Override
+    public long getRemoves() {
+        return removes.sum();
+    }
+
+    @Override
+    public long getPrefixQueries() {
+        return prefixQueries.sum();
+    }
+
+    @Override
+    public double getAveragePrefixMatches() {
+        long count = prefixQueries.sum();
+        return count == 0 ? 0 : (double) prefixMatches.sum() / count;
+    }
+
+    @Override
+    public Map<String,Long> getLatencyPercentiles() {
+        Map<String,Long> map = new LinkedHashMap<>();
+        for (int operation = 0; operation < OPERATIONS.length; operation++) {
+            long[] counts = latencies[operation].counts();
+            map.put(OPERATIONS[operation] + ".p50", percentile(counts, 0.5));
+            map.put(OPERATIONS[operation] + ".p99", percentile(counts, 0.99));
+            map.put(OPERATIONS[operation] + ".p999", percentile(counts, 0.999));
+        }
+        return map;
+    }
+
+    @Override
+    public long[] getLatencyHistogram(String operation) {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            if (OPERATIONS[i].equals(operation))
+                return latencies[i].counts();
+        }
+        throw new IllegalArgumentException("Unknown operation: " + operation);
+    }
+
+    /**
+     * @return the upper bound of the range holding the percentile, 0 if no latency was sampled
+     */
+    private static long percentile(long[] counts, double fraction) {
+        long total = 0;
+        for (long count : counts)
+            total += count;
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return i >= 62 ? Long.MAX_VALUE : 1L << (i + 1);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public void reset() {
+        gets.reset();
+        hits.reset();
+        puts.reset();
+        inserts.reset();
+        removes.reset();
+        prefixQueries.reset();
+        prefixMatches.reset();
+        for (LatencyHistogram latency : latencies)
+            latency.reset();
+    }
+
+    //================================STRUCTURE=================================
+
+    /**
+     * @return the last statistics published by TrieMap.getStatistics, null if none
+     */
+    public TrieStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public long getStatisticsTime() {
+        TrieStatistics s = statistics;
+        return s == null ? 0 : s.getTime();
+    }
+
+    @Override
+    public long getNodesCount() {
+        TrieStatistics s = statistics;
+        return s == null ? 0 : s.getNodesCount();
+    }
+
+    @Override
+    public long getLeavesCount() {
+        TrieStatistics s = statistics;
+        return s == null ? 0 : s.getLeavesCount();
+    }
+
+    @Override
+    public int getMaxDepth() {
+        TrieStatistics s = statistics;
+        return s == null ? 0 : s.getMaxDepth();
+    }
+
+    @Override
+    public double getAverageDepth() {
+        TrieStatistics s = statistics;
+        return s == null ? 0 : s.getAverageDepth();
+    }
+
+    @Override
+    public long[] getNodesPerDepth() {
+        TrieStatistics s = statistics;
+        return s == null ? new long[0] : s.getNodesPerDepth();
+    }
+
+    @Override
+    public Map<String,Long> getNodesPerContainer() {
+        TrieStatistics s = statistics;
+        return s == null ? Collections.<String,Long>emptyMap() : s.getNodesPerContainer();
+    }
+
+    @Override
+    public Map<String,Double> getAverageFanOutPerContainer() {
+        TrieStatistics s = statistics;
+        return s == null ? Collections.<String,Double>emptyMap() : s.getAverageFanOutPerContainer();
+    }
+
+    @Override
+    public Map<String,Long> getEstimatedBytesPerContainer() {
+        TrieStatistics s = statistics;
+        return s == null ? Collections.<String,Long>emptyMap() : s.getEstimatedBytesPerContainer();
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        TrieStatistics s = statistics;
+        return s == null ? 0 : s.getEstimatedBytes();
+    }
+
+    /**
+     * The number of sampled latencies in each power of 2 range of nanoseconds
+     */
+    private static final class LatencyHistogram {
+
+        private final LongAdder[] buckets = new LongAdder[64];
+
+        LatencyHistogram() {
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        void record(long nanos) {
+            buckets[63 - Long.numberOfLeadingZeros(Math.max(1, nanos))].increment();
+        }
+
+        long[] counts() {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++)
+                counts[i] = buckets[i].sum();
+            return counts;
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets)
+                bucket.reset();
+        }
+    }
+}
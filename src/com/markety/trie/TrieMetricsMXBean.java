@@ -0,0 +1,89 @@
+package com.markety.trie;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the metrics of a TrieMap (TrieMetrics.register): the operation counters and latencies, which are live, and the
+ * shape of the trie as of the last TrieMap.getStatistics call (see TrieStatistics).
+ */
+public interface TrieMetricsMXBean {
+
+    /**
+     * @return the number of lookups (get, containsKey)
+     */
+    long getGets();
+
+    /**
+     * @return the number of lookups which found their key
+     */
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return hits / gets, 0 before the first lookup
+     */
+    double getHitRatio();
+
+    long getPuts();
+
+    /**
+     * @return the number of puts which added a key
+     */
+    long getInserts();
+
+    /**
+     * @return the number of removes which found their key
+     */
+    long getRemoves();
+
+    /**
+     * @return the number of prefix queries (getKeysStartingWith, keysStartingWith..)
+     */
+    long getPrefixQueries();
+
+    /**
+     * @return the average number of keys starting with the prefix of a query
+     */
+    double getAveragePrefixMatches();
+
+    /**
+     * @return the 50th, 99th and 99.9th percentiles of the sampled latencies of each operation, in nanoseconds, by name
+     * (ex: "get.p99"). A percentile is the upper bound of the power of 2 range holding it.
+     */
+    Map<String,Long> getLatencyPercentiles();
+
+    /**
+     * @param operation get, put, remove or prefix
+     * @return the number of sampled latencies of the operation in each power of 2 range of nanoseconds: [2^i, 2^(i+1)) at index i
+     */
+    long[] getLatencyHistogram(String operation);
+
+    /**
+     * @return the time of the last statistics, in milliseconds since the epoch, 0 if none
+     */
+    long getStatisticsTime();
+
+    long getNodesCount();
+
+    long getLeavesCount();
+
+    int getMaxDepth();
+
+    double getAverageDepth();
+
+    long[] getNodesPerDepth();
+
+    Map<String,Long> getNodesPerContainer();
+
+    Map<String,Double> getAverageFanOutPerContainer();
+
+    Map<String,Long> getEstimatedBytesPerContainer();
+
+    long getEstimatedBytes();
+
+    /**
+     * Sets the counters and the latencies back to 0
+     */
+    void reset();
+}
@@ -1,11 +1,13 @@
 package com.markety.trie;
 
+import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Stack;
+import java.util.NoSuchElementException;
 import java.util.TreeMap;
-import javafx.util.Pair;
+import java.util.function.BiFunction;
 
 /**
  * A TrieEntry is a node in the trie tree. It contains a key (chat), value and references to all of its
@@ -13,7 +15,7 @@ import javafx.util.Pair;
  * @author doried abd-allah
  * @param <T> Class type of the value to be stored in the trie
  */
-public class TrieNode<T> implements Iterable<TrieNode<T>> {
+public class TrieNode<T> implements Iterable<TrieNode<T>>, Cloneable {
     
     /**
      * use HashMap to store the children of a trie node
@@ -30,12 +32,51 @@ public class TrieNode<T> implements Iterable<TrieNode<T>> {
      */
     static final byte CHILD_STORAGE_MODE_USING_RANDOM=2;
     
+    /**
+     * use primitive parallel arrays (sorted chars + nodes) to store the children of a trie node.
+     * Small nodes are scanned linearly, medium ones are binary-searched and nodes with a high fan-out
+     * switch to a dense table indexed by char. Leaves allocate no arrays at all.
+     */
+    static final byte CHILD_STORAGE_MODE_USING_ARRAYS=3;
+    
+    /**
+     * compact nodes with up to this number of children are searched linearly
+     */
+    private static final int LINEAR_SCAN_LIMIT=8;
+    /**
+     * compact nodes with at least this number of children may switch to a dense table
+     */
+    private static final int DENSE_TABLE_THRESHOLD=32;
+    /**
+     * a dense table is used only while it is at least 1/DENSE_TABLE_MAX_SPAN_FACTOR full
+     */
+    private static final int DENSE_TABLE_MAX_SPAN_FACTOR=4;
+    
     
     private char key;
     private T value;
     private Map<Character,TrieNode<T>> childs;
+    /**
+     * CHILD_STORAGE_MODE_USING_ARRAYS only: the sorted chars of the children, null while the node is a leaf
+     * or when the children are stored in a dense table.
+     */
+    private char[] childChars;
+    /**
+     * CHILD_STORAGE_MODE_USING_ARRAYS only: the children, parallel to childChars. When childChars is null
+     * this is a dense table where the child of char c is at index (c - denseBase)
+     */
+    private TrieNode<T>[] childNodes;
+    private int childCount;
+    private char denseBase;
+    /**
+     * the number of entries (nodes holding a value) in the sub-trie rooted at this node, this node included
+     */
+    private int size;
+    /**
+     * the epoch of the trie in which this node was created (see TrieMap.snapshot). Nodes of older epochs are shared with snapshots, so they are never modified.
+     */
+    private int epoch;
     private byte childs_storage_mode;
-    private TrieNode<T> parent;
 
     /**
      * 
@@ -43,16 +84,18 @@ public class TrieNode<T> implements Iterable<TrieNode<T>> {
      * @param value the value to be stored in this entry
      * @param childStorageMode  the storage mode of the children in this entry. CHILD_STORAGE_MODE_USING_HASHMAP or CHILD_STORAGE_MODE_USING_TREEMAP
      */
-    TrieNode(char key, T value, byte childsStorageMode,TrieNode<T> parent) {
+    TrieNode(char key, T value, byte childsStorageMode) {
         this.key = key;
         this.value = value;
-        this.parent=parent;
         this.childs_storage_mode=childsStorageMode;
        
         if(childsStorageMode==CHILD_STORAGE_MODE_USING_HASHMAP)
             this.childs = new HashMap<>();
         else if(childsStorageMode==CHILD_STORAGE_MODE_USING_TREEMAP)
             this.childs = new TreeMap<>();
+        else if(childsStorageMode==CHILD_STORAGE_MODE_USING_ARRAYS){
+            // the arrays are allocated with the first child
+        }
         else{
             if(key%2==0)
                 this.childs = new HashMap<>();
@@ -68,20 +111,26 @@ public class TrieNode<T> implements Iterable<TrieNode<T>> {
     }
       
     /**
-     * Builds and returns the full key of this node (its parent key + its char)
+     * Builds and returns the full key of this node (its parent key + its char).
+     * Only the nodes keeping a pointer to their parent (ParentedTrieNode, the default) know their key: the keys of the other tries
+     * are given by their key iterators and entry sets, which build the keys while walking down the trie.
      * @return the full key of this node (its parent key + its char)
+     * @throws UnsupportedOperationException if this node does not keep a pointer to its parent
      */
     public String getKey() {
-        // root node has no key. It just have pointers to other nodes, with keys
-        if(parent==null)
-            return "";
-        else
-            return "" + parent.getKey() + this.key;
+        throw new UnsupportedOperationException("The nodes of this trie do not keep their parent, get the keys from the key iterators or the entry set");
     }
 
     public T getValue() {
         return this.value;
     }
+    
+    /**
+     * @return the number of entries (keys having a value) in the sub-trie rooted at this node, this node included
+     */
+    int size() {
+        return this.size;
+    }
 
     
     /**
@@ -89,99 +138,545 @@ public class TrieNode<T> implements Iterable<TrieNode<T>> {
      * @param key a char representing the key you are searching for.
      * @return the node if found, null otherwise.
      */
-    TrieNode findChild(char key) {
-        return this.childs.get(key);
+    TrieNode<T> findChild(char key) {
+        if(this.childs!=null)
+            return this.childs.get(key);
+        
+        TrieNode<T>[] nodes = this.childNodes;
+        if(nodes==null)
+            return null;
+        char[] chars = this.childChars;
+        if(chars==null){
+            int index = key - this.denseBase;
+            return index>=0 && index<nodes.length ? nodes[index] : null;
+        }
+        int count = this.childCount;
+        if(count<=LINEAR_SCAN_LIMIT){
+            for(int i=0;i<count;i++){
+                char ch = chars[i];
+                if(ch==key)
+                    return nodes[i];
+                if(ch>key)
+                    break;
+            }
+            return null;
+        }
+        int index = Arrays.binarySearch(chars, 0, count, key);
+        return index>=0 ? nodes[index] : null;
+    }
+    
+    /**
+     * Adds a child to this node, replacing the child with the same char if any.
+     * @param child the child to add
+     */
+    void addChild(TrieNode<T> child){
+        if(this.childs!=null){
+            this.childs.put(child.key,child);
+            return;
+        }
+        
+        char ch = child.key;
+        if(this.childNodes==null){
+            this.childChars = new char[]{ch};
+            this.childNodes = newNodeArray(1);
+            this.childNodes[0] = child;
+            this.childCount = 1;
+            return;
+        }
+        
+        if(this.childChars==null){
+            int index = ch - this.denseBase;
+            if(index>=0 && index<this.childNodes.length){
+                if(this.childNodes[index]==null)
+                    this.childCount++;
+                this.childNodes[index] = child;
+                return;
+            }
+            int low = Math.min(ch, this.denseBase);
+            int high = Math.max(ch, this.denseBase + this.childNodes.length - 1);
+            if(high - low + 1 <= (this.childCount+1) * DENSE_TABLE_MAX_SPAN_FACTOR){
+                buildDenseTable(low, high);
+                this.childNodes[ch - this.denseBase] = child;
+                this.childCount++;
+                return;
+            }
+            // the chars became too sparse for a table
+            toSortedArrays(this.childCount+1);
+        }
+        
+        int count = this.childCount;
+        int index = Arrays.binarySearch(this.childChars, 0, count, ch);
+        if(index>=0){
+            this.childNodes[index] = child;
+            return;
+        }
+        index = -index-1;
+        if(count==this.childChars.length){
+            int capacity = count<4 ? count+1 : count + (count>>1);
+            this.childChars = Arrays.copyOf(this.childChars, capacity);
+            this.childNodes = Arrays.copyOf(this.childNodes, capacity);
+        }
+        System.arraycopy(this.childChars, index, this.childChars, index+1, count-index);
+        System.arraycopy(this.childNodes, index, this.childNodes, index+1, count-index);
+        this.childChars[index] = ch;
+        this.childNodes[index] = child;
+        this.childCount = ++count;
+        
+        if(count>=DENSE_TABLE_THRESHOLD){
+            int low = this.childChars[0];
+            int high = this.childChars[count-1];
+            if(high - low + 1 <= count * DENSE_TABLE_MAX_SPAN_FACTOR)
+                buildDenseTable(low, high);
+        }
+    }
+    
+    /**
+     * Removes the child with the specified char from this node, if exists.
+     * @param key the char of the child to remove
+     */
+    void removeChild(char key){
+        if(this.childs!=null){
+            this.childs.remove(key);
+            return;
+        }
+        if(this.childNodes==null)
+            return;
+        
+        if(this.childChars==null){
+            int index = key - this.denseBase;
+            if(index<0 || index>=this.childNodes.length || this.childNodes[index]==null)
+                return;
+            this.childNodes[index] = null;
+            this.childCount--;
+            if(this.childCount<DENSE_TABLE_THRESHOLD/2)
+                toSortedArrays(this.childCount);
+            return;
+        }
+        
+        int count = this.childCount;
+        int index = Arrays.binarySearch(this.childChars, 0, count, key);
+        if(index<0)
+            return;
+        count--;
+        if(count==0){
+            // back to a leaf, which holds no arrays
+            this.childChars = null;
+            this.childNodes = null;
+            this.childCount = 0;
+            return;
+        }
+        System.arraycopy(this.childChars, index+1, this.childChars, index, count-index);
+        System.arraycopy(this.childNodes, index+1, this.childNodes, index, count-index);
+        this.childNodes[count] = null;
+        this.childCount = count;
+        if(this.childChars.length > 4 && count < this.childChars.length/4){
+            this.childChars = Arrays.copyOf(this.childChars, count*2);
+            this.childNodes = Arrays.copyOf(this.childNodes, count*2);
+        }
+    }
+    
+    /**
+     * @return the number of children of this node
+     */
+    int getChildsCount(){
+        if(this.childs!=null)
+            return this.childs.size();
+        return this.childCount;
+    }
+    
+    /**
+     * @return how the children of this node are stored, one of the CONTAINER_ constants of TrieStatistics
+     */
+    int getChildsContainer(){
+        if(this.childs instanceof HashMap)
+            return TrieStatistics.CONTAINER_HASHMAP;
+        if(this.childs!=null)
+            return TrieStatistics.CONTAINER_TREEMAP;
+        if(this.childNodes==null)
+            return TrieStatistics.CONTAINER_NONE;
+        return this.childChars==null ? TrieStatistics.CONTAINER_DENSE_TABLE : TrieStatistics.CONTAINER_ARRAYS;
+    }
+    
+    /**
+     * Estimates the bytes retained by this node and the container of its children (not the children themselves), on a 64-bit JVM
+     * with compressed references: 12 bytes of object header, 4 bytes per reference, objects aligned on 8 bytes.
+     * The table of a hashmap is estimated from its number of children, and the Character keys of the maps are counted for the chars
+     * out of the Character cache.
+     * @return the estimated number of bytes
+     */
+    long estimateRetainedBytes(){
+        // header, key, value, childs, childChars, childNodes, childCount, denseBase, size, epoch, storage mode (and parent)
+        long bytes = align(12 + 2 + 4 + 4 + 4 + 4 + 4 + 2 + 4 + 4 + 1 + (this instanceof ParentedTrieNode ? 4 : 0));
+        if(this.childs!=null){
+            int count = this.childs.size();
+            if(this.childs instanceof HashMap){
+                int capacity = 16;
+                while(count > capacity * 3 / 4)
+                    capacity *= 2;
+                bytes += 48 + (count>0 ? align(16 + 4L * capacity) : 0) + 32L * count;
+            }
+            else
+                bytes += 48 + 40L * count;
+            for(Character c:this.childs.keySet()){
+                if(c>127)
+                    bytes += 16;
+            }
+        }
+        if(this.childChars!=null)
+            bytes += align(16 + 2L * this.childChars.length);
+        if(this.childNodes!=null)
+            bytes += align(16 + 4L * this.childNodes.length);
+        return bytes;
+    }
+    
+    private static long align(long bytes){
+        return (bytes + 7) & ~7L;
+    }
+    
+    /**
+     * @return an iterator through the children of this node. They are in ascending char order, unless the node stores them in a hashmap.
+     */
+    Iterator<TrieNode<T>> getChildsIterator(){
+        if(this.childs!=null)
+            return this.childs.values().iterator();
+        return new CompactChildsIterator();
+    }
+    
+    /**
+     * @return the number of entries in the sub-tries of the children of chars lower than the char
+     */
+    @SuppressWarnings("unchecked")
+    int sizeBelow(char c){
+        int size = 0;
+        if(this.childs instanceof TreeMap){
+            for(TrieNode<T> child : ((TreeMap<Character,TrieNode<T>>)this.childs).headMap(c).values())
+                size += child.size;
+        }else if(this.childs!=null){
+            for(TrieNode<T> child : this.childs.values())
+                if(child.key<c)
+                    size += child.size;
+        }else if(this.childNodes!=null){
+            int limit;
+            if(this.childChars!=null){
+                int index = Arrays.binarySearch(this.childChars, 0, this.childCount, c);
+                limit = index>=0 ? index : -index-1;
+            }else{
+                limit = Math.max(0, Math.min(c-this.denseBase, this.childNodes.length));
+            }
+            for(int i=0;i<limit;i++)
+                if(this.childNodes[i]!=null)
+                    size += this.childNodes[i].size;
+        }
+        return size;
+    }
+    
+    /**
+     * @return an iterator through the children of this node in ascending char order (sorting them if the node stores them in a hashmap)
+     */
+    Iterator<TrieNode<T>> getSortedChildsIterator(){
+        if(this.childs instanceof HashMap)
+            return Arrays.asList(getSortedChilds()).iterator();
+        return getChildsIterator();
+    }
+    
+    /**
+     * @return the children of this node in ascending char order
+     */
+    TrieNode<T>[] getSortedChilds(){
+        TrieNode<T>[] nodes = newNodeArray(getChildsCount());
+        int i = 0;
+        for(Iterator<TrieNode<T>> it = getChildsIterator(); it.hasNext();)
+            nodes[i++] = it.next();
+        if(this.childs instanceof HashMap)
+            Arrays.sort(nodes, (a, b) -> Character.compare(a.key, b.key));
+        return nodes;
+    }
+    
+    /**
+     * Moves the children of a compact node (sorted arrays or dense table) into a dense table covering the chars [low, high]
+     */
+    private void buildDenseTable(int low, int high){
+        TrieNode<T>[] table = newNodeArray(high - low + 1);
+        if(this.childChars!=null){
+            for(int i=0;i<this.childCount;i++)
+                table[this.childChars[i] - low] = this.childNodes[i];
+        }else{
+            for(int i=0;i<this.childNodes.length;i++)
+                if(this.childNodes[i]!=null)
+                    table[this.denseBase + i - low] = this.childNodes[i];
+        }
+        this.childChars = null;
+        this.childNodes = table;
+        this.denseBase = (char)low;
+    }
+    
+    /**
+     * Moves the children of a dense table into sorted arrays having the specified capacity
+     */
+    private void toSortedArrays(int capacity){
+        char[] chars = new char[Math.max(capacity, this.childCount)];
+        TrieNode<T>[] nodes = newNodeArray(chars.length);
+        int count = 0;
+        for(int i=0;i<this.childNodes.length;i++){
+            if(this.childNodes[i]!=null){
+                chars[count] = (char)(this.denseBase + i);
+                nodes[count++] = this.childNodes[i];
+            }
+        }
+        this.childChars = chars;
+        this.childNodes = nodes;
+        this.denseBase = 0;
+    }
+    
+    /**
+     * Installs all the children of a node built in one go (see TrieMapBuilder), in the most compact form of its storage mode:
+     * exactly sized sorted arrays or a dense table, or a map created for this number of children.
+     * @param chars the sorted chars of the children
+     * @param nodes the children, parallel to chars
+     * @param count the number of children
+     * @param size the number of entries in the sub-trie rooted at this node, this node included
+     */
+    void setChilds(char[] chars, TrieNode<T>[] nodes, int count, int size){
+        this.size = size;
+        if(count==0)
+            return;
+        if(this.childs!=null){
+            if(this.childs instanceof HashMap)
+                this.childs = new HashMap<>(count*4/3+1);
+            for(int i=0;i<count;i++)
+                this.childs.put(chars[i], nodes[i]);
+            return;
+        }
+        this.childChars = Arrays.copyOf(chars, count);
+        this.childNodes = Arrays.copyOf(nodes, count);
+        this.childCount = count;
+        if(count>=DENSE_TABLE_THRESHOLD && chars[count-1] - chars[0] + 1 <= count * DENSE_TABLE_MAX_SPAN_FACTOR)
+            buildDenseTable(chars[0], chars[count-1]);
+    }
+    
+    /**
+     * Creates a new (not yet attached) child of this node. Tries using their own node class override it.
+     * @param ch the char of the child
+     * @return the new child
+     */
+    TrieNode<T> newChild(char ch){
+        return new TrieNode<>(ch, null, childs_storage_mode);
+    }
+    
+    @SuppressWarnings("unchecked")
+    static <T> TrieNode<T>[] newNodeArray(int length){
+        return (TrieNode<T>[]) new TrieNode<?>[length];
     }
 
     /**
      * Associates the value passed by parameter 'value' with the key, or replaces it if there was already a value
      * A path to the node is built if it does not exist.
-     * @param word a string representing the key (directing for the path to the node).
-     * @param value the value to be stored along with that key.
+     * This node must belong to the epoch 'epoch'. The nodes of the path belonging to an older epoch (shared with a snapshot) are not modified, they are replaced by copies.
+     * @param word a char sequence containing the key (directing for the path to the node).
+     * @param start the index of the first char of the key in 'word'
+     * @param end the index after the last char of the key in 'word'
+     * @param value the value to be stored along with that key, not null.
+     * @param epoch the current epoch of the trie
      * @return The previous value if the entry was already exist, null otherwise
      */
-    T put(String word, T value) {
-        if (word.length() == 0) {
-            T prev = this.value;
-            this.value = value;
-            return prev;
-        } else {
-            char ch = word.charAt(0);
-            TrieNode<T> child = findChild(ch);
+    T put(CharSequence word, int start, int end, T value, int epoch) {
+        TrieNode<T> node = this;
+        for (int i = start; i < end; i++) {
+            char ch = word.charAt(i);
+            TrieNode<T> child = node.findWritableChild(ch, epoch);
             
             if (child == null) {
-                child = new TrieNode(ch, null,childs_storage_mode,this);
-                this.childs.put(ch,child);
+                child = node.newChild(ch);
+                child.epoch = epoch;
+                node.addChild(child);
+            }
+            node = child;
+        }
+        T prev = node.value;
+        node.value = value;
+        
+        if (prev == null) {
+            // a new entry, count it in every node of its path (they are all writable now)
+            node = this;
+            node.size++;
+            for (int i = start; i < end; i++) {
+                node = node.findChild(word.charAt(i));
+                node.size++;
             }
-            return child.put(word.substring(1), value);
         }
+        return prev;
     }
     
     
     /**
      * Removes the entry specified by the key from the trie. And prunes and resulting unused branches.
-     * @param word the path to the entry to be removed
+     * The branch to prune is found using the entries count of the nodes, so no parent link is needed.
+     * This node must belong to the epoch 'epoch', the nodes of the path belonging to an older epoch are replaced by copies.
+     * @param word a char sequence containing the path to the entry to be removed
+     * @param start the index of the first char of the key in 'word'
+     * @param end the index after the last char of the key in 'word'
+     * @param epoch the current epoch of the trie
      * @return the removed value if exist.
      */
-    T remove(String word) {
-        TrieNode<T> node = getNode(word);
-        if(node==null)
+    T remove(CharSequence word, int start, int end, int epoch) {
+        TrieNode<T> node = getNode(word, start, end);
+        if(node==null || node.value==null)
             return null;
         
-        T prev_val = node.getValue();
+        T prev_val = node.value;
         
-        node.put("", null);
-
-        while(node.parent != null && node.childs.isEmpty()){
-            TrieNode<T> child = node;
-            if(child.value!=null)
-                break;
-            node = node.parent;
-            node.childs.remove(child.key);
+        // uncount the entry along its path. The first node left without entries is the root of an unused branch: prune it.
+        node = this;
+        node.size--;
+        for (int i = start; i < end; i++) {
+            char ch = word.charAt(i);
+            TrieNode<T> child = node.findWritableChild(ch, epoch);
+            child.size--;
+            if(child.size==0){
+                node.removeChild(ch);
+                return prev_val;
+            }
+            node = child;
         }
+        node.value = null;
         
         return prev_val;
     }
+    
+    /**
+     * Removes the sub-trie of the node specified by the key (the node and all the nodes below it), and prunes the resulting unused branch.
+     * The entries of the sub-trie are uncounted along the path in one go, so this costs O(key length) whatever the size of the sub-trie is.
+     * This node must belong to the epoch 'epoch', the nodes of the path belonging to an older epoch are replaced by copies.
+     * @param word a char sequence containing the path to the root of the sub-trie
+     * @param start the index of the first char of the key in 'word'
+     * @param end the index after the last char of the key in 'word', greater than start (this node can not be removed)
+     * @param epoch the current epoch of the trie
+     * @return the root of the removed sub-trie, which keeps its entries count, null if the key does not exist
+     */
+    TrieNode<T> removeSubTrie(CharSequence word, int start, int end, int epoch) {
+        TrieNode<T> target = getNode(word, start, end);
+        if(target==null || target==this)
+            return null;
+        
+        int count = target.size;
+        TrieNode<T> node = this;
+        node.size -= count;
+        for (int i = start; i < end - 1; i++) {
+            char ch = word.charAt(i);
+            TrieNode<T> child = node.findWritableChild(ch, epoch);
+            child.size -= count;
+            if(child.size==0){
+                node.removeChild(ch);
+                return target;
+            }
+            node = child;
+        }
+        node.removeChild(word.charAt(end - 1));
+        return target;
+    }
+    
+    /**
+     * finds a child of this node, replacing it by a copy if it belongs to an older epoch than 'epoch' (it is shared with a snapshot).
+     * This node must belong to the epoch 'epoch'.
+     * @return the child, which can be modified, null if there is no child with this char.
+     */
+    TrieNode<T> findWritableChild(char key, int epoch) {
+        TrieNode<T> child = findChild(key);
+        if (child != null && child.epoch != epoch) {
+            child = child.copy(epoch);
+            addChild(child);
+        }
+        return child;
+    }
+    
+    /**
+     * Copies this node for the epoch 'epoch'. The copy has its own children container, but shares the children themselves.
+     * @param epoch the epoch of the copy
+     * @return the copy
+     */
+    @SuppressWarnings("unchecked")
+    TrieNode<T> copy(int epoch) {
+        TrieNode<T> copy;
+        try {
+            copy = (TrieNode<T>) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        if (this.childs instanceof HashMap)
+            copy.childs = new HashMap<>(this.childs);
+        else if (this.childs instanceof TreeMap)
+            copy.childs = new TreeMap<>(this.childs);
+        if (this.childChars != null)
+            copy.childChars = this.childChars.clone();
+        if (this.childNodes != null)
+            copy.childNodes = this.childNodes.clone();
+        copy.epoch = epoch;
+        return copy;
+    }
+    
+    /**
+     * @return the epoch in which this node was created or copied. Only the nodes of the current epoch of a trie are modified in place.
+     */
+    int getEpoch() {
+        return this.epoch;
+    }
 
+    /**
+     * finds and returns the node(Entry) specified by the passed key, walking the key char by char without copying it.
+     * @param word a char sequence containing the key, specifying the path to the node
+     * @param start the index of the first char of the key in 'word'
+     * @param end the index after the last char of the key in 'word'
+     * @return the node specified by that key, null if the node does not exist.
+     */
+    TrieNode<T> getNode(CharSequence word, int start, int end) {
+        TrieNode<T> node = this;
+        for (int i = start; i < end && node != null; i++)
+            node = node.findChild(word.charAt(i));
+        return node;
+    }
+    
     /**
      * finds and returns the node(Entry) specified by the passed key.
      * @param word the key, specifying the path to the node
      * @return the node specified by that key, null if the node does not exist.
      */
-    TrieNode<T> getNode(String word) {
-        if (word.length() == 0) {
-            return this;
-        } else {
-            TrieNode child = findChild(word.charAt(0));
-            if (child == null) {
-                return null;
-            } else {
-                return child.getNode(word.substring(1));
-            }
-        }
+    TrieNode<T> getNode(CharSequence word) {
+        return getNode(word, 0, word.length());
     }
 
      /**
      * finds and returns the value specified by the passed key.
-     * @param word the key, specifying the path to the node
+     * @param word a char sequence containing the key, specifying the path to the node
+     * @param start the index of the first char of the key in 'word'
+     * @param end the index after the last char of the key in 'word'
      * @return the value specified by that key, null if the key does not exist.
      */
-    T get(String word) {
-        TrieNode<T> node = getNode(word);
+    T get(CharSequence word, int start, int end) {
+        TrieNode<T> node = getNode(word, start, end);
         if (node == null) {
             return null;
         } else {
-            return node.getValue();
+            return node.value;
         }
     }
+    
+    /**
+     * finds and returns the value specified by the passed key.
+     * @param word the key, specifying the path to the node
+     * @return the value specified by that key, null if the key does not exist.
+     */
+    T get(CharSequence word) {
+        return get(word, 0, word.length());
+    }
 
     /**
-     * Gets an iterator to iterate trough all the entries that can be accessed from the current node, in DFS order.
-     * @return an iterator to iterate through the nodes set accessed from this key using DFS
+     * Gets an iterator through the nodes holding a value in the sub-trie of this node (this node included), in DFS order.
+     * Children stored in a TreeMap or in compact arrays are visited in ascending char order, so the keys come in lexicographic order.
+     * @return an iterator through the nodes holding a value
      */
     @Override
     public Iterator<TrieNode<T>> iterator() {
-        return new MyNodesIterator();
+        return new NodesIterator();
     }
     
     /**
@@ -189,116 +684,576 @@ public class TrieNode<T> implements Iterable<TrieNode<T>> {
      * @return an iterator to iterate through the key set that can be formed from this key using DFS
      */
     public Iterator<String> getKeysIterator() {
-        return new MyKeysIterator();
+        return new KeysIterator("");
     }
-
     
-    class MyNodesIterator implements Iterator<TrieNode<T>>{
+    /**
+     * Gets an iterator to iterate trough all the keys that can be formed from the current node, each one prepended with the specified prefix, in DFS order.
+     * Keys are built lazily, one at each call to next(), and only for the nodes holding a value.
+     * Children stored in a TreeMap or in compact arrays are visited in ascending char order, so the keys come in lexicographic order.
+     * @param prefix the string to put before each key (usually the key of the current node)
+     * @return an iterator to iterate through the key set that can be formed from this key using DFS
+     */
+    public Iterator<String> getKeysIterator(String prefix) {
+        return new KeysIterator(prefix);
+    }
+    
+    /**
+     * Same as getKeysIterator(prefix), the keys in lexicographic order whatever the storage mode is, for the key sets of the tries
+     * (which remove the entries returned by the iterator, see DfsIterator.removed)
+     */
+    KeysIterator newKeysIterator(String prefix) {
+        return new KeysIterator(prefix, true);
+    }
+
+    /**
+     * Gets an iterator through the entries of the sub-trie of this node, in lexicographic key order whatever the storage mode is. The keys are built
+     * while walking down the trie, so the nodes do not need their parent.
+     * @param prefix the string to put before each key (usually the key of the current node)
+     * @param writer called by Map.Entry.setValue with the key and the new value, to put it in the trie
+     * @return an iterator through the entries
+     */
+    EntriesIterator newEntriesIterator(String prefix, BiFunction<String,T,T> writer) {
+        return new EntriesIterator(prefix, writer);
+    }
+
+    /**
+     * @return an iterator through the values of the sub-trie of this node, in lexicographic key order. No key is built.
+     */
+    Iterator<T> newValuesIterator() {
+        return new ValuesIterator();
+    }
+
+    /**
+     * Gets an iterator through the keys of the sub-trie of this node within an edit distance (Levenshtein: insertions, deletions and
+     * substitutions of single chars) of the query.
+     * @param query the query
+     * @param maxEdits the maximum edit distance
+     * @param ranked false for the keys in the order of getKeysIterator, true for the keys sorted by distance (then in the order of
+     * getKeysIterator), the sub-trie being walked once per distance
+     * @return an iterator through the keys within maxEdits of the query
+     */
+    Iterator<String> newFuzzyIterator(String query, int maxEdits, boolean ranked) {
+        if(!ranked)
+            return new FuzzyKeysIterator(query, maxEdits, -1);
+        return new Iterator<String>(){
+            private int distance = 0;
+            private Iterator<String> it = new FuzzyKeysIterator(query, maxEdits, 0);
+
+            @Override
+            public boolean hasNext() {
+                while(!it.hasNext() && distance<maxEdits)
+                    it = new FuzzyKeysIterator(query, maxEdits, ++distance);
+                return it.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                return it.next();
+            }
+        };
+    }
+
+    /**
+     * @param prefix the string to put before each key (usually the key of the current node)
+     * @param pattern the pattern, matched against the keys relative to this node
+     * @return an iterator through the keys of the sub-trie of this node matching the pattern, in the order of getKeysIterator(prefix)
+     */
+    Iterator<String> newPatternIterator(String prefix, TriePattern pattern) {
+        return new PatternKeysIterator(prefix, pattern);
+    }
+
+    /**
+     * @param key the key of this node
+     * @param writer called by Map.Entry.setValue with the key and the new value, to put it in the trie
+     * @return an entry holding the key and the value of this node
+     */
+    Map.Entry<String,T> newEntry(String key, BiFunction<String,T,T> writer) {
+        return new AbstractMap.SimpleEntry<String,T>(key, this.value){
+            @Override
+            public T setValue(T value) {
+                writer.apply(getKey(), value);
+                return super.setValue(value);
+            }
+        };
+    }
+
+    /**
+     * Iterates in DFS order through the nodes holding a value in the sub-trie of this node.
+     * The frames of the DFS are kept in arrays and the path in a single char array, one char per level, so visiting a node
+     * allocates nothing (but the iterator over the children of the nodes storing them in a map).
+     * A sorted iterator visits the children of all the nodes in ascending char order, the keys coming in lexicographic order whatever
+     * the storage mode is: the children of the nodes storing them in a hashmap are sorted when the node is reached.
+     */
+    abstract class DfsIterator<E> implements Iterator<E>{
         
-        private Stack< TrieNode > stack;
-        private TrieNode next = null;
+        private TrieNode<T>[] nodes = newNodeArray(16);
+        /**
+         * map storage: the iterator through the children of the node of each level
+         */
+        private Iterator<TrieNode<T>>[] childIterators;
+        /**
+         * compact storage: the index of the next child to visit. -1 while the value of the node itself was not visited
+         */
+        private int[] nextChild = new int[16];
+        /**
+         * the chars of the children to look up directly for each level (see lookups), null to visit all the children
+         */
+        private char[][] lookupChars = new char[16][];
+        private char[] path;
+        private final int baseLength;
+        private int depth = 0;
+        private boolean started;
+        private final boolean sorted;
+        TrieNode<T> next;
         
-        public MyNodesIterator(){
-            stack = new Stack<>();
-            stack.add(TrieNode.this );
-            findNext();
+        DfsIterator(String base){
+            this(base, false);
+        }
+        
+        @SuppressWarnings("unchecked")
+        DfsIterator(String base, boolean sorted){
+            this.sorted = sorted;
+            this.baseLength = base.length();
+            this.path = Arrays.copyOf(base.toCharArray(), baseLength + 16);
+            this.childIterators = (Iterator<TrieNode<T>>[]) new Iterator<?>[16];
+            this.nodes[0] = TrieNode.this;
+            this.nextChild[0] = -1;
         }
         
         /**
          * finds the next node in the trie structure that has a value stored in.
          */
         private void findNext(){
-            
-            if(stack.isEmpty()){
-                next=null;
+            while(depth>=0){
+                TrieNode<T> node = nodes[depth];
+                if(nextChild[depth]==-1){
+                    lookupChars[depth] = lookups(depth);
+                    position(depth, -1);
+                    if(node.value!=null && accept(node, depth)){
+                        next = node;
+                        return;
+                    }
+                }
+                TrieNode<T> child = nextChild(depth);
+                if(child!=null){
+                    if(enter(child, depth+1))
+                        push(child);
+                }else{
+                    nodes[depth] = null;
+                    childIterators[depth] = null;
+                    lookupChars[depth] = null;
+                    depth--;
+                }
+            }
+            next = null;
+        }
+        
+        private void push(TrieNode<T> child){
+            if(++depth==nodes.length){
+                nodes = Arrays.copyOf(nodes, depth*2);
+                childIterators = Arrays.copyOf(childIterators, depth*2);
+                nextChild = Arrays.copyOf(nextChild, depth*2);
+                lookupChars = Arrays.copyOf(lookupChars, depth*2);
+            }
+            if(baseLength+depth>path.length)
+                path = Arrays.copyOf(path, path.length*2);
+            path[baseLength+depth-1] = child.key;
+            nodes[depth] = child;
+            nextChild[depth] = -1;
+        }
+        
+        /**
+         * Marks the value of the node at the level as visited, and positions the traversal of its children after a char
+         * @param after the children of the chars up to this one are skipped, -1 to visit all of them
+         */
+        @SuppressWarnings("unchecked")
+        private void position(int level, int after){
+            TrieNode<T> node = nodes[level];
+            nextChild[level] = 0;
+            char[] lookups = lookupChars[level];
+            if(lookups!=null){
+                if(after>=0){
+                    int index = Arrays.binarySearch(lookups, (char)after);
+                    nextChild[level] = index>=0 ? index+1 : -index-1;
+                }
                 return;
             }
-            
-            TrieNode<T> trie = stack.pop();
-            
-            for(TrieNode<T> child:trie.childs.values())
-               stack.add(child);
-            
-            while(!stack.isEmpty() && trie.getValue()==null){
-               trie = stack.pop();
-               for(TrieNode<T> child:trie.childs.values())
-                   stack.add(child);
+            if(node.childs!=null){
+                if(node.childs instanceof TreeMap){
+                    TreeMap<Character,TrieNode<T>> tree = (TreeMap<Character,TrieNode<T>>)node.childs;
+                    childIterators[level] = (after<0 ? tree.values() : tree.tailMap((char)after, false).values()).iterator();
+                }else if(sorted){
+                    TrieNode<T>[] children = node.getSortedChilds();
+                    int from = 0;
+                    while(from<children.length && children[from].key<=after)
+                        from++;
+                    childIterators[level] = Arrays.asList(children).subList(from, children.length).iterator();
+                }else{
+                    // hashmaps have no order: the children are skipped by walking the map in its own order
+                    Iterator<TrieNode<T>> it = node.childs.values().iterator();
+                    if(after>=0)
+                        while(it.hasNext() && it.next().key!=after);
+                    childIterators[level] = it;
+                }
+                return;
+            }
+            if(after<0 || node.childNodes==null)
+                return;
+            if(node.childChars!=null){
+                int index = Arrays.binarySearch(node.childChars, 0, node.childCount, (char)after);
+                nextChild[level] = index>=0 ? index+1 : -index-1;
+            }else{
+                nextChild[level] = Math.max(0, after-node.denseBase+1);
+            }
+        }
+        
+        /**
+         * Positions a sorted iterator, before its first call, at the first key greater than (or equal to) a key, skipping the keys before it.
+         * Each level of the path of the key is positioned after the char of the key, and the iteration goes on from the deepest existing node
+         * of the path, so seeking costs O(key length).
+         * @param key the key, relative to this node
+         * @param inclusive true to start at the key itself if it exists
+         */
+        void seek(CharSequence key, boolean inclusive){
+            TrieNode<T> node = nodes[0];
+            for(int i=0;i<key.length();i++){
+                char c = key.charAt(i);
+                // the value of the node comes before the key, of which its key is a proper prefix
+                lookupChars[depth] = lookups(depth);
+                position(depth, c);
+                node = node.findChild(c);
+                if(node==null)
+                    return;
+                push(node);
+            }
+            if(!inclusive){
+                lookupChars[depth] = lookups(depth);
+                position(depth, -1);
             }
-            
-            if(trie.getValue()==null)
-                next=null;
-            else
-                next=trie;  
         }
         
+        /**
+         * @return the next child to visit of the node at the level, null if all of them were visited
+         */
+        private TrieNode<T> nextChild(int level){
+            TrieNode<T> node = nodes[level];
+            char[] lookups = lookupChars[level];
+            if(lookups!=null){
+                int index = nextChild[level];
+                TrieNode<T> child = null;
+                while(index<lookups.length && child==null)
+                    child = node.findChild(lookups[index++]);
+                nextChild[level] = index;
+                return child;
+            }
+            if(node.childs!=null){
+                Iterator<TrieNode<T>> it = childIterators[level];
+                return it.hasNext() ? it.next() : null;
+            }
+            TrieNode<T>[] children = node.childNodes;
+            if(children==null)
+                return null;
+            int limit = node.childChars!=null ? node.childCount : children.length;
+            int index = nextChild[level];
+            while(index<limit && children[index]==null)
+                index++;
+            nextChild[level] = index+1;
+            return index<limit ? children[index] : null;
+        }
         
+        /**
+         * Must be called after the entry last returned was removed from the trie. Its branch may have been pruned, which may shift
+         * the children still to visit of the nodes of the current path: the position of each of these nodes among its siblings is found again.
+         */
+        void removed(){
+            for(int level=0;level<depth;level++)
+                position(level, nodes[level+1].key);
+        }
+        
+        /**
+         * @return the key of the next node, relative to this node and prepended with the base
+         */
+        String nextKey(){
+            return new String(path, 0, baseLength+depth);
+        }
+        
+        /**
+         * Called before going down to a child, to prune the DFS: returning false skips the sub-trie of the child.
+         * @param child the child
+         * @param level the depth of the child below the start node
+         */
+        boolean enter(TrieNode<T> child, int level){
+            return true;
+        }
+        
+        /**
+         * Called for each node holding a value: returning false skips its entry (but not its sub-trie).
+         * @param node the node
+         * @param level the depth of the node below the start node
+         */
+        boolean accept(TrieNode<T> node, int level){
+            return true;
+        }
+        
+        /**
+         * Called when a node is reached, to visit only some of its children, found by char instead of iterating through all of them.
+         * @param level the depth of the node below the start node
+         * @return the sorted chars of the children to visit (the missing ones are skipped), null to visit all the children
+         */
+        char[] lookups(int level){
+            return null;
+        }
         
         @Override
         public boolean hasNext() {
+            // the first node is found at the first call, once the fields of the subclasses are initialized
+            if(!started){
+                started = true;
+                findNext();
+            }
             return next!=null;
         }
 
         @Override
-        public TrieNode next() {
-            TrieNode next = this.next;
+        public E next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
+            E result = current();
             findNext();
+            return result;
+        }
+        
+        abstract E current();
+    }
+    
+    class NodesIterator extends DfsIterator<TrieNode<T>>{
+        
+        NodesIterator(){
+            super("");
+        }
+
+        @Override
+        TrieNode<T> current() {
             return next;
-        }   
+        }
+    }
+    
+    class KeysIterator extends DfsIterator<String>{
+
+        KeysIterator(String prefix){
+            super(prefix);
+        }
+
+        KeysIterator(String prefix, boolean sorted){
+            super(prefix, sorted);
+        }
+
+        @Override
+        String current() {
+            return nextKey();
+        }
     }
     
-    class MyKeysIterator implements Iterator<String>{
+    class ValuesIterator extends DfsIterator<T>{
+        
+        ValuesIterator(){
+            super("", true);
+        }
 
-        private Stack< Pair<String,TrieNode> > stack;
-        private String next = null;
+        @Override
+        T current() {
+            return next.value;
+        }
+    }
+    
+    class EntriesIterator extends DfsIterator<Map.Entry<String,T>>{
         
-        public MyKeysIterator(){
-            stack = new Stack<>();
-            stack.add(new Pair("",TrieNode.this));
-            findNext();
+        private final BiFunction<String,T,T> writer;
+
+        EntriesIterator(String prefix, BiFunction<String,T,T> writer){
+            super(prefix, true);
+            this.writer = writer;
+        }
+
+        @Override
+        Map.Entry<String,T> current() {
+            return next.newEntry(nextKey(), writer);
         }
+    }
+    
+    /**
+     * Iterates through the keys within an edit distance of a query, keeping one row of the Levenshtein matrix per level of the DFS.
+     * Going down to a child computes the row of its level from the row of its parent, in O(maxEdits) as only the band of the
+     * matrix around the diagonal can hold distances within the budget, and the sub-trie of the child is skipped as soon as the whole
+     * row exceeds the budget: no key under it can get back within it.
+     */
+    class FuzzyKeysIterator extends DfsIterator<String>{
         
+        private final String query;
         /**
-         * finds the next node in the trie structure that has a value stored in.
+         * the maximum distance of the keys to return: the sub-tries beyond it are skipped
          */
-        private void findNext(){
-            if(stack.isEmpty()){
-                next=null;
-                return;
+        private final int budget;
+        private final int distance;
+        /**
+         * the rows of the Levenshtein matrix, one per level: rows[i][j] is the distance between the i first chars of the path and the
+         * j first chars of the query, capped at budget+1
+         */
+        private int[][] rows;
+        
+        /**
+         * @param distance the only distance of the keys to return, -1 for all the distances up to maxEdits
+         */
+        FuzzyKeysIterator(String query, int maxEdits, int distance){
+            super("");
+            this.query = query;
+            this.budget = distance<0 ? maxEdits : distance;
+            this.distance = distance;
+            int length = query.length();
+            this.rows = new int[16][length+2];
+            int[] first = rows[0];
+            for(int j=0;j<=length+1;j++)
+                first[j] = Math.min(j, budget+1);
+        }
+
+        @Override
+        boolean enter(TrieNode<T> child, int level) {
+            if(level==rows.length){
+                int length = rows.length;
+                rows = Arrays.copyOf(rows, length*2);
+                for(int i=length;i<rows.length;i++)
+                    rows[i] = new int[query.length()+2];
             }
-            
-            Pair<String,TrieNode> top = stack.pop();
-            TrieNode<T> trie = top.getValue();
-            
-            for(TrieNode<T> child:trie.childs.values())
-               stack.add( new Pair(top.getKey()+child.getChar(),child));
-            
-            while(!stack.isEmpty() && trie.getValue()==null){
-               top = stack.pop();
-               trie = top.getValue();
-               for(TrieNode<T> child:trie.childs.values())
-                   stack.add( new Pair(top.getKey()+child.getChar(),child));
+            int[] previous = rows[level-1];
+            int[] row = rows[level];
+            int limit = budget+1;
+            int n = query.length();
+            char c = child.key;
+            int from = Math.max(1, level-budget);
+            int to = Math.min(n, level+budget);
+            row[0] = Math.min(level, limit);
+            int min = row[0];
+            if(from>1)
+                row[Math.min(from-1, n+1)] = limit;
+            for(int j=from;j<=to;j++){
+                int cost = previous[j-1] + (query.charAt(j-1)==c ? 0 : 1);
+                cost = Math.min(cost, Math.min(previous[j], row[j-1])+1);
+                row[j] = Math.min(cost, limit);
+                if(row[j]<min)
+                    min = row[j];
             }
-            
-            if(trie.getValue()==null)
-                next=null;
-            else
-                next=top.getKey();  
+            // the cell after the band is read by the next level
+            if(to<n)
+                row[to+1] = limit;
+            return min<=budget;
+        }
+
+        @Override
+        boolean accept(TrieNode<T> node, int level) {
+            int n = query.length();
+            if(Math.abs(level-n)>budget)
+                return false;
+            int d = rows[level][n];
+            return distance<0 ? d<=budget : d==distance;
         }
+
+        @Override
+        String current() {
+            return nextKey();
+        }
+    }
+    
+    /**
+     * Iterates through the keys matching a pattern, running the automaton of the pattern along the DFS: the set of states reached
+     * by the path is kept for each level, a child is entered only if some state survives its char, and when the states can only
+     * consume a few literal chars their children are looked up directly.
+     */
+    class PatternKeysIterator extends DfsIterator<String>{
         
+        private final TriePattern.Run run;
+        private final int statesCount;
+        /**
+         * the states reached by the path, for each level
+         */
+        private int[][] states = new int[16][];
+        private int[] counts = new int[16];
         
+        PatternKeysIterator(String prefix, TriePattern pattern){
+            super(prefix);
+            this.run = pattern.newRun();
+            this.statesCount = pattern.getStatesCount();
+            this.states[0] = new int[statesCount];
+            this.counts[0] = run.start(states[0]);
+        }
+
+        @Override
+        boolean enter(TrieNode<T> child, int level) {
+            if(level==states.length){
+                states = Arrays.copyOf(states, level*2);
+                counts = Arrays.copyOf(counts, level*2);
+            }
+            if(states[level]==null)
+                states[level] = new int[statesCount];
+            counts[level] = run.step(states[level-1], counts[level-1], child.key, states[level]);
+            return counts[level]>0;
+        }
+
+        @Override
+        boolean accept(TrieNode<T> node, int level) {
+            return run.accepts(states[level], counts[level]);
+        }
+
+        @Override
+        char[] lookups(int level) {
+            return run.literals(states[level], counts[level]);
+        }
+
+        @Override
+        String current() {
+            return nextKey();
+        }
+    }
+    
+    /**
+     * Iterates through the children of a compact node, in ascending char order
+     */
+    class CompactChildsIterator implements Iterator<TrieNode<T>>{
+        
+        private int index = -1;
+        
+        CompactChildsIterator(){
+            advance();
+        }
+        
+        private void advance(){
+            index++;
+            if(childNodes==null)
+                return;
+            if(childChars!=null)
+                return;
+            while(index<childNodes.length && childNodes[index]==null)
+                index++;
+        }
         
         @Override
         public boolean hasNext() {
-            return next!=null;
+            if(childNodes==null)
+                return false;
+            return index < (childChars!=null ? childCount : childNodes.length);
         }
 
         @Override
-        public String next() {
-            String next = this.next;
-            findNext();
+        public TrieNode<T> next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
+            TrieNode<T> next = childNodes[index];
+            advance();
             return next;
-        }   
-    }   
+        }
+    }
     
     public byte getChildsStorageMode(){
         return this.childs_storage_mode;
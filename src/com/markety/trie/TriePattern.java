@@ -0,0 +1,692 @@
+package com.markety.trie;
+
+import java.util.Arrays;
+
+/**
+ * A compiled pattern over whole keys, to find the matching keys of a trie (TrieMap.keysMatching) without scanning all of them.
+ * The pattern is compiled to a non-deterministic automaton (Thompson construction), which is run along the paths of the trie while
+ * walking it: a sub-trie is entered only if some state of the automaton survives its char, so the keys are never compared one by one.
+ * When the automaton can only go on with a few literal chars (ex: the fixed prefix of "abc*"), the children of these chars are looked up
+ * directly instead of visiting all the children.
+ * <pre>
+ * TriePattern.glob("ab?d*")               // '?': any char, '*': any sequence, [abc], [a-z], [!a-z]: char classes
+ * TriePattern.regex("(foo|bar)[0-9]+")     // anchored: the whole key must match
+ * </pre>
+ * A compiled pattern is immutable, and can be used by several threads.
+ */
+public final class TriePattern {
+
+    /**
+     * the number of literal chars up to which the children are looked up directly
+     */
+    private static final int LOOKUP_LIMIT = 16;
+    private static final char[] NO_CHARS = new char[0];
+
+    private final String pattern;
+    /**
+     * the chars consumed by each state: ranges (low, high) sorted and merged, null for the states with epsilon transitions only
+     */
+    private final char[][] ranges;
+    private final boolean[] negated;
+    /**
+     * the literal chars matched by the consuming states matching a few chars only, null for the other states
+     */
+    private final char[][] literals;
+    /**
+     * the transitions: the next state for the consuming states, the epsilon transitions for the others (-1 if none)
+     */
+    private final int[] out1;
+    private final int[] out2;
+    private final int start;
+    private final int accept;
+
+    private TriePattern(String pattern, Builder builder, int start, int accept) {
+        int count = builder.count;
+        this.pattern = pattern;
+        this.ranges = Arrays.copyOf(builder.ranges, count);
+        this.negated = Arrays.copyOf(builder.negated, count);
+        this.out1 = Arrays.copyOf(builder.out1, count);
+        this.out2 = Arrays.copyOf(builder.out2, count);
+        this.start = start;
+        this.accept = accept;
+        this.literals = new char[count][];
+        for (int s = 0; s < count; s++) {
+            if (ranges[s] != null && !negated[s])
+                literals[s] = toLiterals(ranges[s]);
+        }
+    }
+
+    /**
+     * Compiles a glob pattern: '?' matches any char, '*' any sequence of chars (the empty one included), [abc] and [a-z] a char of
+     * the class, [!a-z] (or [^a-z]) a char out of it, and '\' escapes the next char. Any other char matches itself.
+     * @param glob the pattern
+     * @return the compiled pattern
+     * @throws IllegalArgumentException if the pattern is malformed
+     */
+    public static TriePattern glob(String glob) {
+        Builder builder = new Builder();
+        int[] fragment = builder.empty();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+            int[] next;
+            if (c == '?') {
+                next = builder.chars(NO_CHARS, true);
+            } else if (c == '*') {
+                next = builder.star(builder.chars(NO_CHARS, true));
+            } else if (c == '[') {
+                Parser parser = new Parser(glob, i, builder);
+                next = parser.charClass(true);
+                i = parser.position;
+            } else {
+                if (c == '\\') {
+                    if (i == glob.length())
+                        throw new IllegalArgumentException("Dangling escape at the end of the pattern: " + glob);
+                    c = glob.charAt(i++);
+                }
+                next = builder.chars(new char[] {c, c}, false);
+            }
+            fragment = builder.concat(fragment, next);
+        }
+        return builder.compile(glob, fragment);
+    }
+
+    /**
+     * Compiles a regular expression, matched against whole keys (as String.matches does). Supported: literals, '.', char classes
+     * ([abc], [a-z], [^a-z]), the escapes \d \w \s \D \W \S, groups ((...), (?:...)), alternation '|', and the quantifiers '*', '+', '?',
+     * {n}, {n,} and {n,m}. The anchors '^' at the start and '$' at the end are accepted, as the pattern is anchored anyway.
+     * @param regex the regular expression
+     * @return the compiled pattern
+     * @throws IllegalArgumentException if the expression is malformed or uses an unsupported construct (ex: back-references)
+     */
+    public static TriePattern regex(String regex) {
+        Builder builder = new Builder();
+        String body = regex;
+        if (body.startsWith("^"))
+            body = body.substring(1);
+        if (body.endsWith("$") && !body.endsWith("\\$"))
+            body = body.substring(0, body.length() - 1);
+        Parser parser = new Parser(body, 0, builder);
+        int[] fragment = parser.alternation();
+        if (parser.position < body.length())
+            throw parser.error("Unexpected '" + body.charAt(parser.position) + "'");
+        return builder.compile(regex, fragment);
+    }
+
+    /**
+     * @param key a key
+     * @return true if the whole key matches this pattern
+     */
+    public boolean matches(CharSequence key) {
+        Run run = newRun();
+        int[] states = new int[out1.length];
+        int[] next = new int[out1.length];
+        int count = run.start(states);
+        for (int i = 0; i < key.length() && count > 0; i++) {
+            int nextCount = run.step(states, count, key.charAt(i), next);
+            int[] swap = states;
+            states = next;
+            next = swap;
+            count = nextCount;
+        }
+        return run.accepts(states, count);
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    int getStatesCount() {
+        return out1.length;
+    }
+
+    /**
+     * @return a run of this automaton, holding the scratch space of its steps. A run is used by a single thread.
+     */
+    Run newRun() {
+        return new Run();
+    }
+
+    private boolean consumes(int state, char c) {
+        char[] r = ranges[state];
+        boolean in = false;
+        int low = 0, high = r.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (c < r[2 * mid])
+                high = mid - 1;
+            else if (c > r[2 * mid + 1])
+                low = mid + 1;
+            else {
+                in = true;
+                break;
+            }
+        }
+        return in != negated[state];
+    }
+
+    private static char[] toLiterals(char[] ranges) {
+        int count = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            count += ranges[i + 1] - ranges[i] + 1;
+            if (count > LOOKUP_LIMIT)
+                return null;
+        }
+        char[] chars = new char[count];
+        int n = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int c = ranges[i]; c <= ranges[i + 1]; c++)
+                chars[n++] = (char) c;
+        }
+        return chars;
+    }
+
+    /**
+     * The sets of states of a run of the automaton, kept in int arrays: the consuming states and the accepting state reached
+     * through the epsilon transitions.
+     */
+    final class Run {
+
+        private final int[] marks = new int[out1.length];
+        private final int[] stack = new int[out1.length];
+        private int generation;
+
+        /**
+         * writes the states reached from the start state into the array (of getStatesCount() length)
+         * @return the number of states
+         */
+        int start(int[] into) {
+            newGeneration();
+            return close(start, into, 0);
+        }
+
+        /**
+         * writes the states reached from the passed states by consuming the char
+         * @return the number of states
+         */
+        int step(int[] from, int count, char c, int[] into) {
+            newGeneration();
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int s = from[i];
+                if (ranges[s] != null && consumes(s, c))
+                    n = close(out1[s], into, n);
+            }
+            return n;
+        }
+
+        boolean accepts(int[] states, int count) {
+            for (int i = 0; i < count; i++) {
+                if (states[i] == accept)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return the sorted chars which can be consumed by the states, null if they are not a few literal chars
+         */
+        char[] literals(int[] states, int count) {
+            char[] result = null;
+            for (int i = 0; i < count; i++) {
+                int s = states[i];
+                if (ranges[s] == null)
+                    continue;
+                char[] chars = TriePattern.this.literals[s];
+                if (chars == null)
+                    return null;
+                result = result == null ? chars : merge(result, chars);
+                if (result.length > LOOKUP_LIMIT)
+                    return null;
+            }
+            return result == null ? NO_CHARS : result;
+        }
+
+        private char[] merge(char[] a, char[] b) {
+            char[] merged = new char[a.length + b.length];
+            int i = 0, j = 0, n = 0;
+            while (i < a.length || j < b.length) {
+                char c;
+                if (j == b.length || (i < a.length && a[i] < b[j]))
+                    c = a[i++];
+                else if (i == a.length || b[j] < a[i])
+                    c = b[j++];
+                else {
+                    c = a[i++];
+                    j++;
+                }
+                merged[n++] = c;
+            }
+            return n == merged.length ? merged : Arrays.copyOf(merged, n);
+        }
+
+        private void newGeneration() {
+            if (++generation == 0) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * adds the consuming and accepting states reachable from the state through epsilon transitions
+         */
+        private int close(int state, int[] into, int n) {
+            if (marks[state] == generation)
+                return n;
+            // the states are marked when pushed, so each one is pushed once at most
+            marks[state] = generation;
+            int top = 0;
+            stack[top++] = state;
+            while (top > 0) {
+                int s = stack[--top];
+                if (ranges[s] != null || s == accept) {
+                    into[n++] = s;
+                    continue;
+                }
+                int o = out2[s];
+                if (o >= 0 && marks[o] != generation) {
+                    marks[o] = generation;
+                    stack[top++] = o;
+                }
+                o = out1[s];
+                if (o >= 0 && marks[o] != generation) {
+                    marks[o] = generation;
+                    stack[top++] = o;
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Builds the automaton by fragments, a fragment being a pair of states {start, end} where the end is an epsilon state
+     * with no transition yet.
+     */
+    private static final class Builder {
+
+        private char[][] ranges = new char[16][];
+        private boolean[] negated = new boolean[16];
+        private int[] out1 = new int[16];
+        private int[] out2 = new int[16];
+        private int count;
+
+        private int newState(char[] chars, boolean negate) {
+            if (count == out1.length) {
+                int length = count * 2;
+                ranges = Arrays.copyOf(ranges, length);
+                negated = Arrays.copyOf(negated, length);
+                out1 = Arrays.copyOf(out1, length);
+                out2 = Arrays.copyOf(out2, length);
+            }
+            ranges[count] = chars;
+            negated[count] = negate;
+            out1[count] = -1;
+            out2[count] = -1;
+            return count++;
+        }
+
+        int[] empty() {
+            int s = newState(null, false);
+            return new int[] {s, s};
+        }
+
+        /**
+         * @param ranges sorted and merged ranges (low, high) of the chars matched
+         * @param negate true to match the chars out of the ranges
+         */
+        int[] chars(char[] ranges, boolean negate) {
+            int s = newState(ranges, negate);
+            int e = newState(null, false);
+            out1[s] = e;
+            return new int[] {s, e};
+        }
+
+        int[] concat(int[] a, int[] b) {
+            out1[a[1]] = b[0];
+            return new int[] {a[0], b[1]};
+        }
+
+        int[] alternate(int[] a, int[] b) {
+            int s = newState(null, false);
+            int e = newState(null, false);
+            out1[s] = a[0];
+            out2[s] = b[0];
+            out1[a[1]] = e;
+            out1[b[1]] = e;
+            return new int[] {s, e};
+        }
+
+        int[] star(int[] a) {
+            int s = newState(null, false);
+            int e = newState(null, false);
+            out1[s] = a[0];
+            out2[s] = e;
+            out1[a[1]] = a[0];
+            out2[a[1]] = e;
+            return new int[] {s, e};
+        }
+
+        int[] plus(int[] a) {
+            int e = newState(null, false);
+            out1[a[1]] = a[0];
+            out2[a[1]] = e;
+            return new int[] {a[0], e};
+        }
+
+        int[] optional(int[] a) {
+            int s = newState(null, false);
+            out1[s] = a[0];
+            out2[s] = a[1];
+            return new int[] {s, a[1]};
+        }
+
+        TriePattern compile(String pattern, int[] fragment) {
+            return new TriePattern(pattern, this, fragment[0], fragment[1]);
+        }
+    }
+
+    /**
+     * A recursive descent parser of regular expressions (and of the char classes of globs)
+     */
+    private static final class Parser {
+
+        private final String text;
+        private final Builder builder;
+        private int position;
+
+        Parser(String text, int position, Builder builder) {
+            this.text = text;
+            this.position = position;
+            this.builder = builder;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at index " + position + " of the pattern: " + text);
+        }
+
+        private boolean more() {
+            return position < text.length();
+        }
+
+        private char peek() {
+            return text.charAt(position);
+        }
+
+        int[] alternation() {
+            int[] fragment = concatenation();
+            while (more() && peek() == '|') {
+                position++;
+                fragment = builder.alternate(fragment, concatenation());
+            }
+            return fragment;
+        }
+
+        private int[] concatenation() {
+            int[] fragment = builder.empty();
+            while (more() && peek() != '|' && peek() != ')')
+                fragment = builder.concat(fragment, repetition());
+            return fragment;
+        }
+
+        private int[] repetition() {
+            int atomStart = position;
+            int[] fragment = atom();
+            int atomEnd = position;
+            while (more()) {
+                char c = peek();
+                if (c == '*') {
+                    position++;
+                    fragment = builder.star(fragment);
+                } else if (c == '+') {
+                    position++;
+                    fragment = builder.plus(fragment);
+                } else if (c == '?') {
+                    position++;
+                    fragment = builder.optional(fragment);
+                } else if (c == '{') {
+                    fragment = bounds(fragment, atomStart, atomEnd);
+                } else {
+                    break;
+                }
+                // a quantified atom quantified again is quantified as a whole, like (a*)?
+                atomEnd = position;
+            }
+            return fragment;
+        }
+
+        /**
+         * parses {n}, {n,} or {n,m} after an atom, the copies of the atom being built by parsing it again
+         */
+        private int[] bounds(int[] fragment, int atomStart, int atomEnd) {
+            position++;
+            int min = number();
+            int max = min;
+            if (more() && peek() == ',') {
+                position++;
+                max = more() && peek() != '}' ? number() : -1;
+            }
+            if (!more() || peek() != '}')
+                throw error("Unclosed repetition");
+            if (max >= 0 && max < min)
+                throw error("Invalid repetition bounds");
+            position++;
+
+            // the atom already parsed is the first copy
+            int[][] first = {fragment};
+            int[] result = builder.empty();
+            for (int i = 0; i < min; i++)
+                result = builder.concat(result, instance(first, atomStart, atomEnd));
+            if (max < 0) {
+                result = builder.concat(result, builder.star(instance(first, atomStart, atomEnd)));
+            } else {
+                for (int i = min; i < max; i++)
+                    result = builder.concat(result, builder.optional(instance(first, atomStart, atomEnd)));
+            }
+            return result;
+        }
+
+        private int[] instance(int[][] first, int atomStart, int atomEnd) {
+            int[] fragment = first[0];
+            if (fragment == null)
+                return copy(atomStart, atomEnd);
+            first[0] = null;
+            return fragment;
+        }
+
+        private int[] copy(int atomStart, int atomEnd) {
+            Parser parser = new Parser(text.substring(0, atomEnd), atomStart, builder);
+            return parser.repetitionOnly();
+        }
+
+        /**
+         * parses the atom and its quantifiers up to the end of the text
+         */
+        private int[] repetitionOnly() {
+            int[] fragment = repetition();
+            if (more())
+                throw error("Unexpected '" + peek() + "'");
+            return fragment;
+        }
+
+        private int number() {
+            int start = position;
+            while (more() && peek() >= '0' && peek() <= '9')
+                position++;
+            if (start == position || position - start > 6)
+                throw error("Invalid repetition bound");
+            return Integer.parseInt(text.substring(start, position));
+        }
+
+        private int[] atom() {
+            if (!more())
+                throw error("Missing atom");
+            char c = text.charAt(position++);
+            switch (c) {
+                case '(':
+                    if (text.startsWith("?:", position))
+                        position += 2;
+                    else if (more() && peek() == '?')
+                        throw error("Unsupported group construct");
+                    int[] group = alternation();
+                    if (!more() || peek() != ')')
+                        throw error("Unclosed group");
+                    position++;
+                    return group;
+                case '.':
+                    return builder.chars(NO_CHARS, true);
+                case '[':
+                    return charClass(false);
+                case '\\':
+                    return escape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                case ')':
+                    position--;
+                    throw error("Unexpected '" + c + "'");
+                case '^':
+                case '$':
+                    position--;
+                    throw error("Anchors are only supported at the ends of the pattern");
+                default:
+                    return builder.chars(new char[] {c, c}, false);
+            }
+        }
+
+        /**
+         * parses an escape, after the backslash
+         */
+        private int[] escape() {
+            return builder.chars(escapeRanges(), false);
+        }
+
+        /**
+         * @return the sorted ranges of the chars matched by an escape, after the backslash
+         */
+        private char[] escapeRanges() {
+            if (!more())
+                throw error("Dangling escape");
+            char c = text.charAt(position++);
+            switch (c) {
+                case 'd':
+                    return new char[] {'0', '9'};
+                case 'D':
+                    return complement(new char[] {'0', '9'});
+                case 's':
+                    return new char[] {'\t', '\r', ' ', ' '};
+                case 'S':
+                    return complement(new char[] {'\t', '\r', ' ', ' '});
+                case 'w':
+                    return new char[] {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+                case 'W':
+                    return complement(new char[] {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'});
+                case 't':
+                    return new char[] {'\t', '\t'};
+                case 'n':
+                    return new char[] {'\n', '\n'};
+                case 'r':
+                    return new char[] {'\r', '\r'};
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        position--;
+                        throw error("Unsupported escape \\" + c);
+                    }
+                    return new char[] {c, c};
+            }
+        }
+
+        /**
+         * parses a char class, after the opening bracket
+         * @param glob true for the classes of globs, negated by '!' (or '^')
+         */
+        int[] charClass(boolean glob) {
+            boolean negate = false;
+            if (more() && (peek() == '^' || (glob && peek() == '!'))) {
+                negate = true;
+                position++;
+            }
+            char[] ranges = new char[8];
+            int n = 0;
+            boolean first = true;
+            while (true) {
+                if (!more())
+                    throw error("Unclosed char class");
+                char c = text.charAt(position++);
+                if (c == ']' && !first)
+                    break;
+                first = false;
+                char[] r;
+                if (c == '\\') {
+                    r = escapeRanges();
+                } else if (more() && peek() == '-' && position + 1 < text.length() && text.charAt(position + 1) != ']') {
+                    position++;
+                    char high = text.charAt(position++);
+                    if (high == '\\') {
+                        char[] escaped = escapeRanges();
+                        if (escaped.length != 2 || escaped[0] != escaped[1])
+                            throw error("Invalid range");
+                        high = escaped[0];
+                    }
+                    if (high < c)
+                        throw error("Invalid range " + c + "-" + high);
+                    r = new char[] {c, high};
+                } else {
+                    r = new char[] {c, c};
+                }
+                if (n + r.length > ranges.length)
+                    ranges = Arrays.copyOf(ranges, (n + r.length) * 2);
+                System.arraycopy(r, 0, ranges, n, r.length);
+                n += r.length;
+            }
+            return builder.chars(normalize(ranges, n), negate);
+        }
+
+        /**
+         * @return the ranges sorted and merged
+         */
+        private static char[] normalize(char[] ranges, int n) {
+            int pairs = n / 2;
+            long[] packed = new long[pairs];
+            for (int i = 0; i < pairs; i++)
+                packed[i] = ((long) ranges[2 * i] << 16) | ranges[2 * i + 1];
+            Arrays.sort(packed);
+            char[] merged = new char[n];
+            int m = 0;
+            for (long p : packed) {
+                char low = (char) (p >>> 16);
+                char high = (char) p;
+                if (m > 0 && low <= merged[m - 1] + 1) {
+                    if (high > merged[m - 1])
+                        merged[m - 1] = high;
+                } else {
+                    merged[m++] = low;
+                    merged[m++] = high;
+                }
+            }
+            return Arrays.copyOf(merged, m);
+        }
+
+        /**
+         * @return the ranges of the chars out of the passed sorted ranges
+         */
+        private static char[] complement(char[] ranges) {
+            char[] result = new char[ranges.length + 2];
+            int n = 0;
+            int next = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > next) {
+                    result[n++] = (char) next;
+                    result[n++] = (char) (ranges[i] - 1);
+                }
+                next = ranges[i + 1] + 1;
+            }
+            if (next <= Character.MAX_VALUE) {
+                result[n++] = (char) next;
+                result[n++] = Character.MAX_VALUE;
+            }
+            return Arrays.copyOf(result, n);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.markety.trie;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator through the entries (or the values) of a sub-trie, which splits at child boundaries, so a trie can be processed
+ * by parallel streams.
+ * It holds a list of pending items, each one being a sub-trie or the single entry of a node. trySplit gives away the first half of
+ * the items (by number of entries, known from the entry counts of the nodes), or first replaces a single remaining sub-trie by the
+ * entry of its root and its children. The items are in lexicographic key order (the children of the nodes storing them in a hashmap
+ * are sorted when they are split), so the spliterator is ORDERED, and the counts make it SIZED and SUBSIZED as long as the trie is
+ * not modified.
+ * @param <T> Class type of the value stored in the trie
+ * @param <E> Class type of the elements: the entries or the values
+ */
+abstract class TrieSpliterator<T,E> implements Spliterator<E> {
+
+    private TrieNode<T>[] nodes;
+    private String[] keys;
+    /**
+     * false for the items standing for the single entry of their node, true for whole sub-tries
+     */
+    private boolean[] wholes;
+    private int index;
+    private int fence;
+    /**
+     * the traversal of the sub-trie being visited, null if none
+     */
+    private Iterator<E> current;
+    /**
+     * the exact number of entries left
+     */
+    private long remaining;
+
+    TrieSpliterator(TrieNode<T> node, String key) {
+        this(TrieNode.<T>newNodeArray(1), new String[] {key}, new boolean[] {true}, 0, 1, null, node.size());
+        nodes[0] = node;
+    }
+
+    TrieSpliterator(TrieNode<T>[] nodes, String[] keys, boolean[] wholes, int index, int fence, Iterator<E> current, long remaining) {
+        this.nodes = nodes;
+        this.keys = keys;
+        this.wholes = wholes;
+        this.index = index;
+        this.fence = fence;
+        this.current = current;
+        this.remaining = remaining;
+    }
+
+    /**
+     * @return an iterator through the elements of the sub-trie of the node
+     */
+    abstract Iterator<E> iterator(TrieNode<T> node, String key);
+
+    /**
+     * @return the element of the entry of the node
+     */
+    abstract E element(TrieNode<T> node, String key);
+
+    /**
+     * @return a spliterator of the same kind, through the passed items
+     */
+    abstract TrieSpliterator<T,E> split(TrieNode<T>[] nodes, String[] keys, boolean[] wholes, int index, int fence, Iterator<E> current, long remaining);
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        while (true) {
+            if (current != null) {
+                if (current.hasNext()) {
+                    remaining--;
+                    action.accept(current.next());
+                    return true;
+                }
+                current = null;
+            }
+            if (index >= fence)
+                return false;
+            TrieNode<T> node = nodes[index];
+            String key = keys[index];
+            boolean whole = wholes[index];
+            nodes[index++] = null;
+            if (whole) {
+                current = iterator(node, key);
+            } else if (node.getValue() != null) {
+                remaining--;
+                action.accept(element(node, key));
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+        if (current == null && fence - index == 1 && wholes[index])
+            expand();
+        int count = fence - index;
+        if (count < 2 && !(current != null && count == 1))
+            return null;
+
+        // the first items having about half of the entries go to the new spliterator, with the traversal in progress
+        long total = 0;
+        for (int i = index; i < fence; i++)
+            total += itemSize(i);
+        long currentSize = remaining - total;
+        long half = remaining / 2;
+        long prefix = currentSize;
+        int mid = index;
+        while (mid < fence - 1 && (mid == index && current == null || prefix + itemSize(mid) <= half))
+            prefix += itemSize(mid++);
+        TrieSpliterator<T,E> split = split(nodes, keys, wholes, index, mid, current, prefix);
+        this.index = mid;
+        this.current = null;
+        this.remaining -= prefix;
+        return split;
+    }
+
+    /**
+     * Replaces the single sub-trie to visit by the entry of its root and the sub-tries of its children
+     */
+    private void expand() {
+        TrieNode<T> node = nodes[index];
+        String key = keys[index];
+        int count = node.getChildsCount() + 1;
+        TrieNode<T>[] expandedNodes = TrieNode.newNodeArray(count);
+        String[] expandedKeys = new String[count];
+        boolean[] expandedWholes = new boolean[count];
+        expandedNodes[0] = node;
+        expandedKeys[0] = key;
+        int i = 1;
+        for (Iterator<TrieNode<T>> it = node.getSortedChildsIterator(); it.hasNext(); i++) {
+            TrieNode<T> child = it.next();
+            expandedNodes[i] = child;
+            expandedKeys[i] = key + child.getChar();
+            expandedWholes[i] = true;
+        }
+        // new arrays: the current ones may be shared with the spliterators split before
+        this.nodes = expandedNodes;
+        this.keys = expandedKeys;
+        this.wholes = expandedWholes;
+        this.index = 0;
+        this.fence = i;
+    }
+
+    private long itemSize(int i) {
+        if (wholes[i])
+            return nodes[i].size();
+        return nodes[i].getValue() != null ? 1 : 0;
+    }
+
+    @Override
+    public long estimateSize() {
+        return remaining;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+    }
+
+    /**
+     * Splits through the entries, whose setValue puts the value in the trie
+     */
+    static final class Entries<T> extends TrieSpliterator<T,Map.Entry<String,T>> {
+
+        private final BiFunction<String,T,T> writer;
+
+        /**
+         * @param node the root of the sub-trie
+         * @param key the key of the root
+         * @param writer called by Map.Entry.setValue with the key and the new value, to put it in the trie
+         */
+        Entries(TrieNode<T> node, String key, BiFunction<String,T,T> writer) {
+            super(node, key);
+            this.writer = writer;
+        }
+
+        private Entries(BiFunction<String,T,T> writer, TrieNode<T>[] nodes, String[] keys, boolean[] wholes, int index, int fence,
+                Iterator<Map.Entry<String,T>> current, long remaining) {
+            super(nodes, keys, wholes, index, fence, current, remaining);
+            this.writer = writer;
+        }
+
+        @Override
+        Iterator<Map.Entry<String,T>> iterator(TrieNode<T> node, String key) {
+            return node.newEntriesIterator(key, writer);
+        }
+
+        @Override
+        Map.Entry<String,T> element(TrieNode<T> node, String key) {
+            return node.newEntry(key, writer);
+        }
+
+        @Override
+        TrieSpliterator<T,Map.Entry<String,T>> split(TrieNode<T>[] nodes, String[] keys, boolean[] wholes, int index, int fence,
+                Iterator<Map.Entry<String,T>> current, long remaining) {
+            return new Entries<>(writer, nodes, keys, wholes, index, fence, current, remaining);
+        }
+    }
+
+    /**
+     * Splits through the values, without building the keys
+     */
+    static final class Values<T> extends TrieSpliterator<T,T> {
+
+        Values(TrieNode<T> node) {
+            super(node, "");
+        }
+
+        private Values(TrieNode<T>[] nodes, String[] keys, boolean[] wholes, int index, int fence, Iterator<T> current, long remaining) {
+            super(nodes, keys, wholes, index, fence, current, remaining);
+        }
+
+        @Override
+        Iterator<T> iterator(TrieNode<T> node, String key) {
+            return node.newValuesIterator();
+        }
+
+        @Override
+        T element(TrieNode<T> node, String key) {
+            return node.getValue();
+        }
+
+        @Override
+        TrieSpliterator<T,T> split(TrieNode<T>[] nodes, String[] keys, boolean[] wholes, int index, int fence, Iterator<T> current, long remaining) {
+            return new Values<>(nodes, keys, wholes, index, fence, current, remaining);
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.NONNULL | Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.markety.trie;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The shape of a trie at a point in time (TrieMap.getStatistics): its number of nodes and leaves, the nodes and the keys by depth,
+ * and for each way of storing the children of a node (the containers: hashmap, treemap, compact arrays, dense table, none for the
+ * leaves of the compact modes) the number of nodes using it, their average fan-out and the estimated bytes they retain.
+ * The random storage mode mixes hashmaps and treemaps, and the compact mode switches between arrays and dense tables by node, so the
+ * containers tell how a trie actually stores its nodes: ex, the hashmap nodes of a trie built with
+ * createTrieMapBalancingExecutionTimeAndMemory retaining most of its bytes for a low fan-out is a sign that compact arrays would fit.
+ * The statistics are computed by a walk of the trie, in O(number of nodes), and do not change afterwards.
+ */
+public final class TrieStatistics {
+
+    /**
+     * the containers of the children of the nodes
+     */
+    static final int CONTAINER_NONE = 0;
+    static final int CONTAINER_HASHMAP = 1;
+    static final int CONTAINER_TREEMAP = 2;
+    static final int CONTAINER_ARRAYS = 3;
+    static final int CONTAINER_DENSE_TABLE = 4;
+    private static final String[] CONTAINER_NAMES = {"none", "hashmap", "treemap", "arrays", "dense table"};
+
+    private final long time;
+    private final long entries;
+    private final long nodes;
+    private final long leaves;
+    /**
+     * the number of nodes, and of nodes holding a value, at each depth (the root at 0)
+     */
+    private final long[] nodesPerDepth;
+    private final long[] entriesPerDepth;
+    /**
+     * by container: the number of nodes, of children and the estimated bytes
+     */
+    private final long[] containerNodes;
+    private final long[] containerChilds;
+    private final long[] containerBytes;
+
+    private TrieStatistics(long entries, long nodes, long leaves, long[] nodesPerDepth, long[] entriesPerDepth, long[] containerNodes,
+            long[] containerChilds, long[] containerBytes) {
+        this.time = System.currentTimeMillis();
+        this.entries = entries;
+        this.nodes = nodes;
+        this.leaves = leaves;
+        this.nodesPerDepth = nodesPerDepth;
+        this.entriesPerDepth = entriesPerDepth;
+        this.containerNodes = containerNodes;
+        this.containerChilds = containerChilds;
+        this.containerBytes = containerBytes;
+    }
+
+    /**
+     * Walks a trie from its root
+     */
+    static TrieStatistics of(TrieNode<?> root) {
+        long entries = 0;
+        long nodes = 0;
+        long leaves = 0;
+        long[] nodesPerDepth = new long[16];
+        long[] entriesPerDepth = new long[16];
+        long[] containerNodes = new long[CONTAINER_NAMES.length];
+        long[] containerChilds = new long[CONTAINER_NAMES.length];
+        long[] containerBytes = new long[CONTAINER_NAMES.length];
+        int maxDepth = 0;
+
+        TrieNode<?>[] stack = new TrieNode<?>[16];
+        int[] depths = new int[16];
+        int top = 0;
+        stack[0] = root;
+        while (top >= 0) {
+            TrieNode<?> node = stack[top];
+            int depth = depths[top--];
+            if (depth == nodesPerDepth.length) {
+                nodesPerDepth = Arrays.copyOf(nodesPerDepth, depth * 2);
+                entriesPerDepth = Arrays.copyOf(entriesPerDepth, depth * 2);
+            }
+            maxDepth = Math.max(maxDepth, depth);
+            nodes++;
+            nodesPerDepth[depth]++;
+            if (node.getValue() != null) {
+                entries++;
+                entriesPerDepth[depth]++;
+            }
+            int container = node.getChildsContainer();
+            int count = node.getChildsCount();
+            containerNodes[container]++;
+            containerChilds[container] += count;
+            containerBytes[container] += node.estimateRetainedBytes();
+            if (count == 0) {
+                leaves++;
+                continue;
+            }
+            if (top + count >= stack.length) {
+                int length = Math.max(stack.length * 2, top + count + 1);
+                stack = Arrays.copyOf(stack, length);
+                depths = Arrays.copyOf(depths, length);
+            }
+            for (Iterator<? extends TrieNode<?>> it = node.getChildsIterator(); it.hasNext();) {
+                stack[++top] = it.next();
+                depths[top] = depth + 1;
+            }
+        }
+        return new TrieStatistics(entries, nodes, leaves, Arrays.copyOf(nodesPerDepth, maxDepth + 1),
+                Arrays.copyOf(entriesPerDepth, maxDepth + 1), containerNodes, containerChilds, containerBytes);
+    }
+
+    /**
+     * @return the time the statistics were computed at, in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of keys
+     */
+    public long getEntriesCount() {
+        return entries;
+    }
+
+    /**
+     * @return the number of nodes, the root included
+     */
+    public long getNodesCount() {
+        return nodes;
+    }
+
+    /**
+     * @return the number of nodes without children
+     */
+    public long getLeavesCount() {
+        return leaves;
+    }
+
+    /**
+     * @return the depth of the deepest node (the length of the longest key)
+     */
+    public int getMaxDepth() {
+        return nodesPerDepth.length - 1;
+    }
+
+    /**
+     * @return the average depth of the nodes holding a value (the average length of the keys)
+     */
+    public double getAverageDepth() {
+        long sum = 0;
+        for (int depth = 0; depth < entriesPerDepth.length; depth++)
+            sum += depth * entriesPerDepth[depth];
+        return entries == 0 ? 0 : (double) sum / entries;
+    }
+
+    /**
+     * @return the number of nodes at each depth, the root at 0
+     */
+    public long[] getNodesPerDepth() {
+        return nodesPerDepth.clone();
+    }
+
+    /**
+     * @return the number of keys of each length
+     */
+    public long[] getEntriesPerDepth() {
+        return entriesPerDepth.clone();
+    }
+
+    /**
+     * @return the number of nodes storing their children in each container
+     */
+    public Map<String,Long> getNodesPerContainer() {
+        return byContainer(containerNodes);
+    }
+
+    /**
+     * @return the average number of children of the nodes using each container (the containers used by no node are left out)
+     */
+    public Map<String,Double> getAverageFanOutPerContainer() {
+        Map<String,Double> map = new LinkedHashMap<>();
+        for (int container = 0; container < CONTAINER_NAMES.length; container++) {
+            if (containerNodes[container] > 0)
+                map.put(CONTAINER_NAMES[container], (double) containerChilds[container] / containerNodes[container]);
+        }
+        return map;
+    }
+
+    /**
+     * @return the estimated bytes retained by the nodes using each container and by their containers (see getEstimatedBytes)
+     */
+    public Map<String,Long> getEstimatedBytesPerContainer() {
+        return byContainer(containerBytes);
+    }
+
+    /**
+     * @return the estimated bytes retained by the nodes of the trie, the values apart, on a 64-bit JVM with compressed references
+     */
+    public long getEstimatedBytes() {
+        long bytes = 0;
+        for (long b : containerBytes)
+            bytes += b;
+        return bytes;
+    }
+
+    private Map<String,Long> byContainer(long[] counts) {
+        Map<String,Long> map = new LinkedHashMap<>();
+        for (int container = 0; container < CONTAINER_NAMES.length; container++) {
+            if (containerNodes[container] > 0)
+                map.put(CONTAINER_NAMES[container], counts[container]);
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "entries=" + entries + ", nodes=" + nodes + ", leaves=" + leaves + ", maxDepth=" + getMaxDepth()
+                + ", averageDepth=" + getAverageDepth() + ", nodesPerContainer=" + getNodesPerContainer()
+                + ", averageFanOut=" + getAverageFanOutPerContainer() + ", estimatedBytes=" + getEstimatedBytesPerContainer();
+    }
+}
@@ -0,0 +1,580 @@
+package com.markety.trie;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * A view of the entries of a TrieMap whose keys are in a range, in ascending or descending order (TrieMap.subMap, headMap, tailMap,
+ * descendingMap). It keeps no entry: the navigation methods work on the ranks of the keys (TrieMap.rank and select), the bounds being
+ * turned into the range of ranks [lowRank, highRank), so they cost O(key length * children per node) like on the trie. The ascending
+ * iterators seek the lower bound and walk the trie, the descending ones find each entry by its rank.
+ * @param <T> Class type of the values
+ */
+final class TrieSubMap<T> extends AbstractMap<String,T> implements NavigableMap<String,T> {
+
+    private final TrieMap<T> trie;
+    /**
+     * the bounds, null for no bound
+     */
+    private final String low;
+    private final boolean lowInclusive;
+    private final String high;
+    private final boolean highInclusive;
+    private final boolean descending;
+
+    TrieSubMap(TrieMap<T> trie, String low, boolean lowInclusive, String high, boolean highInclusive, boolean descending) {
+        this.trie = trie;
+        this.low = low;
+        this.lowInclusive = lowInclusive;
+        this.high = high;
+        this.highInclusive = highInclusive;
+        this.descending = descending;
+    }
+
+    //================================BOUNDS====================================
+
+    private boolean tooLow(String key) {
+        if (low == null)
+            return false;
+        int c = key.compareTo(low);
+        return c < 0 || (c == 0 && !lowInclusive);
+    }
+
+    private boolean tooHigh(String key) {
+        if (high == null)
+            return false;
+        int c = key.compareTo(high);
+        return c > 0 || (c == 0 && !highInclusive);
+    }
+
+    private boolean inRange(Object key) {
+        return key instanceof String && !tooLow((String) key) && !tooHigh((String) key);
+    }
+
+    /**
+     * @return true if a bound of a sub-map of this map is in the range of this map
+     */
+    private boolean inBounds(String key, boolean inclusive) {
+        if (low != null) {
+            int c = key.compareTo(low);
+            if (c < 0 || (c == 0 && !lowInclusive && inclusive))
+                return false;
+        }
+        if (high != null) {
+            int c = key.compareTo(high);
+            if (c > 0 || (c == 0 && !highInclusive && inclusive))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the rank of the first key in the range
+     */
+    private int lowRank() {
+        return low == null ? 0 : trie.rank(low, !lowInclusive);
+    }
+
+    /**
+     * @return the rank after the last key in the range
+     */
+    private int highRank() {
+        return high == null ? trie.size() : trie.rank(high, highInclusive);
+    }
+
+    //================================RANKS IN ASCENDING ORDER==================
+    // each returns the rank of the key found, -1 if none
+
+    private int lowest() {
+        int rank = lowRank();
+        return rank < highRank() ? rank : -1;
+    }
+
+    private int highest() {
+        int rank = highRank() - 1;
+        return rank >= lowRank() ? rank : -1;
+    }
+
+    private int ceiling(String key, boolean inclusive) {
+        if (tooLow(key))
+            return lowest();
+        int rank = trie.rank(key, !inclusive);
+        return rank < highRank() ? rank : -1;
+    }
+
+    private int floor(String key, boolean inclusive) {
+        if (tooHigh(key))
+            return highest();
+        int rank = trie.rank(key, inclusive) - 1;
+        return rank >= lowRank() ? rank : -1;
+    }
+
+    private String key(int rank) {
+        return rank < 0 ? null : trie.select(rank);
+    }
+
+    private Map.Entry<String,T> entry(int rank) {
+        return rank < 0 ? null : trie.entryAt(rank);
+    }
+
+    //================================MAP METHODS===============================
+
+    @Override
+    public int size() {
+        return Math.max(0, highRank() - lowRank());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return lowest() < 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return inRange(key) && trie.containsKey(key);
+    }
+
+    @Override
+    public T get(Object key) {
+        return inRange(key) ? trie.get(key) : null;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key is out of the range of this map
+     */
+    @Override
+    public T put(String key, T value) {
+        if (!inRange(key))
+            throw new IllegalArgumentException("key out of range");
+        return trie.put(key, value);
+    }
+
+    @Override
+    public T remove(Object key) {
+        return inRange(key) ? trie.remove(key) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String,T>> entrySet() {
+        return new AbstractSet<Map.Entry<String,T>>() {
+            @Override
+            public Iterator<Map.Entry<String,T>> iterator() {
+                return descending ? new DescendingIterator() : new AscendingIterator();
+            }
+
+            @Override
+            public int size() {
+                return TrieSubMap.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (o instanceof Map.Entry == false)
+                    return false;
+                Map.Entry<?,?> entry = (Map.Entry<?,?>) o;
+                T value = get(entry.getKey());
+                return value != null && value.equals(entry.getValue());
+            }
+        };
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return navigableKeySet();
+    }
+
+    //================================NAVIGATION================================
+
+    @Override
+    public Comparator<? super String> comparator() {
+        return descending ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public Map.Entry<String,T> firstEntry() {
+        return entry(descending ? highest() : lowest());
+    }
+
+    @Override
+    public Map.Entry<String,T> lastEntry() {
+        return entry(descending ? lowest() : highest());
+    }
+
+    @Override
+    public String firstKey() {
+        String key = key(descending ? highest() : lowest());
+        if (key == null)
+            throw new NoSuchElementException();
+        return key;
+    }
+
+    @Override
+    public String lastKey() {
+        String key = key(descending ? lowest() : highest());
+        if (key == null)
+            throw new NoSuchElementException();
+        return key;
+    }
+
+    @Override
+    public Map.Entry<String,T> pollFirstEntry() {
+        Map.Entry<String,T> entry = firstEntry();
+        if (entry != null)
+            trie.remove(entry.getKey());
+        return entry;
+    }
+
+    @Override
+    public Map.Entry<String,T> pollLastEntry() {
+        Map.Entry<String,T> entry = lastEntry();
+        if (entry != null)
+            trie.remove(entry.getKey());
+        return entry;
+    }
+
+    @Override
+    public Map.Entry<String,T> lowerEntry(String key) {
+        return entry(descending ? ceiling(key, false) : floor(key, false));
+    }
+
+    @Override
+    public String lowerKey(String key) {
+        return key(descending ? ceiling(key, false) : floor(key, false));
+    }
+
+    @Override
+    public Map.Entry<String,T> floorEntry(String key) {
+        return entry(descending ? ceiling(key, true) : floor(key, true));
+    }
+
+    @Override
+    public String floorKey(String key) {
+        return key(descending ? ceiling(key, true) : floor(key, true));
+    }
+
+    @Override
+    public Map.Entry<String,T> ceilingEntry(String key) {
+        return entry(descending ? floor(key, true) : ceiling(key, true));
+    }
+
+    @Override
+    public String ceilingKey(String key) {
+        return key(descending ? floor(key, true) : ceiling(key, true));
+    }
+
+    @Override
+    public Map.Entry<String,T> higherEntry(String key) {
+        return entry(descending ? floor(key, false) : ceiling(key, false));
+    }
+
+    @Override
+    public String higherKey(String key) {
+        return key(descending ? floor(key, false) : ceiling(key, false));
+    }
+
+    @Override
+    public NavigableMap<String,T> descendingMap() {
+        return new TrieSubMap<>(trie, low, lowInclusive, high, highInclusive, !descending);
+    }
+
+    @Override
+    public NavigableSet<String> navigableKeySet() {
+        return new KeySetView(this);
+    }
+
+    @Override
+    public NavigableSet<String> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public NavigableMap<String,T> subMap(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+        checkBound(fromKey, fromInclusive);
+        checkBound(toKey, toInclusive);
+        if (descending) {
+            if (fromKey.compareTo(toKey) < 0)
+                throw new IllegalArgumentException("fromKey < toKey");
+            return new TrieSubMap<>(trie, toKey, toInclusive, fromKey, fromInclusive, true);
+        }
+        if (fromKey.compareTo(toKey) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        return new TrieSubMap<>(trie, fromKey, fromInclusive, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<String,T> headMap(String toKey, boolean inclusive) {
+        checkBound(toKey, inclusive);
+        if (descending)
+            return new TrieSubMap<>(trie, toKey, inclusive, high, highInclusive, true);
+        return new TrieSubMap<>(trie, low, lowInclusive, toKey, inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<String,T> tailMap(String fromKey, boolean inclusive) {
+        checkBound(fromKey, inclusive);
+        if (descending)
+            return new TrieSubMap<>(trie, low, lowInclusive, fromKey, inclusive, true);
+        return new TrieSubMap<>(trie, fromKey, inclusive, high, highInclusive, false);
+    }
+
+    @Override
+    public SortedMap<String,T> subMap(String fromKey, String toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<String,T> headMap(String toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<String,T> tailMap(String fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bound of a view of this map is out of the range of this map
+     */
+    private void checkBound(String key, boolean inclusive) {
+        if (!inBounds(Objects.requireNonNull(key), inclusive))
+            throw new IllegalArgumentException("key out of range");
+    }
+
+    //================================ITERATORS=================================
+
+    /**
+     * Walks the trie from the lower bound, until the upper bound
+     */
+    private class AscendingIterator implements Iterator<Map.Entry<String,T>> {
+
+        private final TrieMap<T>.EntryIterator it = trie.entryIterator(low == null ? "" : low, low == null || lowInclusive);
+        /**
+         * the entry read ahead by hasNext, and the last entry returned
+         */
+        private Map.Entry<String,T> next;
+        private Map.Entry<String,T> last;
+        private boolean done;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done && it.hasNext()) {
+                next = it.next();
+                if (tooHigh(next.getKey()))
+                    next = null;
+            }
+            done = next == null;
+            return !done;
+        }
+
+        @Override
+        public Map.Entry<String,T> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            last = next;
+            next = null;
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null)
+                throw new IllegalStateException();
+            if (next == null && !done)
+                it.remove();
+            else
+                it.remove(last.getKey());
+            last = null;
+        }
+    }
+
+    /**
+     * Finds each entry by its rank, from the upper bound down to the lower bound
+     */
+    private class DescendingIterator implements Iterator<Map.Entry<String,T>> {
+
+        private int rank = highRank() - 1;
+        private final int lowRank = lowRank();
+        private Map.Entry<String,T> last;
+
+        @Override
+        public boolean hasNext() {
+            return rank >= lowRank;
+        }
+
+        @Override
+        public Map.Entry<String,T> next() {
+            if (rank < lowRank)
+                throw new NoSuchElementException();
+            last = trie.entryAt(rank--);
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null)
+                throw new IllegalStateException();
+            // the ranks of the entries still to visit are lower, so they do not change
+            trie.remove(last.getKey());
+            last = null;
+        }
+    }
+
+    /**
+     * A view of the keys of a navigable map, in its order
+     */
+    static final class KeySetView extends AbstractSet<String> implements NavigableSet<String> {
+
+        private final NavigableMap<String,?> map;
+
+        KeySetView(NavigableMap<String,?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            final Iterator<? extends Map.Entry<String,?>> it = map.entrySet().iterator();
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return it.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!map.containsKey(o))
+                return false;
+            map.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public Comparator<? super String> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public String first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public String last() {
+            return map.lastKey();
+        }
+
+        @Override
+        public String lower(String e) {
+            return map.lowerKey(e);
+        }
+
+        @Override
+        public String floor(String e) {
+            return map.floorKey(e);
+        }
+
+        @Override
+        public String ceiling(String e) {
+            return map.ceilingKey(e);
+        }
+
+        @Override
+        public String higher(String e) {
+            return map.higherKey(e);
+        }
+
+        @Override
+        public String pollFirst() {
+            Map.Entry<String,?> entry = map.pollFirstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public String pollLast() {
+            Map.Entry<String,?> entry = map.pollLastEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public NavigableSet<String> descendingSet() {
+            return new KeySetView(map.descendingMap());
+        }
+
+        @Override
+        public Iterator<String> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<String> subSet(String fromElement, boolean fromInclusive, String toElement, boolean toInclusive) {
+            return new KeySetView(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<String> headSet(String toElement, boolean inclusive) {
+            return new KeySetView(map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<String> tailSet(String fromElement, boolean inclusive) {
+            return new KeySetView(map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<String> subSet(String fromElement, String toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<String> headSet(String toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<String> tailSet(String fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.markety.trie;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts the values of a trie to bytes and back, to write a trie to a file and read its values from the mapped file (see MappedTrieMap).
+ * @param <T> Class type of the values
+ */
+public interface TrieValueCodec<T> {
+
+    /**
+     * @param value the value to encode, not null
+     * @return the bytes of the value
+     */
+    byte[] encode(T value);
+
+    /**
+     * Decodes a value. The buffer is shared by all the readers of a mapped trie, so it must only be read with absolute gets
+     * (its position and limit must not be changed).
+     * @param buffer the buffer holding the bytes of the value
+     * @param offset the index of the first byte of the value
+     * @param length the number of bytes of the value
+     * @return the value
+     */
+    T decode(ByteBuffer buffer, int offset, int length);
+
+    /**
+     * encodes strings in UTF-8
+     */
+    TrieValueCodec<String> STRINGS = new TrieValueCodec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer, int offset, int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = buffer.get(offset + i);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * encodes integers on 4 bytes
+     */
+    TrieValueCodec<Integer> INTEGERS = new TrieValueCodec<Integer>() {
+        @Override
+        public byte[] encode(Integer value) {
+            return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getInt(offset);
+        }
+    };
+
+    /**
+     * encodes longs on 8 bytes
+     */
+    TrieValueCodec<Long> LONGS = new TrieValueCodec<Long>() {
+        @Override
+        public byte[] encode(Long value) {
+            return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+        }
+
+        @Override
+        public Long decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getLong(offset);
+        }
+    };
+
+    /**
+     * encodes booleans on 1 byte
+     */
+    TrieValueCodec<Boolean> BOOLEANS = new TrieValueCodec<Boolean>() {
+        @Override
+        public byte[] encode(Boolean value) {
+            return new byte[] { (byte) (value ? 1 : 0) };
+        }
+
+        @Override
+        public Boolean decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.get(offset) != 0;
+        }
+    };
+}
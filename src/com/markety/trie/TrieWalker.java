@@ -0,0 +1,204 @@
+package com.markety.trie;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates in lexicographic order through the nodes holding a value in a sub-trie of the maps extending AbstractTrieMap, keeping
+ * the DFS frames in int arrays and the path in a single char array. A key String is built only for the nodes holding a value.
+ * The walk is shared: a map only keeps its nodes per depth and enumerates their children with cursors, whose meaning is its own
+ * (an index in a children array, a node offset, a sibling link..).
+ * @param <E> the type of the iterated elements
+ */
+abstract class TrieWalker<E> implements Iterator<E> {
+
+    /**
+     * the cursor past the last child of a node
+     */
+    static final int END = -1;
+    /**
+     * the initial capacity of the arrays of the frames, grown by grow(length)
+     */
+    static final int INITIAL_DEPTH = 16;
+    /**
+     * the cursor of a frame whose node was not visited yet
+     */
+    private static final int UNVISITED = -2;
+
+    /**
+     * the cursor of the next child to visit at each depth
+     */
+    private int[] cursors = new int[INITIAL_DEPTH];
+    /**
+     * the length of the key of the node at each depth
+     */
+    private int[] pathLengths = new int[INITIAL_DEPTH];
+    private char[] path;
+    private int depth = 0;
+    private boolean started;
+    String nextKey;
+    private String lastKey;
+
+    /**
+     * The node to walk is stored by the subclass as its node at depth 0; the walk starts with the first call to hasNext or next.
+     * @param base the key of the node to walk
+     */
+    TrieWalker(String base) {
+        path = Arrays.copyOf(base.toCharArray(), base.length() + INITIAL_DEPTH);
+        pathLengths[0] = base.length();
+        cursors[0] = UNVISITED;
+    }
+
+    /**
+     * @param depth the depth of a node
+     * @return the cursor of the first child of the node, END if it has none
+     */
+    abstract int firstCursor(int depth);
+
+    /**
+     * @param depth the depth of a node
+     * @param cursor the cursor of a child of the node
+     * @return the cursor of the child following it, END if it is the last one
+     */
+    abstract int nextCursor(int depth, int cursor);
+
+    /**
+     * Stores the child of the node at depth - 1 found at the cursor as the node at depth, and appends its label with appendLabel
+     */
+    abstract void pushChild(int depth, int cursor);
+
+    /**
+     * Called once per node, after firstCursor
+     * @return true if the node at depth holds a value, its entry being the next element
+     */
+    abstract boolean visit(int depth);
+
+    /**
+     * @return the element of the node just visited, whose key is nextKey
+     */
+    abstract E current();
+
+    /**
+     * Grows the arrays keeping the nodes per depth to length
+     */
+    abstract void grow(int length);
+
+    /**
+     * Called when the walk leaves the node at depth, to release it
+     */
+    void pop(int depth) {
+    }
+
+    /**
+     * Removes the key returned last by next from the map, for Iterator.remove
+     * @throws UnsupportedOperationException if the map is read-only
+     */
+    void removeKey(String key) {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * @return the number of keys of the walked sub-trie, -1 if unknown
+     */
+    long size() {
+        return -1;
+    }
+
+    final void appendLabel(char label) {
+        int length = pathLengths[depth];
+        if (length == path.length)
+            path = Arrays.copyOf(path, length * 2);
+        path[length] = label;
+        pathLengths[depth] = length + 1;
+    }
+
+    final void appendLabel(char[] label) {
+        int length = pathLengths[depth];
+        if (length + label.length > path.length)
+            path = Arrays.copyOf(path, Math.max(path.length * 2, length + label.length));
+        System.arraycopy(label, 0, path, length, label.length);
+        pathLengths[depth] = length + label.length;
+    }
+
+    /**
+     * @return the depth of the node of nextKey
+     */
+    final int depth() {
+        return depth;
+    }
+
+    /**
+     * Sets the cursor of the next child to visit of a node of the path, once its children were changed by removeKey
+     */
+    final void resetCursor(int depth, int cursor) {
+        cursors[depth] = cursor;
+    }
+
+    /**
+     * Drops the frame of the node at depth + 1 of the path, which removeKey merged into its parent at depth: the parent takes the
+     * cursor and the key length of the merged node, and the deeper frames move up by one
+     */
+    final void mergeFrames(int depth) {
+        for (int d = depth; d < this.depth; d++) {
+            cursors[d] = cursors[d + 1];
+            pathLengths[d] = pathLengths[d + 1];
+        }
+        this.depth--;
+    }
+
+    private void findNext() {
+        while (depth >= 0) {
+            int cursor = cursors[depth];
+            if (cursor == UNVISITED) {
+                cursor = firstCursor(depth);
+                cursors[depth] = cursor;
+                if (visit(depth)) {
+                    nextKey = new String(path, 0, pathLengths[depth]);
+                    return;
+                }
+            }
+            if (cursor != END) {
+                cursors[depth] = nextCursor(depth, cursor);
+                if (++depth == cursors.length) {
+                    cursors = Arrays.copyOf(cursors, depth * 2);
+                    pathLengths = Arrays.copyOf(pathLengths, depth * 2);
+                    grow(depth * 2);
+                }
+                cursors[depth] = UNVISITED;
+                pathLengths[depth] = pathLengths[depth - 1];
+                pushChild(depth, cursor);
+            } else {
+                pop(depth--);
+            }
+        }
+        nextKey = null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!started) {
+            started = true;
+            findNext();
+        }
+        return nextKey != null;
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        E next = current();
+        lastKey = nextKey;
+        findNext();
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        if (lastKey == null)
+            throw new IllegalStateException();
+        removeKey(lastKey);
+        lastKey = null;
+    }
+}
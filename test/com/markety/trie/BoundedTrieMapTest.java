@@ -0,0 +1,151 @@
+package com.markety.trie;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BoundedTrieMapTest {
+
+    @Test
+    public void testLruEvictsTheEntriesNotReadSinceTheLastPass() {
+        BoundedTrieMap<Integer> cache = TrieFactory.createBoundedTrieMap(3);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+
+        cache.put("d", 4);
+        assertEquals(3, cache.size());
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+        assertEquals(Integer.valueOf(4), cache.get("d"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testLruSparesTheEntryJustPut() {
+        BoundedTrieMap<Integer> cache = TrieFactory.createBoundedTrieMap(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.get("b");
+
+        cache.put("c", 3);
+        assertEquals(2, cache.size());
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+
+    @Test
+    public void testLfuEvictsTheEntriesReadLeast() {
+        BoundedTrieMap<Integer> cache = TrieFactory.createBoundedTrieMap(3, Long.MAX_VALUE, BoundedTrieMap.EvictionPolicy.LFU, 0,
+                TimeUnit.SECONDS);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        for (int i = 0; i < 3; i++)
+            cache.get("a");
+        cache.get("b");
+
+        cache.put("d", 4);
+        assertNull(cache.get("c"));
+        cache.put("e", 5);
+        assertNull(cache.get("d"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertEquals(Integer.valueOf(2), cache.get("b"));
+    }
+
+    @Test
+    public void testExpiredEntriesAreNotReturned() throws InterruptedException {
+        BoundedTrieMap<Integer> cache = TrieFactory.createBoundedTrieMap(10);
+        cache.put("a", 1, 10, TimeUnit.MILLISECONDS);
+        cache.put("b", 2);
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+
+        Thread.sleep(30);
+        assertNull(cache.get("a"));
+        assertFalse(cache.containsKey("a"));
+        assertNull(cache.remove("a"));
+        assertNull(cache.put("a", 3));
+        assertEquals(Integer.valueOf(2), cache.get("b"));
+    }
+
+    @Test
+    public void testDefaultTimeToLive() throws InterruptedException {
+        BoundedTrieMap<Integer> cache = TrieFactory.createBoundedTrieMap(10, Long.MAX_VALUE, BoundedTrieMap.EvictionPolicy.LRU, 10,
+                TimeUnit.MILLISECONDS);
+        cache.put("a", 1);
+        cache.put("b", 2, 0, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(30);
+        assertNull(cache.get("a"));
+        assertEquals(Integer.valueOf(2), cache.get("b"));
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testExpiredEntriesAreEvictedBeforeTheUnreadOnes() throws InterruptedException {
+        BoundedTrieMap<Integer> cache = TrieFactory.createBoundedTrieMap(2);
+        cache.put("a", 1, 10, TimeUnit.MILLISECONDS);
+        cache.put("b", 2);
+        cache.get("a");
+
+        Thread.sleep(30);
+        cache.put("c", 3);
+        assertEquals(2, cache.size());
+        assertEquals(Integer.valueOf(2), cache.get("b"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+
+    @Test
+    public void testInvalidatePrefix() {
+        BoundedTrieMap<Integer> cache = TrieFactory.createBoundedTrieMap(4);
+        cache.put("/users/1", 1);
+        cache.put("/users/2", 2);
+        cache.put("/groups/1", 3);
+
+        assertEquals(2, cache.invalidatePrefix("/users/"));
+        assertEquals(1, cache.size());
+        assertNull(cache.get("/users/1"));
+        assertTrue(cache.getKeysStartingWith("/users/").isEmpty());
+        assertEquals(0, cache.invalidatePrefix("/users/"));
+
+        // the invalidated entries leave the clock without being counted as evictions
+        for (int i = 0; i < 4; i++)
+            cache.put("/items/" + i, i);
+        assertEquals(4, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testSnapshotIsADetachedReadOnlyCopy() throws InterruptedException {
+        BoundedTrieMap<Integer> cache = TrieFactory.createBoundedTrieMap(10);
+        cache.put("a", 1);
+        cache.put("b", 2, 10, TimeUnit.MILLISECONDS);
+        cache.put("c/1", 3);
+        cache.invalidatePrefix("c/");
+        Thread.sleep(30);
+
+        TrieMap<Integer> snapshot = cache.snapshot();
+        assertEquals(1, snapshot.size());
+        assertEquals(Integer.valueOf(1), snapshot.get("a"));
+
+        cache.put("d", 4);
+        cache.remove("a");
+        assertEquals(1, snapshot.size());
+        assertEquals(Integer.valueOf(1), snapshot.get("a"));
+        try {
+            snapshot.put("e", 5);
+            fail("the snapshot is read-only");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBoundsMustBePositive() {
+        TrieFactory.createBoundedTrieMap(0);
+    }
+}
@@ -0,0 +1,164 @@
+package com.markety.trie;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConcurrentTrieMapTest {
+
+    private static final int THREADS = 4;
+    private static final int KEYS = 2000;
+
+    /**
+     * Runs the tasks together, from a latch, and rethrows their failures
+     */
+    private static <R> List<R> runConcurrently(List<Callable<R>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<R>> futures = new ArrayList<>();
+            for (Callable<R> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            List<R> results = new ArrayList<>();
+            for (Future<R> future : futures)
+                results.add(future.get(60, TimeUnit.SECONDS));
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String key(Random random) {
+        // short keys over a small alphabet, so the threads share prefixes and keys
+        StringBuilder key = new StringBuilder();
+        for (int length = 1 + random.nextInt(6); length > 0; length--)
+            key.append((char) ('a' + random.nextInt(3)));
+        return key.toString();
+    }
+
+    @Test
+    public void testConcurrentPutsAndRemovesOfDistinctKeys() throws Exception {
+        ConcurrentTrieMap<Integer> trie = TrieFactory.createConcurrentTrieMap();
+        List<Callable<Map<String,Integer>>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(() -> {
+                Map<String,Integer> expected = new HashMap<>();
+                Random random = new Random(thread);
+                for (int i = 0; i < 20 * KEYS; i++) {
+                    // each thread owns the keys ending with its number, their prefixes are shared
+                    String key = key(random) + thread;
+                    if (random.nextBoolean()) {
+                        assertEquals(expected.put(key, i), trie.put(key, i));
+                    } else {
+                        assertEquals(expected.remove(key), trie.remove(key));
+                    }
+                }
+                return expected;
+            });
+        }
+
+        Map<String,Integer> expected = new HashMap<>();
+        for (Map<String,Integer> entries : runConcurrently(tasks))
+            expected.putAll(entries);
+        assertEquals(expected.size(), trie.size());
+        assertEquals(expected, new HashMap<>(trie));
+        for (String key : expected.keySet())
+            assertEquals(expected.get(key), trie.get(key));
+    }
+
+    @Test
+    public void testConcurrentPutIfAbsentAndConditionalRemoveOfSharedKeys() throws Exception {
+        ConcurrentTrieMap<Integer> trie = TrieFactory.createConcurrentTrieMap();
+        AtomicInteger[] balances = new AtomicInteger[THREADS];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            balances[t] = new AtomicInteger();
+            tasks.add(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < 20 * KEYS; i++) {
+                    String key = key(random);
+                    // a thread only removes the entries it put, so the entries left are the ones it put and did not remove
+                    if (random.nextBoolean()) {
+                        if (trie.putIfAbsent(key, thread) == null)
+                            balances[thread].incrementAndGet();
+                    } else if (trie.remove(key, thread)) {
+                        balances[thread].decrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks);
+
+        int[] counts = new int[THREADS];
+        for (Integer owner : trie.values())
+            counts[owner]++;
+        int size = 0;
+        for (int t = 0; t < THREADS; t++) {
+            assertEquals(balances[t].get(), counts[t]);
+            size += counts[t];
+        }
+        assertEquals(size, trie.size());
+    }
+
+    @Test
+    public void testRemovePrunesTheEmptiedNodes() throws Exception {
+        ConcurrentTrieMap<Integer> trie = TrieFactory.createConcurrentTrieMap();
+        trie.put("abc", 1);
+        trie.put("abd", 2);
+        trie.put("x", 3);
+
+        trie.remove("abc");
+        assertNotNull(trie.root.state.find('a').state.find('b').state.find('d'));
+        assertNull(trie.root.state.find('a').state.find('b').state.find('c'));
+        trie.remove("abd");
+        assertNull(trie.root.state.find('a'));
+        trie.remove("x");
+        assertTrue(trie.root.state.isEmpty());
+        assertTrue(trie.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentRemovesPruneAllTheNodes() throws Exception {
+        ConcurrentTrieMap<Integer> trie = TrieFactory.createConcurrentTrieMap();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < 20 * KEYS; i++) {
+                    String key = key(random);
+                    if (random.nextBoolean())
+                        trie.put(key, i);
+                    else
+                        trie.remove(key);
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks);
+
+        for (String key : new ArrayList<>(trie.keySet()))
+            trie.remove(key);
+        assertEquals(0, trie.size());
+        assertTrue(trie.root.state.isEmpty());
+    }
+}
@@ -0,0 +1,91 @@
+package com.markety.trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DoubleArrayTrieMapTest {
+
+    private static DoubleArrayTrieMap<Integer> trie(String... keys) {
+        DoubleArrayTrieMap<Integer> trie = new DoubleArrayTrieMap<>();
+        for (int i = 0; i < keys.length; i++)
+            trie.put(keys[i], i);
+        return trie;
+    }
+
+    @Test
+    public void testRemoveWhileIterating() {
+        // removing "abc" frees its slot and unlinks it from the siblings of "abd", removing "abde" frees a slot below "abd"
+        DoubleArrayTrieMap<Integer> trie = trie("a", "ab", "abc", "abd", "abde", "b");
+        List<String> visited = new ArrayList<>();
+        for (Iterator<String> it = trie.keySet().iterator(); it.hasNext();) {
+            String key = it.next();
+            visited.add(key);
+            if (!key.equals("abd"))
+                it.remove();
+        }
+        assertEquals(Arrays.asList("a", "ab", "abc", "abd", "abde", "b"), visited);
+        assertEquals(1, trie.size());
+        assertEquals(Integer.valueOf(3), trie.get("abd"));
+        assertEquals(Arrays.asList("abd"), new ArrayList<>(trie.keySet()));
+    }
+
+    @Test
+    public void testRemoveThroughTheViews() {
+        DoubleArrayTrieMap<Integer> trie = trie("ab", "abc", "abd", "b");
+        assertTrue(trie.keySet().remove("ab"));
+        assertFalse(trie.keySet().remove("ab"));
+        assertTrue(trie.values().removeIf(value -> value == 2));
+        assertEquals(Arrays.asList("abc", "b"), new ArrayList<>(trie.keySet()));
+
+        trie.keySet().retainAll(Arrays.asList("b"));
+        assertEquals(1, trie.size());
+        Iterator<Map.Entry<String,Integer>> it = trie.entrySet().iterator();
+        it.next();
+        it.remove();
+        assertTrue(trie.isEmpty());
+        try {
+            it.remove();
+            fail("remove called twice");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRemoveWhileIteratingAPrefix() {
+        DoubleArrayTrieMap<Integer> trie = trie("ab", "abc", "abcd", "abe", "b");
+        for (Iterator<String> it = trie.getKeysStartingWithIterator("ab"); it.hasNext();) {
+            if (!it.next().equals("abcd"))
+                it.remove();
+        }
+        assertEquals(Arrays.asList("abcd", "b"), new ArrayList<>(trie.keySet()));
+    }
+
+    @Test
+    public void testRemoveIfMatchesATreeMap() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            DoubleArrayTrieMap<Integer> trie = new DoubleArrayTrieMap<>();
+            TreeMap<String,Integer> expected = new TreeMap<>();
+            for (int i = 0; i < 50; i++) {
+                StringBuilder key = new StringBuilder();
+                for (int length = random.nextInt(5); length > 0; length--)
+                    key.append((char) ('a' + random.nextInt(3)));
+                trie.put(key.toString(), i);
+                expected.put(key.toString(), i);
+            }
+            int modulo = 2 + random.nextInt(3);
+            trie.values().removeIf(value -> value % modulo == 0);
+            expected.values().removeIf(value -> value % modulo == 0);
+            assertEquals(expected.size(), trie.size());
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(trie.entrySet()));
+        }
+    }
+}
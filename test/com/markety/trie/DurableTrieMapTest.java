@@ -0,0 +1,164 @@
+package com.markety.trie;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DurableTrieMapTest {
+
+    /**
+     * long enough for the flusher and the checkpointer to stay idle: the writes reach the log when a test calls sync()
+     */
+    private static final long INTERVAL = 60_000;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("durable-trie");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private DurableTrieMap<Integer> open() throws IOException {
+        return DurableTrieMap.open(directory, TrieValueCodec.INTEGERS, INTERVAL, INTERVAL);
+    }
+
+    /**
+     * @return the log with the highest number, the one written by the last session
+     */
+    private Path lastLog() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".wal"))
+                    .max(Comparator.comparingLong(file -> Long.parseLong(file.getFileName().toString().replaceAll("\\D", ""))))
+                    .get();
+        }
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    @Test
+    public void testRecoversTheWrites() throws IOException {
+        Map<String,Integer> expected = new HashMap<>();
+        try (DurableTrieMap<Integer> trie = open()) {
+            trie.put("old", 0);
+            trie.clear();
+            for (int i = 0; i < 1000; i++) {
+                trie.put("key" + i, i);
+                expected.put("key" + i, i);
+            }
+            for (int i = 0; i < 1000; i += 3) {
+                trie.remove("key" + i);
+                expected.remove("key" + i);
+            }
+            trie.put("key1", -1);
+            expected.put("key1", -1);
+        }
+
+        try (DurableTrieMap<Integer> trie = open()) {
+            assertEquals(expected, new HashMap<>(trie));
+        }
+    }
+
+    @Test
+    public void testRecoveryDropsATruncatedLastBatch() throws IOException {
+        try (DurableTrieMap<Integer> trie = open()) {
+            trie.put("a", 1);
+            trie.sync();
+            trie.put("b", 2);
+            trie.put("c", 3);
+        }
+        Path log = lastLog();
+        truncate(log, Files.size(log) - 3);
+
+        try (DurableTrieMap<Integer> trie = open()) {
+            assertEquals(1, trie.size());
+            assertEquals(Integer.valueOf(1), trie.get("a"));
+            assertNull(trie.get("b"));
+            trie.put("d", 4);
+        }
+        // the torn batch was cut from the log, so the writes of the next session are read after the first batch
+        try (DurableTrieMap<Integer> trie = open()) {
+            assertEquals(2, trie.size());
+            assertEquals(Integer.valueOf(1), trie.get("a"));
+            assertEquals(Integer.valueOf(4), trie.get("d"));
+        }
+    }
+
+    @Test
+    public void testRecoveryDropsABatchWithATruncatedHeader() throws IOException {
+        long synced;
+        try (DurableTrieMap<Integer> trie = open()) {
+            trie.put("a", 1);
+            trie.sync();
+            synced = Files.size(lastLog());
+            trie.put("b", 2);
+        }
+        Path log = lastLog();
+        truncate(log, synced + 4);
+
+        try (DurableTrieMap<Integer> trie = open()) {
+            assertEquals(1, trie.size());
+            assertEquals(Integer.valueOf(1), trie.get("a"));
+        }
+        assertEquals(synced, Files.size(log));
+    }
+
+    @Test
+    public void testRecoveryOfALogWithoutHeader() throws IOException {
+        try (DurableTrieMap<Integer> trie = open()) {
+            trie.put("a", 1);
+        }
+        truncate(lastLog(), 3);
+
+        try (DurableTrieMap<Integer> trie = open()) {
+            assertTrue(trie.isEmpty());
+        }
+    }
+
+    @Test
+    public void testRecoversTheCheckpointAndTheLogWrittenSince() throws IOException {
+        try (DurableTrieMap<Integer> trie = open()) {
+            trie.put("a", 1);
+            trie.put("b", 2);
+            trie.checkpoint();
+            trie.remove("a");
+            trie.put("c", 3);
+        }
+
+        try (DurableTrieMap<Integer> trie = open()) {
+            assertEquals(2, trie.size());
+            assertNull(trie.get("a"));
+            assertEquals(Integer.valueOf(2), trie.get("b"));
+            assertEquals(Integer.valueOf(3), trie.get("c"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedTrieIsReadOnly() throws IOException {
+        DurableTrieMap<Integer> trie = open();
+        trie.put("a", 1);
+        trie.close();
+        assertEquals(Integer.valueOf(1), trie.get("a"));
+        trie.put("b", 2);
+    }
+}